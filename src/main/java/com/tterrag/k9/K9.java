@@ -28,7 +28,9 @@ import com.tterrag.k9.mappings.official.OfficialDownloader;
 import com.tterrag.k9.mappings.srg.SrgDownloader;
 import com.tterrag.k9.mappings.yarn.YarnDownloader;
 import com.tterrag.k9.util.ConvertAdmins;
+import com.tterrag.k9.util.GuildStorage;
 import com.tterrag.k9.util.PaginatedMessageFactory;
+import com.tterrag.k9.util.PermissionCache;
 import com.tterrag.k9.util.ServiceManager;
 import com.tterrag.k9.util.Threads;
 
@@ -38,6 +40,7 @@ import discord4j.core.DiscordClientBuilder;
 import discord4j.core.GatewayDiscordClient;
 import discord4j.core.event.EventDispatcher;
 import discord4j.core.event.ReplayingEventDispatcher;
+import discord4j.core.event.domain.Event;
 import discord4j.core.event.domain.lifecycle.ReadyEvent;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.event.domain.message.ReactionAddEvent;
@@ -49,6 +52,7 @@ import discord4j.gateway.intent.Intent;
 import discord4j.gateway.intent.IntentSet;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import reactor.blockhound.BlockHound;
 import reactor.core.publisher.Hooks;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
@@ -80,6 +84,9 @@ public class K9 {
         
         @Parameter(names = "--yarn2mcppass", hidden = true)
         private String yarn2mcpPass = null;
+        
+        @Parameter(names = "--blockhound", description = "Fail loudly on any blocking call made on an event thread.", hidden = true)
+        private boolean blockHound;
     }
 
     public static void main(String[] argv) {
@@ -104,6 +111,13 @@ public class K9 {
         Arguments args = new Arguments();
         JCommander.newBuilder().addObject(args).build().parse(argv);
         
+        if (args.blockHound) {
+            BlockHound.builder()
+                    .allowBlockingCallsInside("ch.qos.logback.classic.Logger", "callAppenders") // Logging is fine
+                    .allowBlockingCallsInside(GuildStorage.class.getName(), "get") // Loads each guild's data once
+                    .install();
+        }
+        
         new K9(args).start().block();
     }
     
@@ -131,7 +145,7 @@ public class K9 {
         GatewayBootstrap<GatewayOptions> gateway = client.gateway()
         .setEventDispatcher(ReplayingEventDispatcher.builder()
                 .replayEventFilter(e -> e instanceof ReadyEvent)
-                .eventScheduler(Schedulers.boundedElastic())
+                .eventScheduler(Schedulers.newParallel("k9-events")) // Non-blocking, see ICommand#isBlocking
                 .build())
         .setEnabledIntents(IntentSet.of(
                 Intent.GUILDS, Intent.GUILD_MEMBERS, Intent.GUILD_PRESENCES,
@@ -162,6 +176,8 @@ public class K9 {
                 ))
             .then())
 
+            .eventService("Permissions", Event.class, PermissionCache.INSTANCE::track)
+
             .eventService("Pagination", ReactionAddEvent.class, events -> events
                 .flatMap(evt -> PaginatedMessageFactory.INSTANCE.onReactAdd(evt)
                     .doOnError(t -> log.error("Error paging message", t))
@@ -37,6 +37,7 @@ import com.tterrag.k9.util.ActivityUtil;
 import com.tterrag.k9.util.BakedMessage;
 import com.tterrag.k9.util.EmbedCreator;
 import com.tterrag.k9.util.Monos;
+import com.tterrag.k9.util.PermissionCache;
 import com.tterrag.k9.util.TypeBinding;
 import com.tterrag.k9.util.TypeBindingPersistentMap;
 import com.tterrag.k9.util.annotation.NonNull;
@@ -81,6 +82,7 @@ import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
@@ -322,8 +324,7 @@ public class CommandClojure extends CommandBase {
                 return Flux.fromIterable(channels)
                         .filterWhen(c -> Mono.just(c)
                                 .ofType(GuildChannel.class)
-                                .flatMap(gc -> gc.getEffectivePermissions(ctx.getAuthorId().get()))
-                                .map(p -> p.contains(Permission.VIEW_CHANNEL))
+                                .flatMap(gc -> PermissionCache.INSTANCE.has(ctx.getAuthorId().get(), gc, Permission.VIEW_CHANNEL))
                                 .defaultIfEmpty(true))
                         .flatMap(c -> c.getMessageById(Snowflake.of(((Number)arg1).longValue()))
                                 .onErrorResume(ClientException.class, $ -> Mono.empty()))
@@ -509,6 +510,7 @@ public class CommandClojure extends CommandBase {
         return Flux.fromIterable(contextVars.entrySet())
             .flatMap(e -> e.getValue().apply(ctx).map(v -> Tuples.of(Clojure.var("k9.sandbox", e.getKey()), v)))
             .collectMap(Tuple2::getT1, Tuple2::getT2, () -> initial)
+            .publishOn(Schedulers.boundedElastic()) // The sandbox blocks until the code finishes or times out
             .map(bindings -> (APersistentMap) sandbox.invoke(Clojure.read("(exec " + code + " " + ctx.hasFlag(FLAG_NOFN) + " " + parseArgs(args) + ")"), PersistentArrayMap.create(bindings)))
             .onErrorMap(e -> {
                 log.error("Clojure error trace: ", e);
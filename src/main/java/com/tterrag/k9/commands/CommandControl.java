@@ -64,10 +64,12 @@ public class CommandControl extends CommandPersisted<ControlData> {
                 if (ctx.hasFlag(FLAG_WHITELIST)) {
                     return Mono.justOrEmpty(getData(ctx))
                             .doOnNext(data -> data.getCommandBlacklist().remove(ctx.getArg(ARG_OBJECT)))
+                            .doOnNext(data -> ctx.getK9().getCommands().invalidateCommands(ctx.getGuildId().get()))
                             .then(ctx.reply("Whitelisted command."));
                 } else if (ctx.hasFlag(FLAG_BLACKLIST)) {
                     return Mono.justOrEmpty(getData(ctx))
                             .doOnNext(data -> data.getCommandBlacklist().add(ctx.getArg(ARG_OBJECT)))
+                            .doOnNext(data -> ctx.getK9().getCommands().invalidateCommands(ctx.getGuildId().get()))
                             .then(ctx.reply("Blacklisted command."));
                 }
                 break;
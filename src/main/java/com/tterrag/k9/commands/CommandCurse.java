@@ -319,6 +319,11 @@ public class CommandCurse extends CommandBase {
         return pctFmt.format(pct);
     }
     
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+    
     @Override
     public String getDescription(CommandContext ctx) {
         return "Displays download counts for all of a modder's curse projects.";
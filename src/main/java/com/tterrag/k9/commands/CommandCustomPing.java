@@ -15,7 +15,6 @@ import java.util.regex.Pattern;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Sets;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonParseException;
@@ -32,6 +31,7 @@ import com.tterrag.k9.util.InterruptibleCharSequence;
 import com.tterrag.k9.util.ListMessageBuilder;
 import com.tterrag.k9.util.Monos;
 import com.tterrag.k9.util.Patterns;
+import com.tterrag.k9.util.PermissionCache;
 import com.tterrag.k9.util.annotation.NonNull;
 
 import discord4j.common.util.Snowflake;
@@ -84,7 +84,7 @@ public class CommandCustomPing extends CommandPersisted<ConcurrentHashMap<Long,
         private final CommandRegistrar registrar;
         
         public Mono<Void> onMessageRecieved(MessageCreateEvent event) {
-            if (!Sets.newHashSet(registrar.getCommands(event.getGuildId())).contains(CommandCustomPing.this)) return Mono.empty();
+            if (!registrar.getCommandTable(event.getGuildId().orElse(null)).isEnabled(CommandCustomPing.this)) return Mono.empty();
             return Mono.justOrEmpty(event.getMember())
                     .filter(a -> !a.getId().equals(event.getClient().getSelfId()))
                     .flatMap(author -> event.getMessage().getChannel()
@@ -97,8 +97,7 @@ public class CommandCustomPing extends CommandPersisted<ConcurrentHashMap<Long,
             CommandCustomPing.this.getPingsForGuild(guild).forEach(pings::putAll);
             return Flux.fromIterable(pings.entries())
                 .filter(e -> e.getKey().longValue() != author.getId().asLong())
-                .filterWhen(e -> guild.getMemberById(Snowflake.of(e.getKey()))
-                        .flatMap(owner -> canViewChannel(guild, owner.getId(), channel))
+                .filterWhen(e -> canViewChannel(Snowflake.of(e.getKey()), channel)
                         // If owner is missing, remove this ping
                         .onErrorResume(IS_404_ERROR, ex -> {
                                 log.warn("Removing pings for user {} as they have left the guild ({})", e.getKey(), guild.getName());
@@ -127,9 +126,8 @@ public class CommandCustomPing extends CommandPersisted<ConcurrentHashMap<Long,
                 .then();
         }
 
-        private Mono<Boolean> canViewChannel(Guild guild, Snowflake member, TextChannel channel) {
-            return channel.getEffectivePermissions(member)
-                    .map(perms -> perms.contains(Permission.VIEW_CHANNEL));
+        private Mono<Boolean> canViewChannel(Snowflake member, TextChannel channel) {
+            return PermissionCache.INSTANCE.has(member, channel, Permission.VIEW_CHANNEL);
         }
         
         private Mono<Boolean> pingMatches(Message message, Pattern pattern) {
@@ -86,6 +86,11 @@ public class CommandDrama extends CommandBase {
         }
     }
     
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+    
     @Override
     public String getDescription(CommandContext ctx) {
         return "Creates some drama.";
@@ -88,6 +88,11 @@ public class CommandKickClear extends CommandBase {
         }
     }
     
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+    
     @Override
     public Requirements requirements() {
         return Requirements.builder()
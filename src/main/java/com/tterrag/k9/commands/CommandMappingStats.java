@@ -0,0 +1,54 @@
+package com.tterrag.k9.commands;
+
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.tterrag.k9.commands.api.Command;
+import com.tterrag.k9.commands.api.CommandBase;
+import com.tterrag.k9.commands.api.CommandContext;
+import com.tterrag.k9.mappings.MappingCache;
+import com.tterrag.k9.mappings.MappingDownloader;
+import com.tterrag.k9.mappings.ParserPool;
+
+import reactor.core.publisher.Mono;
+
+@Command
+public class CommandMappingStats extends CommandBase {
+
+    public CommandMappingStats() {
+        super("mappingstats", true);
+    }
+
+    @Override
+    public Mono<?> process(CommandContext ctx) {
+        CacheStats stats = MappingCache.stats();
+        StringBuilder cached = new StringBuilder();
+        for (Map.Entry<String, Long> e : MappingCache.entries().entrySet()) {
+            cached.append(e.getKey()).append(": ").append(FileUtils.byteCountToDisplaySize(e.getValue())).append('\n');
+        }
+        StringBuilder loads = new StringBuilder();
+        for (Map.Entry<String, ParserPool.PhaseMetrics> e : MappingDownloader.getLoadMetrics().entrySet()) {
+            loads.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        }
+        return ctx.reply(spec -> spec
+                .setTitle("Mapping cache")
+                .addField("Size", FileUtils.byteCountToDisplaySize(MappingCache.size()) + " / " + FileUtils.byteCountToDisplaySize(MappingCache.BUDGET), true)
+                .addField("Hit Rate", String.format("%.1f%% (%d hits, %d misses)", stats.hitRate() * 100, stats.hitCount(), stats.missCount()), true)
+                .addField("Loads", String.format("%d (%d failed), avg %.0fms, %d evicted", stats.loadCount(), stats.loadFailureCount(),
+                        stats.averageLoadPenalty() / 1_000_000, stats.evictionCount()), true)
+                .addField("Cached", field(cached), false)
+                .addField("Load Phases", field(loads), false));
+    }
+    
+    private static String field(CharSequence text) {
+        return text.length() == 0 ? "None" : StringUtils.abbreviate(text.toString(), 1024);
+    }
+
+    @Override
+    public String getDescription(CommandContext ctx) {
+        return "Shows the state of the mappings cache, and timings of mapping loads.";
+    }
+}
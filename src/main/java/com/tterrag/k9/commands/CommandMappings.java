@@ -1,13 +1,16 @@
 package com.tterrag.k9.commands;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.google.gson.Gson;
@@ -21,6 +24,7 @@ import com.tterrag.k9.commands.api.ReadyContext;
 import com.tterrag.k9.mappings.Mapping;
 import com.tterrag.k9.mappings.MappingDatabase;
 import com.tterrag.k9.mappings.MappingDownloader;
+import com.tterrag.k9.mappings.MappingRanking;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.util.GuildStorage;
 import com.tterrag.k9.util.ListMessageBuilder;
@@ -32,6 +36,7 @@ import com.tterrag.k9.util.Requirements.RequiredType;
 import com.tterrag.k9.util.annotation.NonNull;
 
 import com.tterrag.k9.util.annotation.Nullable;
+import discord4j.core.object.entity.Message;
 import discord4j.rest.util.Permission;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -63,6 +68,13 @@ public abstract class CommandMappings<@NonNull M extends Mapping> extends Comman
         }
     };
 
+    private static final int MAX_SUGGESTIONS = 5;
+    /**
+     * The number of results ranked by each lookup. Broad searches can match thousands of mappings, so only the first
+     * window is ranked up front, and the next only once someone pages past it.
+     */
+    private static final int RESULTS_PER_LOOKUP = 50;
+
     private static final Requirements DEFAULT_VERSION_PERMS = Requirements.builder().with(Permission.MANAGE_GUILD, RequiredType.ALL_OF).build();
     
     private final CommandMappings<M> parent;
@@ -130,27 +142,20 @@ public abstract class CommandMappings<@NonNull M extends Mapping> extends Comman
                 .switchIfEmpty(downloader.getLatestMinecraftVersion(defaultStable)));
     }
 
-    protected Mono<List<Mapping>> findMappings(CommandContext ctx) {
+    protected Mono<MappingRanking.Result<Mapping>> findMappings(CommandContext ctx) {
         final GuildStorage<String> storage = parent == null ? this.storage : parent.storage;
         
         if (ctx.hasFlag(FLAG_DEFAULT_VERSION)) {
             if (!ctx.getGuildId().isPresent()) {
                 return ctx.error("Cannot set default version in DMs.").then(Mono.empty());
             }
-            if (!DEFAULT_VERSION_PERMS.matches(ctx).block()) {
-                return ctx.error("You do not have permission to update the default version!").then(Mono.empty());
-            }
             String version = ctx.getFlag(FLAG_DEFAULT_VERSION);
-            Mono<String> ret;
-            if ("latest".equals(version)) {
-                ret = storage.put(ctx, "");
-            } else if (downloader.getMinecraftVersions().any(version::equals).block()) {
-                ret = storage.put(ctx, version);
-            } else {
-                return ctx.error("Invalid version.").then(Mono.empty());
-            }
-            return ret.defaultIfEmpty("latest")
-                    .flatMap(prev -> ctx.reply("Changed default version for this guild from " + (prev.isEmpty() ? "latest" : prev) + " to " + version))
+            Mono<Boolean> valid = "latest".equals(version) ? Mono.just(true) : downloader.getMinecraftVersions().any(version::equals);
+            return DEFAULT_VERSION_PERMS.matches(ctx)
+                    .flatMap(allowed -> !allowed ? ctx.<Message>error("You do not have permission to update the default version!") : valid
+                            .flatMap(isValid -> !isValid ? ctx.<Message>error("Invalid version.") : storage.put(ctx, "latest".equals(version) ? "" : version)
+                                    .defaultIfEmpty("latest")
+                                    .flatMap(prev -> ctx.reply("Changed default version for this guild from " + (prev.isEmpty() ? "latest" : prev) + " to " + version))))
                     .then(Mono.empty());
         }
 
@@ -164,16 +169,44 @@ public abstract class CommandMappings<@NonNull M extends Mapping> extends Comman
                 return updateCheck.then(mcver.flatMap(v -> ctx.reply("Updated mappings for MC " + v))).then(Mono.empty());
             }
         }
-        Flux<Mapping> ret = updateCheck.thenMany(mcver.flatMapMany(v -> type == null ? downloader.lookup(name, v) : downloader.lookup(type, name, v)));
-        if (ctx.hasFlag(FLAG_CONVERT)) {
-            String convertTo = ctx.getFlag(FLAG_CONVERT);
-            CommandMappings<?> otherCommand = getOtherCommand(convertTo);
-            if (otherCommand == null)
-                return ctx.error("Unknown mapping type for conversion: " + convertTo).then(Mono.empty());
-            Mono<? extends MappingDatabase<?>> dbCache = mcver.flatMap(otherCommand.downloader::getDatabase).cache();
-            ret = ret.flatMap(m -> dbCache.<Mapping>flatMap(db -> Mono.justOrEmpty(m.<Mapping>convert(db))));
+        if (ctx.hasFlag(FLAG_CONVERT) && getOtherCommand(ctx.getFlag(FLAG_CONVERT)) == null) {
+            return ctx.error("Unknown mapping type for conversion: " + ctx.getFlag(FLAG_CONVERT)).then(Mono.empty());
+        }
+        return updateCheck.then(mcver.flatMap(v -> findMappings(ctx, name, v, 0)));
+    }
+
+    /**
+     * @return The ranked matches from {@code skip} to {@code skip + RESULTS_PER_LOOKUP}, converted if requested.
+     */
+    private Mono<MappingRanking.Result<Mapping>> findMappings(CommandContext ctx, String name, String mcver, int skip) {
+        Mono<MappingRanking.Result<Mapping>> ret = downloader.lookupRanked(type, name, mcver, skip, RESULTS_PER_LOOKUP)
+                .map(result -> new MappingRanking.Result<Mapping>(new ArrayList<>(result.getTop()), result.getTotal()));
+        CommandMappings<?> otherCommand = ctx.hasFlag(FLAG_CONVERT) ? getOtherCommand(ctx.getFlag(FLAG_CONVERT)) : null;
+        if (otherCommand != null) {
+            Mono<? extends MappingDatabase<?>> dbCache = otherCommand.downloader.getDatabase(mcver).cache();
+            ret = ret.flatMap(result -> Flux.fromIterable(result.getTop())
+                    .concatMap(m -> dbCache.<Mapping>flatMap(db -> Mono.justOrEmpty(m.<Mapping>convert(db))))
+                    .collectList()
+                    .map(converted -> new MappingRanking.Result<Mapping>(converted, result.getTotal())));
         }
-        return ret.collectList();
+        return ret;
+    }
+
+    /**
+     * @param next
+     *            The rank of the first match not fetched yet, advanced past the matches fetched.
+     * @return The next matches, or an empty list once there are no more.
+     */
+    private Mono<List<Mapping>> findMoreMappings(CommandContext ctx, String name, String mcver, AtomicInteger next, int total) {
+        return Mono.defer(() -> {
+            int skip = next.getAndAdd(RESULTS_PER_LOOKUP);
+            if (skip >= total) {
+                return Mono.just(Collections.<Mapping>emptyList());
+            }
+            // Conversion can drop every match in a window, which must not end the list
+            return findMappings(ctx, name, mcver, skip)
+                    .flatMap(result -> result.getTop().isEmpty() ? findMoreMappings(ctx, name, mcver, next, total) : Mono.just(result.getTop()));
+        });
     }
 
     @Nullable
@@ -184,8 +217,10 @@ public abstract class CommandMappings<@NonNull M extends Mapping> extends Comman
     @Override
     public Mono<?> process(CommandContext ctx) {
         return findMappings(ctx)
-                .transform(Monos.flatZipWith(ctx.getChannel(), (mappings, channel) -> {
-                    if (!mappings.isEmpty()) {
+                .transform(Monos.flatZipWith(ctx.getChannel(), (result, channel) -> {
+                    List<Mapping> mappings = result.getTop();
+                    int total = result.getTotal();
+                    if (total > 0) {
                         final String title;
                         if (ctx.hasFlag(FLAG_CONVERT)) {
                             CommandMappings<?> otherCommand = getOtherCommand(ctx.getFlag(FLAG_CONVERT));
@@ -197,17 +232,35 @@ public abstract class CommandMappings<@NonNull M extends Mapping> extends Comman
                         } else {
                             title = this.name;
                         }
+                        String name = ctx.getArg(ARG_NAME);
+                        AtomicInteger next = new AtomicInteger(RESULTS_PER_LOOKUP);
                         return getMcVersion(ctx)
-                            .map(v -> new ListMessageBuilder<Mapping>(title + " Mappings")
-                                .showIndex(false)
-                                .embed(false)
-                                .addObjects(mappings)
-                                .stringFunc(m -> m.formatMessage(v))
-                                .color(color)
-                                .build(channel, ctx.getMessage()))
-                            .flatMap(m -> m.send());
+                            .flatMap(v -> {
+                                // Every window may have been dropped by conversion
+                                Mono<List<Mapping>> first = mappings.isEmpty() ? findMoreMappings(ctx, name, v, next, total) : Mono.just(mappings);
+                                return first.filter(l -> !l.isEmpty())
+                                        .map(l -> new ListMessageBuilder<Mapping>(title + " Mappings")
+                                            .showIndex(false)
+                                            .embed(false)
+                                            .addObjects(l)
+                                            .moreObjects(next.get() < total ? () -> findMoreMappings(ctx, name, v, next, total) : null)
+                                            .stringFunc(m -> m.formatMessage(v))
+                                            .color(color)
+                                            .build(channel, ctx.getMessage()));
+                            })
+                            .flatMap(m -> m.send())
+                            .switchIfEmpty(ctx.reply("No information found!"));
                     } else {
-                        return ctx.reply("No information found!");
+                        String name = ctx.getArg(ARG_NAME);
+                        if (name == null) {
+                            return ctx.reply("No information found!");
+                        }
+                        return getMcVersion(ctx)
+                            .flatMap(v -> downloader.suggest(type, name, v, MAX_SUGGESTIONS))
+                            .filter(suggestions -> !suggestions.isEmpty())
+                            .map(suggestions -> "No information found! Did you mean: " + suggestions.stream().map(s -> "`" + s + "`").collect(Collectors.joining(", ")) + "?")
+                            .defaultIfEmpty("No information found!")
+                            .flatMap(ctx::reply);
                     }
                 }));
     }
@@ -17,6 +17,7 @@ import com.tterrag.k9.commands.api.CommandPersisted;
 import com.tterrag.k9.commands.api.Flag;
 import com.tterrag.k9.commands.api.ReadyContext;
 import com.tterrag.k9.listeners.CommandListener;
+import com.tterrag.k9.listeners.CommandRouter;
 import com.tterrag.k9.util.DelegatingTypeReader;
 import com.tterrag.k9.util.Requirements;
 import com.tterrag.k9.util.Requirements.RequiredType;
@@ -69,6 +70,7 @@ public class CommandPrefix extends CommandPersisted<PrefixData> {
                     } else {
                         data.setCommand(newPrefix);
                     }
+                    CommandRouter.invalidatePrefixes(ctx.getGuildId().get());
                     final String prefix = newPrefix;
                     return ctx.getGuild().flatMap(guild -> ctx.reply("Prefix for " + guild.getName() + (ctx.hasFlag(FLAG_TRICK) ? " tricks" : "") + (prefix.isEmpty() ? " removed" : " set to `" + prefix + "`") + "."));
                 })
@@ -79,6 +81,7 @@ public class CommandPrefix extends CommandPersisted<PrefixData> {
     public Mono<?> onReady(ReadyContext ctx) {
         CommandListener.prefixes = id -> this.storage.get(Snowflake.of(id)).getCommand();
         CommandTrick.prefixes = id -> this.storage.get(Snowflake.of(id)).getTrick();
+        CommandRouter.invalidatePrefixes();
         return super.onReady(ctx);
     }
     
@@ -45,6 +45,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Slf4j
@@ -207,22 +208,22 @@ public class CommandQuote extends CommandPersisted<ConcurrentHashMap<Integer, Qu
         private final ReactionEmoji.Unicode CROWN = ReactionEmoji.unicode("\uD83D\uDC51"); // CROWN
         private final ReactionEmoji.Unicode SKULL = ReactionEmoji.unicode("\uD83D\uDC80"); // SKULL
 
-        public void onReactAdd(ReactionAddEvent event) {
+        public Mono<Void> onReactAdd(ReactionAddEvent event) {
             ReactionEmoji emoji = event.getEmoji();
-            Message msg = event.getMessage().block();
-            if (msg != null && allBattles.contains(msg)) {
-                if (!emoji.equals(ONE) && !emoji.equals(TWO) && !emoji.equals(KILL) && !emoji.equals(SPARE)) {
-                    msg.removeReaction(emoji, event.getUserId()).subscribe();
-                } else if (!event.getUserId().equals(event.getClient().getSelfId())) {
-                    msg.getReactions().stream()
-                            .filter(r -> !r.getEmoji().equals(emoji))
-                            .filter(r -> msg.getReactors(r.getEmoji())
-                                    .filter(u -> u.getId().equals(event.getUserId()))
-                                    .hasElements()
-                                    .block())
-                            .forEach(r -> msg.removeReaction(r.getEmoji(), event.getUserId()).subscribe());
-                }
-            }
+            return event.getMessage()
+                    .filter(allBattles::contains)
+                    .flatMap(msg -> {
+                        if (!emoji.equals(ONE) && !emoji.equals(TWO) && !emoji.equals(KILL) && !emoji.equals(SPARE)) {
+                            return msg.removeReaction(emoji, event.getUserId());
+                        } else if (!event.getUserId().equals(event.getClient().getSelfId())) {
+                            return Flux.fromIterable(msg.getReactions())
+                                    .filter(r -> !r.getEmoji().equals(emoji))
+                                    .filterWhen(r -> msg.getReactors(r.getEmoji()).any(u -> u.getId().equals(event.getUserId())))
+                                    .flatMap(r -> msg.removeReaction(r.getEmoji(), event.getUserId()))
+                                    .then();
+                        }
+                        return Mono.empty();
+                    });
         }
         
         public boolean canStart(CommandContext ctx) {
@@ -406,8 +407,8 @@ public class CommandQuote extends CommandPersisted<ConcurrentHashMap<Integer, Qu
     public Mono<?> onReady(ReadyContext ctx) {
         return super.onReady(ctx)
                 .then(ctx.on(ReactionAddEvent.class)
-                        .doOnNext(battleManager::onReactAdd)
-                        .onErrorResume($ -> Mono.empty()) // idc, pagination handler will log it
+                        .flatMap(evt -> battleManager.onReactAdd(evt)
+                                .onErrorResume($ -> Mono.empty())) // idc, pagination handler will log it
                         .then());
     }
     
@@ -419,31 +420,33 @@ public class CommandQuote extends CommandPersisted<ConcurrentHashMap<Integer, Qu
             return ctx.error("Quotes are not available in DMs.");
         }
         if (ctx.hasFlag(FLAG_LS)) {
-            Map<Integer, Quote> quotes = storage.get(ctx.getMessage()).block();
+            Map<Integer, Quote> quotes = storage.get(ctx).get();
             
-            PaginatedMessage msg = new ListMessageBuilder<Entry<Integer, Quote>>("quotes")
-                    .addObjects(quotes.entrySet())
-                    .indexFunc((e, i) -> e.getKey())
-                    .stringFunc(e -> e.getValue().print(true))
-                    .objectsPerPage(PER_PAGE)
-                    .build(ctx.getChannel().block(), ctx.getMessage());
-            
-            int pageTarget = 0;
-            int maxPages = msg.size();
-            try {
-                String pageStr = ctx.getFlag(FLAG_LS);
-                if (pageStr != null) {
-                    pageTarget = Integer.parseInt(ctx.getFlag(FLAG_LS)) - 1;
-                    if (pageTarget < 0 || pageTarget >= maxPages) {
-                        return ctx.error("Page argument out of range!");
+            return ctx.getChannel().flatMap(channel -> {
+                PaginatedMessage msg = new ListMessageBuilder<Entry<Integer, Quote>>("quotes")
+                        .addObjects(quotes.entrySet())
+                        .indexFunc((e, i) -> e.getKey())
+                        .stringFunc(e -> e.getValue().print(true))
+                        .objectsPerPage(PER_PAGE)
+                        .build(channel, ctx.getMessage());
+                
+                int pageTarget = 0;
+                int maxPages = msg.size();
+                try {
+                    String pageStr = ctx.getFlag(FLAG_LS);
+                    if (pageStr != null) {
+                        pageTarget = Integer.parseInt(ctx.getFlag(FLAG_LS)) - 1;
+                        if (pageTarget < 0 || pageTarget >= maxPages) {
+                            return ctx.<Message>error("Page argument out of range!");
+                        }
                     }
+                } catch (NumberFormatException e) {
+                    return ctx.<Message>error(ctx.getFlag(FLAG_LS) + " is not a valid number!");
                 }
-            } catch (NumberFormatException e) {
-                return ctx.error(ctx.getFlag(FLAG_LS) + " is not a valid number!");
-            }
-
-            msg.setPageNumber(pageTarget);
-            return msg.send();
+    
+                msg.setPageNumber(pageTarget);
+                return msg.send();
+            });
         } 
         if (ctx.hasFlag(FLAG_ADD)) {
             String quote = ctx.getFlag(FLAG_ADD);
@@ -456,49 +459,29 @@ public class CommandQuote extends CommandPersisted<ConcurrentHashMap<Integer, Qu
                 }
             }
 
-            Map<Integer, Quote> quotes = storage.get(ctx.getMessage()).block();
+            Map<Integer, Quote> quotes = storage.get(ctx).get();
             int id = quotes.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
             quotes.put(id, new Quote(quote, author, ctx.getAuthor().get()));
             return ctx.reply("Added quote #" + id + "!");
         } else if (ctx.hasFlag(FLAG_REMOVE)) {
             int index = Integer.parseInt(ctx.getFlag(FLAG_REMOVE));
             Optional<Quote> quote = storage.get(ctx).map(m -> m.get(index));
-            if (!REMOVE_PERMS.matches(ctx).block() && quote.flatMap(q -> ctx.getAuthorId().map(Snowflake::asLong).map(s -> s != q.getOwner())).orElse(true)) {
-                return ctx.error("You do not have permission to remove quotes!");
-            }
-            Quote removed = storage.get(ctx.getMessage()).block().remove(index);
-            if (removed != null) {
-                return ctx.reply("Removed quote!");
-            } else {
-                return ctx.error("No quote for ID " + index);
-            }
+            boolean isOwner = !quote.flatMap(q -> ctx.getAuthorId().map(Snowflake::asLong).map(s -> s != q.getOwner())).orElse(true);
+            return (isOwner ? Mono.just(true) : REMOVE_PERMS.matches(ctx)).flatMap(allowed -> {
+                if (!allowed) {
+                    return ctx.<Message>error("You do not have permission to remove quotes!");
+                }
+                Quote removed = storage.get(ctx).get().remove(index);
+                if (removed != null) {
+                    return ctx.reply("Removed quote!");
+                } else {
+                    return ctx.<Message>error("No quote for ID " + index);
+                }
+            });
         }
         
-        boolean canDoBattles = REMOVE_PERMS.matches(ctx).block();
-        if (ctx.hasFlag(FLAG_BATTLE_CANCEL)) {
-            if (!canDoBattles) {
-                return ctx.error("You do not have permission to cancel battles!");
-            }
-            return battleManager.cancel(ctx).then(ctx.getMessage().delete());
-        }
-        
-        if (ctx.hasFlag(FLAG_BATTLE)) {
-            if (!canDoBattles) {
-                return ctx.error("You do not have permission to start battles!");
-            }
-            if (ctx.hasFlag(FLAG_BATTLE_SERIES)) {
-                int numBattles;
-                String value = ctx.getFlag(FLAG_BATTLE_SERIES);
-                try {
-                    numBattles = "infinite".equals(value) ? -1 : Integer.parseInt(ctx.getFlag(FLAG_BATTLE_SERIES));
-                } catch (NumberFormatException e) {
-                    return ctx.error(e);
-                }
-                return battleManager.enqueueBattles(ctx, numBattles)
-                        .then(ctx.reply("Queued " + value + " quote battles."));
-            } else {
-                return battleManager.battle(ctx);
-            }
+        if (ctx.hasFlag(FLAG_BATTLE_CANCEL) || ctx.hasFlag(FLAG_BATTLE)) {
+            return REMOVE_PERMS.matches(ctx).flatMap(canDoBattles -> processBattle(ctx, canDoBattles));
         }
         
         // Naked -t flag, just update the current battle/queue
@@ -508,7 +491,7 @@ public class CommandQuote extends CommandPersisted<ConcurrentHashMap<Integer, Qu
         
         String quoteFmt = "#%d:\n%s";
         if(ctx.argCount() == 0) {
-            Integer[] keys = storage.get(ctx.getMessage()).block().keySet().toArray(new Integer[0]);
+            Integer[] keys = storage.get(ctx).get().keySet().toArray(new Integer[0]);
             if (keys.length == 0) {
                 return ctx.error("There are no quotes!");
             }
@@ -516,41 +499,39 @@ public class CommandQuote extends CommandPersisted<ConcurrentHashMap<Integer, Qu
             return ctx.reply(String.format(quoteFmt, keys[id], storage.get(ctx).get().get(keys[id]).print(false)));
         } else {
             int id = ctx.getArg(ARG_ID);
-            Quote quote = storage.get(ctx.getMessage()).block().get(id);
+            Quote quote = storage.get(ctx).get().get(id);
             if (quote != null) {
                 if (ctx.hasFlag(FLAG_INFO)) {
-                    User owner = ctx.getClient().getUserById(Snowflake.of(quote.getOwner())).block();
-                    EmbedCreator info = EmbedCreator.builder()
-                            .title("Quote #" + id)
-                            .field("Text", quote.getQuote(), true)
-                            .field("Quotee", quote.getQuotee(), true)
-                            .field("Creator", owner.getMention(), true)
-                            .field("Battle Weight", "" + quote.getWeight(), true)
-                            .build();
-                    return ctx.reply(info);
+                    return ctx.getClient().getUserById(Snowflake.of(quote.getOwner()))
+                            .flatMap(owner -> ctx.reply(EmbedCreator.builder()
+                                    .title("Quote #" + id)
+                                    .field("Text", quote.getQuote(), true)
+                                    .field("Quotee", quote.getQuotee(), true)
+                                    .field("Creator", owner.getMention(), true)
+                                    .field("Battle Weight", "" + quote.getWeight(), true)
+                                    .build()));
                 } else if (ctx.hasFlag(FLAG_CREATOR)) {
-                    if (!REMOVE_PERMS.matches(ctx).block()) {
-                        return ctx.error("You do not have permission to update quote creators.");
-                    }
-                    String creatorName = NullHelper.notnull(ctx.getFlag(FLAG_CREATOR), "CommandContext#getFlag");
-                    User creator = null;
-                    try {
-                        creator = ctx.getClient().getUserById(Snowflake.of(Long.parseLong(creatorName))).block();
-                    } catch (NumberFormatException e) {
-                        if (!ctx.getMessage().getUserMentionIds().isEmpty()) {
-                            creator = ctx.getMessage().getUserMentions()
+                    return REMOVE_PERMS.matches(ctx).flatMap(allowed -> {
+                        if (!allowed) {
+                            return ctx.<Message>error("You do not have permission to update quote creators.");
+                        }
+                        String creatorName = NullHelper.notnull(ctx.getFlag(FLAG_CREATOR), "CommandContext#getFlag");
+                        Mono<User> creator;
+                        try {
+                            creator = ctx.getClient().getUserById(Snowflake.of(Long.parseLong(creatorName)));
+                        } catch (NumberFormatException e) {
+                            creator = Mono.justOrEmpty(ctx.getMessage().getUserMentions()
                                          .stream()
                                          .filter(u -> creatorName.contains("" + u.getId().asLong()))
-                                         .findFirst()
-                                         .orElse(null);
+                                         .findFirst());
                         }
-                    }
-                    if (creator != null) {
-                        quote.setOwner(creator.getId().asLong());
-                        return ctx.reply("Updated creator for quote #" + id);
-                    } else {
-                        return ctx.error(creatorName + " is not a valid user!");
-                    }
+                        return creator
+                                .flatMap(u -> {
+                                    quote.setOwner(u.getId().asLong());
+                                    return ctx.reply("Updated creator for quote #" + id);
+                                })
+                                .switchIfEmpty(ctx.error(creatorName + " is not a valid user!"));
+                    });
                 } else {
                     return ctx.reply(String.format(quoteFmt, id, quote.print(false)));
                 }
@@ -560,6 +541,35 @@ public class CommandQuote extends CommandPersisted<ConcurrentHashMap<Integer, Qu
         }
     }
     
+    private Mono<?> processBattle(CommandContext ctx, boolean canDoBattles) {
+        if (ctx.hasFlag(FLAG_BATTLE_CANCEL)) {
+            if (!canDoBattles) {
+                return ctx.error("You do not have permission to cancel battles!");
+            }
+            return battleManager.cancel(ctx).then(ctx.getMessage().delete());
+        }
+        
+        if (ctx.hasFlag(FLAG_BATTLE)) {
+            if (!canDoBattles) {
+                return ctx.error("You do not have permission to start battles!");
+            }
+            if (ctx.hasFlag(FLAG_BATTLE_SERIES)) {
+                int numBattles;
+                String value = ctx.getFlag(FLAG_BATTLE_SERIES);
+                try {
+                    numBattles = "infinite".equals(value) ? -1 : Integer.parseInt(ctx.getFlag(FLAG_BATTLE_SERIES));
+                } catch (NumberFormatException e) {
+                    return ctx.error(e);
+                }
+                return battleManager.enqueueBattles(ctx, numBattles)
+                        .then(ctx.reply("Queued " + value + " quote battles."));
+            } else {
+                return battleManager.battle(ctx);
+            }
+        }
+        return Mono.empty();
+    }
+    
     @Override
     public String getDescription(CommandContext ctx) {
         return "A way to store and retrieve quotes.";
@@ -51,7 +51,6 @@ import discord4j.core.event.domain.interaction.ButtonInteractionEvent;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.object.component.ActionRow;
 import discord4j.core.object.component.Button;
-import discord4j.core.object.entity.Guild;
 import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.channel.GuildChannel;
@@ -63,6 +62,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.netty.http.client.HttpClient;
 
 @Command
@@ -137,7 +137,7 @@ public class CommandTrick extends CommandPersisted<ConcurrentHashMap<String, Tri
         }
     };
     
-    static final String DEFAULT_PREFIX = "?";
+    public static final String DEFAULT_PREFIX = "?";
     static LongFunction<String> prefixes = id -> DEFAULT_PREFIX;
 
     private SaveHelper<ConcurrentHashMap<String, TrickData>> globalHelper;
@@ -164,22 +164,26 @@ public class CommandTrick extends CommandPersisted<ConcurrentHashMap<String, Tri
                         .flatMap(event -> {
                             if (event.getCustomId().startsWith(DELETE_TRICK_ID)) {
                                 String id = event.getCustomId().substring(DELETE_TRICK_ID.length());
-                                Map<String, TrickData> tricks = storage.get(event.getInteraction().getGuildId().get());
+                                Snowflake guild = event.getInteraction().getGuildId().get();
+                                Map<String, TrickData> tricks = storage.get(guild);
                                 final TrickData trick = tricks.get(id);
                                 if (trick == null) {
                                     return event.reply("No trick with that name!");
                                 }
-                                if (trick.getOwner() != event.getInteraction().getUser().getId().asLong() && !canManage(event.getInteraction().getMember().get())) {
-                                    return event.reply("You do not have permission to remove this trick!");
-                                }
-                                tricks.remove(id);
-                                trickCache.computeIfPresent(event.getInteraction().getGuild().block().getId().asLong(), (i, m) -> {
-                                    m.remove(id);
-                                    return m.isEmpty() ? null : m;
-                                });
-                                return event.reply()
-                                        .withContent("Removed trick!")
-                                        .withFiles(MessageCreateFields.File.of("trick." + trick.getType().getExtension(), new ByteArrayInputStream(trick.getInput().getBytes(StandardCharsets.UTF_8))));
+                                return (trick.getOwner() == event.getInteraction().getUser().getId().asLong() ? Mono.just(true) : canManage(event.getInteraction().getMember().get()))
+                                        .flatMap(allowed -> {
+                                            if (!allowed) {
+                                                return event.reply("You do not have permission to remove this trick!");
+                                            }
+                                            tricks.remove(id);
+                                            trickCache.computeIfPresent(guild.asLong(), (i, m) -> {
+                                                m.remove(id);
+                                                return m.isEmpty() ? null : m;
+                                            });
+                                            return event.reply()
+                                                    .withContent("Removed trick!")
+                                                    .withFiles(MessageCreateFields.File.of("trick." + trick.getType().getExtension(), new ByteArrayInputStream(trick.getInput().getBytes(StandardCharsets.UTF_8))));
+                                        });
                             }
                             return Mono.empty();
                         }).then());
@@ -285,64 +289,21 @@ public class CommandTrick extends CommandPersisted<ConcurrentHashMap<String, Tri
                 return ctx.error("Invalid trick name \"" + trick + "\"");
             }
             boolean official = ctx.hasFlag(FLAG_OFFICIAL);
-            if (official && !OFFICIAL_PERMS.matches(ctx).block()) {
-                return ctx.error("You do not have permission to set a trick as official.");
-            }
             String args = ctx.getArg(ARG_PARAMS);
+            Mono<String> input;
             if (ctx.hasFlag(FLAG_FETCH)) {
-                try {
-                    args = HttpClient.create().get()
-                      .uri(args)
-                      .responseSingle(($, content) -> content.asString(StandardCharsets.UTF_8))
-                      .block(); // TODO: refactor me! temporary until this class gets refactored
-                } catch (final Throwable t) {
-                    return ctx.error("Could not fetch trick data.");
-                }
+                input = HttpClient.create().get()
+                        .uri(args)
+                        .responseSingle(($, content) -> content.asString(StandardCharsets.UTF_8))
+                        .onErrorResume(t -> ctx.error("Could not fetch trick data."))
+                        .switchIfEmpty(ctx.error("Could not fetch trick data."));
             } else {
                 Matcher codematcher = Patterns.CODEBLOCK.matcher(args);
-                if (codematcher.matches()) {
-                    args = codematcher.group(2).trim();
-                }
-            }
-            if (ctx.getK9().getCommands().findCommand((Snowflake) null, trick).isPresent() && !ctx.getAuthor().filter(ctx.getK9().getCommands()::isAdmin).isPresent()) {
-                return ctx.error("Cannot add a trick with the same name as a command.");
-            }
-            TrickData existing;
-            if (ctx.hasFlag(FLAG_GLOBAL)) {
-                if (official) {
-                    return ctx.error("Global commands cannot be official.");
-                }
-                if (!ctx.getK9().getCommands().isAdmin(ctx.getAuthor().get())) {
-                    return ctx.error("You do not have permission to add global tricks.");
-                }
-                existing = globalTricks.get(trick);
-                globalTricks.put(trick, new TrickData(type, args, existing == null ? ctx.getAuthorId().get().asLong() : existing.getOwner()));
-                globalHelper.writeJson("global_tricks.json", globalTricks);
-                trickCache.getOrDefault(0L, new HashMap<>()).remove(trick);
-            } else {
-                Guild guild = ctx.getGuild().block();
-                if (guild == null) {
-                    return ctx.error("Cannot add local tricks in private message.");
-                }
-                existing = storage.get(ctx).get().get(trick);
-                TrickData data;
-                if (existing != null) {
-                    if (existing.getOwner() != ctx.getAuthor().get().getId().asLong() && !canManage(ctx)) {
-                        return ctx.error("A trick with this name already exists in this guild.");
-                    }
-                    if (!ctx.hasFlag(FLAG_UPDATE)) {
-                        return ctx.error("A trick with this name already exists! Use -u to overwrite.");
-                    }
-                    data = new TrickData(type, args, existing.getOwner(), ctx.hasFlag(FLAG_OFFICIAL));
-                } else if (ctx.hasFlag(FLAG_UPDATE)) {
-                    return ctx.error("No trick with that name exists to update.");
-                } else {
-                    data = new TrickData(type, args, ctx.getAuthor().get().getId().asLong(), ctx.hasFlag(FLAG_OFFICIAL));
-                }
-                storage.get(ctx).get().put(trick, data);
-                trickCache.getOrDefault(guild.getId().asLong(), new HashMap<>()).remove(trick);
+                input = Mono.just(codematcher.matches() ? codematcher.group(2).trim() : args);
             }
-            return ctx.reply(existing == null ? "Added new trick!" : "Updated trick!");
+            return (official ? OFFICIAL_PERMS.matches(ctx) : Mono.just(true))
+                    .flatMap(allowed -> allowed ? input : ctx.<String>error("You do not have permission to set a trick as official."))
+                    .flatMap(code -> addTrick(ctx, type, trick, official, code));
         } else if (ctx.hasFlag(FLAG_REMOVE)) {
             if (ctx.hasFlag(FLAG_GLOBAL) && !ctx.getK9().getCommands().isAdmin(ctx.getAuthor().get())) {
                 return ctx.error("You do not have permission to remove global tricks!");
@@ -353,18 +314,21 @@ public class CommandTrick extends CommandPersisted<ConcurrentHashMap<String, Tri
             if (trick == null) {
                 return ctx.error("No trick with that name!");
             }
-            if (trick.getOwner() != ctx.getAuthor().get().getId().asLong() && !canManage(ctx)) {
-                return ctx.error("You do not have permission to remove this trick!");
-            }
-            tricks.remove(id);
-            trickCache.computeIfPresent(ctx.hasFlag(FLAG_GLOBAL) ? null : ctx.getGuild().block().getId().asLong(), (i, m) -> {
-               m.remove(id);
-               return m.isEmpty() ? null : m;
-            });
-            return ctx.getChannel()
-                    .flatMap(channel -> channel.createMessage(m -> m
-                            .setContent("Removed trick!")
-                            .addFile("trick." + trick.getType().getExtension(), new ByteArrayInputStream(trick.getInput().getBytes(StandardCharsets.UTF_8)))));
+            return (trick.getOwner() == ctx.getAuthor().get().getId().asLong() ? Mono.just(true) : canManage(ctx))
+                    .flatMap(allowed -> {
+                        if (!allowed) {
+                            return ctx.<Message>error("You do not have permission to remove this trick!");
+                        }
+                        tricks.remove(id);
+                        trickCache.computeIfPresent(ctx.hasFlag(FLAG_GLOBAL) ? 0L : ctx.getGuildId().get().asLong(), (i, m) -> {
+                            m.remove(id);
+                            return m.isEmpty() ? null : m;
+                        });
+                        return ctx.getChannel()
+                                .flatMap(channel -> channel.createMessage(m -> m
+                                        .setContent("Removed trick!")
+                                        .addFile("trick." + trick.getType().getExtension(), new ByteArrayInputStream(trick.getInput().getBytes(StandardCharsets.UTF_8)))));
+                    });
         } else {
             Map<String, TrickData> dataMap = storage.get(ctx).orElse(null);
             TrickData data = dataMap == null ? null : dataMap.get(ctx.getArg(ARG_TRICK));
@@ -383,26 +347,31 @@ public class CommandTrick extends CommandPersisted<ConcurrentHashMap<String, Tri
             final TrickData td = data;
 
             if (ctx.hasFlag(FLAG_INFO)) {
-                EmbedCreateSpec.Builder builder = EmbedCreateSpec.builder()
-                        .title(ctx.getArg(ARG_TRICK))
-                        .addField("Owner", ctx.getClient().getUserById(Snowflake.of(data.getOwner()))
-                                .map(user -> user.getMention() + " (" + user.getUsername() + ")").block(), true)
-                        .addField("Type", data.getType().toString(), true)
-                        .addField("Global", Boolean.toString(global), true)
-                        .addField("Official", Boolean.toString(data.isOfficial()), true);
-                if (ctx.hasFlag(FLAG_SRC)) {
-                    builder.description("Source:\n```" + data.getType().getHighlighter() + "\n" + data.getInput() + "\n```");
-                }
+                final boolean isGlobal = global;
+                Mono<String> owner = ctx.getClient().getUserById(Snowflake.of(data.getOwner()))
+                        .map(user -> user.getMention() + " (" + user.getUsername() + ")");
+                Mono<Boolean> canDelete = td.owner == ctx.getAuthor().get().getId().asLong() ? Mono.just(true) : canManage(ctx);
+                return Mono.zip(owner, canDelete).flatMap(t -> {
+                    EmbedCreateSpec.Builder builder = EmbedCreateSpec.builder()
+                            .title(ctx.getArg(ARG_TRICK))
+                            .addField("Owner", t.getT1(), true)
+                            .addField("Type", td.getType().toString(), true)
+                            .addField("Global", Boolean.toString(isGlobal), true)
+                            .addField("Official", Boolean.toString(td.isOfficial()), true);
+                    if (ctx.hasFlag(FLAG_SRC)) {
+                        builder.description("Source:\n```" + td.getType().getHighlighter() + "\n" + td.getInput() + "\n```");
+                    }
 
-                final MessageCreateSpec.Builder messageBuilder = MessageCreateSpec.builder()
-                        .addEmbed(builder.build());
+                    final MessageCreateSpec.Builder messageBuilder = MessageCreateSpec.builder()
+                            .addEmbed(builder.build());
 
-                if (td.owner == ctx.getAuthor().get().getId().asLong() || canManage(ctx)) {
-                    messageBuilder.addComponent(ActionRow.of(
-                            Button.danger(DELETE_TRICK_ID + ctx.getArg(ARG_TRICK), "Delete Trick")
-                    ));
-                }
-                return ctx.getChannel().flatMap(channel -> channel.createMessage(messageBuilder.build()));
+                    if (t.getT2()) {
+                        messageBuilder.addComponent(ActionRow.of(
+                                Button.danger(DELETE_TRICK_ID + ctx.getArg(ARG_TRICK), "Delete Trick")
+                        ));
+                    }
+                    return ctx.getChannel().flatMap(channel -> channel.createMessage(messageBuilder.build()));
+                });
             } else if (ctx.hasFlag(FLAG_SRC)) {
                 if (data.getInput().length() > 1900) {
                     final TrickData finalData = data;
@@ -439,12 +408,57 @@ public class CommandTrick extends CommandPersisted<ConcurrentHashMap<String, Tri
         }
     }
 
-    private static boolean canManage(CommandContext ctx) {
-        return REMOVE_PERMS.matches(ctx).block() || ctx.getMember().map(member -> member.getRoleIds().contains(REMOVE_PERMS_ROLE)).block();
+    private static Mono<Boolean> canManage(CommandContext ctx) {
+        return REMOVE_PERMS.matches(ctx)
+                .filter(Boolean::booleanValue)
+                .switchIfEmpty(ctx.getMember().map(member -> member.getRoleIds().contains(REMOVE_PERMS_ROLE)))
+                .defaultIfEmpty(false);
     }
 
-    private static boolean canManage(Member member) {
-        return REMOVE_PERMS.matches(member).block() || member.getRoleIds().contains(REMOVE_PERMS_ROLE);
+    private static Mono<Boolean> canManage(Member member) {
+        return member.getRoleIds().contains(REMOVE_PERMS_ROLE) ? Mono.just(true) : REMOVE_PERMS.matches(member);
+    }
+
+    private Mono<Message> addTrick(CommandContext ctx, TrickType type, String trick, boolean official, String args) {
+        if (ctx.getK9().getCommands().findCommand((Snowflake) null, trick).isPresent() && !ctx.getAuthor().filter(ctx.getK9().getCommands()::isAdmin).isPresent()) {
+            return ctx.error("Cannot add a trick with the same name as a command.");
+        }
+        long author = ctx.getAuthor().get().getId().asLong();
+        if (ctx.hasFlag(FLAG_GLOBAL)) {
+            if (official) {
+                return ctx.error("Global commands cannot be official.");
+            }
+            if (!ctx.getK9().getCommands().isAdmin(ctx.getAuthor().get())) {
+                return ctx.error("You do not have permission to add global tricks.");
+            }
+            TrickData existing = globalTricks.get(trick);
+            globalTricks.put(trick, new TrickData(type, args, existing == null ? author : existing.getOwner()));
+            trickCache.getOrDefault(0L, new HashMap<>()).remove(trick);
+            return Mono.fromRunnable(() -> globalHelper.writeJson("global_tricks.json", globalTricks))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then(ctx.reply(existing == null ? "Added new trick!" : "Updated trick!"));
+        }
+        if (!ctx.getGuildId().isPresent()) {
+            return ctx.error("Cannot add local tricks in private message.");
+        }
+        long guild = ctx.getGuildId().get().asLong();
+        Map<String, TrickData> tricks = storage.get(ctx).get();
+        TrickData existing = tricks.get(trick);
+        if (existing == null && ctx.hasFlag(FLAG_UPDATE)) {
+            return ctx.error("No trick with that name exists to update.");
+        }
+        return (existing == null || existing.getOwner() == author ? Mono.just(true) : canManage(ctx))
+                .flatMap(allowed -> {
+                    if (!allowed) {
+                        return ctx.<Message>error("A trick with this name already exists in this guild.");
+                    }
+                    if (existing != null && !ctx.hasFlag(FLAG_UPDATE)) {
+                        return ctx.<Message>error("A trick with this name already exists! Use -u to overwrite.");
+                    }
+                    tricks.put(trick, new TrickData(type, args, existing == null ? author : existing.getOwner(), official));
+                    trickCache.getOrDefault(guild, new HashMap<>()).remove(trick);
+                    return ctx.reply(existing == null ? "Added new trick!" : "Updated trick!");
+                });
     }
 
     private BakedMessage addFooter(BakedMessage msg, String footer) {
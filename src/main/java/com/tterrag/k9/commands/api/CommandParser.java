@@ -0,0 +1,401 @@
+package com.tterrag.k9.commands.api;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.tterrag.k9.util.Patterns;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Splits the arguments of a command invocation into its flags and arguments.
+ * <p>
+ * One parser is compiled per command when it is registered, with its flags in lookup tables and each argument bound to
+ * a scanner for its pattern. Parsing is then a single pass over the input that tracks the start and end of what is left
+ * instead of cutting the string after every flag and argument, so only the values themselves are allocated.
+ * <p>
+ * Flags are read from the start of the input as by {@link Patterns#FLAGS}, and arguments are then matched in order,
+ * each consuming the first match of its {@link Argument#pattern() pattern} along with any whitespace after it.
+ */
+final class CommandParser {
+
+    private static final byte WORD = 1, SPACE = 2, QUOTE = 4, LINE_END = 8;
+
+    /**
+     * Character classes of ASCII characters, as a bitmask of the constants above.
+     */
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] |= WORD;
+            CLASSES[Character.toUpperCase(c)] |= WORD;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] |= WORD;
+        }
+        CLASSES['_'] |= WORD;
+        for (char c : " \t\n\u000B\f\r".toCharArray()) {
+            CLASSES[c] |= SPACE;
+        }
+        CLASSES['"'] |= QUOTE;
+        CLASSES['\n'] |= LINE_END;
+        CLASSES['\r'] |= LINE_END;
+    }
+
+    private static int classOf(char c) {
+        if (c < 128) {
+            return CLASSES[c];
+        } else if (c == '\u201C' || c == '\u201D') {
+            return QUOTE;
+        } else if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+            return LINE_END;
+        }
+        return 0;
+    }
+
+    private static boolean is(char c, int type) {
+        return (classOf(c) & type) != 0;
+    }
+
+    /**
+     * A word character for the purposes of {@code \b}, which unlike {@code \w} is not limited to ASCII.
+     */
+    private static boolean isBoundaryWord(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private enum Scanner {
+        /** {@link Patterns#MATCH_ALL} */
+        REST,
+        /** {@link Patterns#MATCH_WORD} */
+        WORD,
+        /** {@link Patterns#MATCH_INT} */
+        INTEGER,
+        /** {@link Patterns#MATCH_DOUBLE} */
+        DECIMAL,
+        /** Any other pattern, matched as a regex. */
+        PATTERN;
+
+        static Scanner of(Pattern pattern) {
+            if (pattern == Patterns.MATCH_ALL) {
+                return REST;
+            } else if (pattern == Patterns.MATCH_WORD) {
+                return WORD;
+            } else if (pattern == Patterns.MATCH_INT) {
+                return INTEGER;
+            } else if (pattern == Patterns.MATCH_DOUBLE) {
+                return DECIMAL;
+            }
+            return PATTERN;
+        }
+    }
+
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    @Getter
+    static class Result {
+        private final @Nullable String error;
+        private final Map<Flag, String> flags;
+        private final Map<Argument<?>, String> args;
+
+        private static Result error(String error) {
+            return new Result(error, new HashMap<>(), new HashMap<>());
+        }
+    }
+
+    /**
+     * Flags by their short name, for every ASCII word character.
+     */
+    private final Flag[] shortFlags = new Flag[128];
+    private final Flag[] longFlags;
+    private final Argument<?>[] arguments;
+    private final Scanner[] scanners;
+
+    private CommandParser(Collection<Flag> flags, Collection<Argument<?>> arguments) {
+        this.longFlags = new Flag[flags.size()];
+        int i = 0;
+        for (Flag flag : flags) {
+            char name = flag.name();
+            if (name < 128) {
+                if (shortFlags[name] != null) {
+                    throw new IllegalStateException("Duplicate flag " + name + ": " + shortFlags[name] + " and " + flag);
+                }
+                shortFlags[name] = flag;
+            }
+            for (int j = 0; j < i; j++) {
+                if (longFlags[j].longFormName().equals(flag.longFormName())) {
+                    throw new IllegalStateException("Duplicate flag " + flag.longFormName() + ": " + longFlags[j] + " and " + flag);
+                }
+            }
+            longFlags[i++] = flag;
+        }
+        this.arguments = arguments.toArray(new Argument<?>[0]);
+        this.scanners = new Scanner[this.arguments.length];
+        for (int j = 0; j < scanners.length; j++) {
+            scanners[j] = Scanner.of(this.arguments[j].pattern());
+        }
+    }
+
+    static CommandParser compile(ICommand command) {
+        return new CommandParser(command.getFlags(), command.getArguments());
+    }
+
+    private @Nullable Flag findLong(String s, int start, int end) {
+        int len = end - start;
+        for (Flag flag : longFlags) {
+            String name = flag.longFormName();
+            if (name.length() == len && s.regionMatches(start, name, 0, len)) {
+                return flag;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The input being parsed, and the bounds of what is left of it.
+     */
+    private static class Input {
+        String s;
+        int pos, end;
+
+        Input(String s) {
+            this.s = s;
+            this.end = s.length();
+        }
+
+        boolean isEmpty() {
+            return pos >= end;
+        }
+
+        String remaining() {
+            return s.substring(pos, end);
+        }
+
+        /**
+         * Consume everything up to {@code to}, then any whitespace.
+         */
+        void consume(int to) {
+            pos = to;
+            trim();
+        }
+
+        /**
+         * Cut the span from {@code start} to {@code to}, along with any whitespace after it. The rest is copied if it is
+         * not at the start of the input.
+         */
+        void cut(int start, int to) {
+            if (start == pos) {
+                consume(to);
+                return;
+            }
+            while (to < end && is(s.charAt(to), SPACE)) {
+                to++;
+            }
+            s = s.substring(pos, start) + s.substring(to, end);
+            pos = 0;
+            end = s.length();
+            trim();
+        }
+
+        private void trim() {
+            while (pos < end && s.charAt(pos) <= ' ') {
+                pos++;
+            }
+            while (end > pos && s.charAt(end - 1) <= ' ') {
+                end--;
+            }
+        }
+    }
+
+    Result parse(String argstr) {
+        Map<Flag, String> flags = new HashMap<>();
+        Map<Argument<?>, String> args = new HashMap<>();
+        Input in = new Input(argstr);
+        String s = argstr;
+
+        while (in.pos < in.end && s.charAt(in.pos) == '-') {
+            int pos = in.pos, end = in.end;
+            boolean isLong = pos + 1 < end && s.charAt(pos + 1) == '-';
+            int nameStart = pos + (isLong ? 2 : 1);
+            int nameEnd = nameStart;
+            while (nameEnd < end && is(s.charAt(nameEnd), WORD)) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart) {
+                break; // Not a flag, so the arguments start here
+            }
+
+            // An optional value, either quoted within one line or up to the next whitespace
+            int valueStart = -1, valueEnd = -1, matchEnd = nameEnd;
+            if (nameEnd < end && (s.charAt(nameEnd) == '=' || is(s.charAt(nameEnd), SPACE))) {
+                int v = nameEnd + 1;
+                if (v < end && is(s.charAt(v), QUOTE)) {
+                    int close = v + 1;
+                    while (close < end && !is(s.charAt(close), QUOTE | LINE_END)) {
+                        close++;
+                    }
+                    if (close < end && is(s.charAt(close), QUOTE)) {
+                        valueStart = v + 1;
+                        valueEnd = close;
+                        matchEnd = close + 1;
+                    }
+                }
+                if (valueStart == -1) {
+                    int w = v;
+                    while (w < end && !is(s.charAt(w), SPACE)) {
+                        w++;
+                    }
+                    if (w > v) {
+                        valueStart = v;
+                        valueEnd = w;
+                        matchEnd = w;
+                    }
+                }
+            }
+
+            int consumed = nameEnd;
+            if (isLong) {
+                Flag flag = findLong(s, nameStart, nameEnd);
+                if (flag == null) {
+                    return Result.error("Unknown flag(s) \"" + s.substring(nameStart, nameEnd) + "\".");
+                }
+                String error = putFlag(flags, flag, true, s, valueStart, valueEnd);
+                if (error != null) {
+                    return Result.error(error);
+                }
+                if (flag.canHaveValue()) {
+                    consumed = matchEnd;
+                }
+            } else {
+                for (int i = nameStart; i < nameEnd; i++) {
+                    if (shortFlags[s.charAt(i)] == null) {
+                        return Result.error("Unknown flag(s) \"" + s.substring(nameStart, nameEnd) + "\".");
+                    }
+                }
+                for (int i = nameStart; i < nameEnd; i++) {
+                    Flag flag = shortFlags[s.charAt(i)];
+                    boolean last = i == nameEnd - 1;
+                    String error = putFlag(flags, flag, last, s, valueStart, valueEnd);
+                    if (error != null) {
+                        return Result.error(error);
+                    }
+                    if (last && flag.canHaveValue()) {
+                        consumed = matchEnd;
+                    }
+                }
+            }
+            in.consume(consumed);
+        }
+
+        for (int i = 0; i < arguments.length; i++) {
+            Argument<?> arg = arguments[i];
+            boolean required = arg.required(flags.keySet());
+            if (required && in.isEmpty()) {
+                long count = 0;
+                for (Argument<?> a : arguments) {
+                    if (a.required(flags.keySet())) {
+                        count++;
+                    }
+                }
+                return Result.error("This command requires at least " + count + " argument" + (count > 1 ? "s" : "") + ".");
+            }
+
+            long span = scan(scanners[i], arg.pattern(), in.s, in.pos, in.end);
+            if (span != -1) {
+                int start = (int) (span >>> 32), end = (int) span;
+                args.put(arg, in.s.substring(start, end));
+                in.cut(start, end);
+            } else if (required) {
+                return Result.error("Argument " + arg.name() + " does not accept input: " + in.remaining() + " (does not match `" + arg.pattern().pattern() + "`)");
+            }
+        }
+        return new Result(null, flags, args);
+    }
+
+    private static @Nullable String putFlag(Map<Flag, String> flags, Flag flag, boolean last, String s, int valueStart, int valueEnd) {
+        String value = last && flag.canHaveValue() && valueStart != -1 ? s.substring(valueStart, valueEnd) : null;
+        if (value == null && flag.needsValue()) {
+            return "Flag \"" + flag.longFormName() + "\" requires a value.";
+        }
+        flags.put(flag, value == null ? flag.getDefaultValue() : value);
+        return null;
+    }
+
+    /**
+     * @return The first match in {@code s} between {@code pos} and {@code end}, as its start and end packed into a long,
+     *         or -1 if there is none.
+     */
+    private static long scan(Scanner scanner, Pattern pattern, String s, int pos, int end) {
+        switch (scanner) {
+            case REST:
+                return pos < end ? span(pos, end) : -1;
+            case WORD:
+                while (pos < end && is(s.charAt(pos), SPACE)) {
+                    pos++;
+                }
+                int wordEnd = pos;
+                while (wordEnd < end && !is(s.charAt(wordEnd), SPACE)) {
+                    wordEnd++;
+                }
+                return wordEnd > pos ? span(pos, wordEnd) : -1;
+            case INTEGER:
+            case DECIMAL:
+                return scanNumber(s, pos, end, scanner == Scanner.DECIMAL);
+            default:
+                Matcher matcher = pattern.matcher(s).region(pos, end);
+                return matcher.find() ? span(matcher.start(), matcher.end()) : -1;
+        }
+    }
+
+    private static long scanNumber(String s, int pos, int end, boolean decimal) {
+        int i = pos;
+        while (i < end) {
+            char c = s.charAt(i);
+            int digits = c == '-' || c == '+' ? i + 1 : i;
+            int intEnd = digits;
+            while (intEnd < end && isDigit(s.charAt(intEnd))) {
+                intEnd++;
+            }
+            if (intEnd == digits) {
+                i++;
+                continue;
+            }
+            if (decimal && intEnd + 1 < end && s.charAt(intEnd) == '.' && isDigit(s.charAt(intEnd + 1))) {
+                int fracEnd = intEnd + 1;
+                while (fracEnd < end && isDigit(s.charAt(fracEnd))) {
+                    fracEnd++;
+                }
+                if (isBoundary(s, fracEnd, end)) {
+                    return span(i, fracEnd);
+                }
+            }
+            if (isBoundary(s, intEnd, end)) {
+                return span(i, intEnd);
+            }
+            // Any match starting within these digits would end at the same place
+            i = intEnd;
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return If there is a word boundary after a digit at {@code i}.
+     */
+    private static boolean isBoundary(String s, int i, int end) {
+        return i == end || !isBoundaryWord(s.charAt(i));
+    }
+
+    private static long span(int start, int end) {
+        return (long) start << 32 | end;
+    }
+}
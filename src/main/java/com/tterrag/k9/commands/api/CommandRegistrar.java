@@ -4,17 +4,12 @@ import java.io.File;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.reflect.ClassPath;
 import com.google.common.reflect.ClassPath.ClassInfo;
@@ -24,7 +19,6 @@ import com.tterrag.k9.K9;
 import com.tterrag.k9.commands.CommandControl;
 import com.tterrag.k9.commands.CommandControl.ControlData;
 import com.tterrag.k9.util.NullHelper;
-import com.tterrag.k9.util.Patterns;
 import com.tterrag.k9.util.annotation.Nullable;
 
 import discord4j.common.util.Snowflake;
@@ -52,6 +46,14 @@ public class CommandRegistrar {
     private final K9 k9;
     
     private final Map<String, ICommand> commands = Maps.newTreeMap();
+    private final Map<String, CommandParser> parsers = Maps.newHashMap();
+    /**
+     * A snapshot of {@link #commands}, rebuilt whenever a command is registered, which the command tables of all guilds
+     * share.
+     */
+    private volatile CommandTable.Index index = new CommandTable.Index(Collections.emptyList());
+    private volatile CommandTable global = new CommandTable(index, Collections.emptySet());
+    private final Map<Long, CommandTable> tables = new ConcurrentHashMap<>();
     private final CommandControl ctrl = new CommandControl();
     
     private final @NonNull GsonBuilder builder = new GsonBuilder();
@@ -68,104 +70,55 @@ public class CommandRegistrar {
     }
 
     public Mono<ICommand> invokeCommand(MessageCreateEvent evt, String name, String argstr) {
-        Optional<ICommand> commandReq = findCommand(evt.getGuildId().orElse(null), name); 
-        
-        ICommand command = commandReq.filter(c -> !c.admin() || evt.getMessage().getAuthor().map(this::isAdmin).orElse(false)).orElse(null);
-        if (command == null) {
+        return findCommand(evt.getGuildId().orElse(null), name)
+                .map(command -> invokeCommand(evt, command, argstr))
+                .orElse(Mono.empty());
+    }
+
+    public Mono<ICommand> invokeCommand(MessageCreateEvent evt, ICommand command, @Nullable String argstr) {
+        if (command.admin() && !evt.getMessage().getAuthor().map(this::isAdmin).orElse(false)) {
             return Mono.empty();
         }
         
         CommandContext ctx = new CommandContext(k9, evt);
         
-        if (!command.requirements().matches(ctx).block()) {
-            return evt.getMessage().getChannel()
-                    .flatMap(c -> c.createMessage("You do not have permission to use this command!"))
-                    .delayElement(Duration.ofSeconds(5))
-                    .flatMap(m -> m.delete())
-                    .thenReturn(command);
-        }
-        
-//        evt.getMessage().getChannel().flatMap(c -> c.type()).subscribe();
-        
-        argstr = Strings.nullToEmpty(argstr);
-        
-        Map<Flag, String> flags = new HashMap<>();
-        Map<Argument<?>, String> args = new HashMap<>();
-        
-        Map<Character, Flag> keyToFlag = command.getFlags().stream().collect(Collectors.toMap(Flag::name, f -> f));
-        Map<String, Flag> longKeyToFlag = command.getFlags().stream().collect(Collectors.toMap(Flag::longFormName, f -> f));
-
-        Matcher matcher = Patterns.FLAGS.matcher(argstr);
-        while (matcher.find()) {
-            String flagname = matcher.group(2);
-            List<Flag> foundFlags;
-            if (matcher.group().startsWith("--")) {
-                foundFlags = Collections.singletonList(longKeyToFlag.get(flagname));
-            } else if (matcher.group().startsWith("-")) {
-                foundFlags = Lists.newArrayList(flagname.chars().mapToObj(i -> keyToFlag.get((char) i)).toArray(Flag[]::new));
-            } else {
-                continue;
-            }
-            if (foundFlags.contains(null)) {
-                return ctx.reply("Unknown flag(s) \"" + flagname + "\".").thenReturn(command);
-            }
-            
-            String toreplace = matcher.group(1) + matcher.group(2);
-
-            for (int i = 0; i < foundFlags.size(); i++) {
-                Flag flag = foundFlags.get(i);
-                String value = null;
-                if (i == foundFlags.size() - 1) {
-                    if (flag.canHaveValue()) {
-                        value = matcher.group(3);
-                        if (value == null) {
-                            value = matcher.group(4);
-                        }
-                        toreplace = matcher.group();
-                    }
-                }
-                if (value == null && flag.needsValue()) {
-                    return ctx.reply("Flag \"" + flag.longFormName() + "\" requires a value.").thenReturn(command);
-                }
-
-                flags.put(flag, value == null ? flag.getDefaultValue() : value);
+        return command.requirements().matches(ctx)
+                .flatMap(allowed -> allowed ? execute(command, ctx, argstr) : evt.getMessage().getChannel()
+                        .flatMap(c -> c.createMessage("You do not have permission to use this command!"))
+                        .delayElement(Duration.ofSeconds(5))
+                        .flatMap(m -> m.delete())
+                        .thenReturn(command));
+    }
+    
+    private Mono<ICommand> execute(ICommand command, CommandContext ctx, @Nullable String argstr) {
+        CommandParser parser = parsers.get(command.getName());
+        if (parser == null) {
+            try {
+                parser = CommandParser.compile(command);
+            } catch (IllegalStateException e) {
+                return ctx.reply("Unexpected error processing command: " + e).thenReturn(command);
             }
-            toreplace = Pattern.quote(toreplace) + "\\s*";
-            argstr = argstr.replaceFirst(toreplace, "").trim();
-            matcher.reset(argstr);
         }
-
-        for (Argument<?> arg : command.getArguments()) {
-            boolean required = arg.required(flags.keySet());
-            if (required && argstr.isEmpty()) {
-                long count = command.getArguments().stream().filter(a -> a.required(flags.keySet())).count();
-                return ctx.reply("This command requires at least " + count + " argument" + (count > 1 ? "s" : "") + ".").thenReturn(command);
-            }
-            
-            matcher = arg.pattern().matcher(argstr);
-            
-            if (matcher.find()) {
-                String match = matcher.group();
-                argstr = argstr.replaceFirst(Pattern.quote(match) + "\\s*", "").trim();
-                args.put(arg, match);
-            } else if (required) {
-                return ctx.reply("Argument " + arg.name() + " does not accept input: " + argstr + " (does not match `" + arg.pattern().pattern() + "`)").thenReturn(command);
-            }
+        CommandParser.Result parsed = parser.parse(Strings.nullToEmpty(argstr));
+        String error = parsed.getError();
+        if (error != null) {
+            return ctx.reply(error).thenReturn(command);
         }
+        Map<Flag, String> flags = parsed.getFlags();
+        Map<Argument<?>, String> args = parsed.getArgs();
 
-        try {
-            final Mono<?> commandResult = command.process(ctx.withFlags(flags).withArgs(args))
-                    .doOnError(t -> log.error("Exception invoking command: ", t))
-                    .onErrorResume(CommandException.class, t -> ctx.reply("Could not process command: " + t).then(Mono.empty()))
-                    .onErrorResume(ClientException.class, t -> ctx.reply("Discord error processing command: " + t.getStatus() + " - " + t.getErrorResponse().map(e -> e.getFields().toString()).orElse("{}")).then(Mono.empty()))
-                    .onErrorResume(t -> ctx.reply("Unexpected error processing command: " + t).then(Mono.empty()));
-            return evt.getMessage().getChannel() // Automatic typing indicator
-                    .flatMap(c -> c.typeUntil(commandResult).then())
-                    .thenReturn(command);
-        } catch (RuntimeException e) {
-            log.error("Exception invoking command: ", e);
-            return ctx.reply("Unexpected error processing command: " + e).thenReturn(command); // TODO should this be different?
+        Mono<?> process = Mono.defer(() -> command.process(ctx.withFlags(flags).withArgs(args)));
+        if (command.isBlocking()) {
+            process = process.subscribeOn(Schedulers.boundedElastic());
         }
+        final Mono<?> commandResult = process
+                .doOnError(t -> log.error("Exception invoking command: ", t))
+                .onErrorResume(CommandException.class, t -> ctx.reply("Could not process command: " + t).then(Mono.empty()))
+                .onErrorResume(ClientException.class, t -> ctx.reply("Discord error processing command: " + t.getStatus() + " - " + t.getErrorResponse().map(e -> e.getFields().toString()).orElse("{}")).then(Mono.empty()))
+                .onErrorResume(t -> ctx.reply("Unexpected error processing command: " + t).then(Mono.empty()));
+        return ctx.getMessage().getChannel() // Automatic typing indicator
+                .flatMap(c -> c.typeUntil(commandResult).then())
+                .thenReturn(command);
     }
     
     public boolean isAdmin(User user) {
@@ -177,10 +130,23 @@ public class CommandRegistrar {
     }
 
     public Optional<ICommand> findCommand(@Nullable Snowflake guild, String name) {
-        if (guild != null && ctrl.getData(guild).getCommandBlacklist().contains(name)) {
-            return Optional.empty();
-        }
-        return Optional.ofNullable(commands.get(name));
+        return Optional.ofNullable(getCommandTable(guild).get(name));
+    }
+
+    /**
+     * Find a command by a name that is part of a larger string, without cutting it out first.
+     *
+     * @return The command named by the characters from {@code start} (inclusive) to {@code end} (exclusive), or null
+     *         if there is none or it is blacklisted in the guild.
+     */
+    public @Nullable ICommand findCommand(@Nullable Snowflake guild, CharSequence text, int start, int end) {
+        return getCommandTable(guild).get(text, start, end);
+    }
+
+    private void reindex() {
+        index = new CommandTable.Index(commands.values());
+        global = new CommandTable(index, Collections.emptySet());
+        tables.clear();
     }
 
     public void slurpCommands() {
@@ -218,6 +184,12 @@ public class CommandRegistrar {
         }
         if (!command.isTransient()) {
             commands.put(command.getName(), command);
+            try {
+                parsers.put(command.getName(), CommandParser.compile(command));
+            } catch (IllegalStateException e) {
+                log.error("Could not compile the flags and arguments of command {}: ", command.getName(), e);
+            }
+            reindex();
             command.gatherParsers(builder);
             command.onRegister(k9);
         }
@@ -226,6 +198,8 @@ public class CommandRegistrar {
 
     public void unregisterCommand(ICommand command) {
         commands.remove(command.getName());
+        parsers.remove(command.getName());
+        reindex();
         command.onUnregister();
     }
     
@@ -234,8 +208,8 @@ public class CommandRegistrar {
         locked = true;
         gson = NullHelper.notnullL(builder.create(), "GsonBuilder#create");
         autoSaveSubscriber = Flux.interval(Duration.ofSeconds(30), Duration.ofMinutes(5))
-                .doOnNext($ -> saveAll())
                 .publishOn(Schedulers.newSingle("Command Auto-save"))
+                .doOnNext($ -> saveAll())
                 .subscribe();
         
         final ReadyContext ctx = new ReadyContext(k9, gateway, DATA_FOLDER, gson); 
@@ -267,12 +241,24 @@ public class CommandRegistrar {
     }
     
     public Iterable<ICommand> getCommands(@Nullable Snowflake guild) {
+        return getCommandTable(guild);
+    }
+
+    /**
+     * @return The commands available in the guild, or all commands if it is null.
+     */
+    public CommandTable getCommandTable(@Nullable Snowflake guild) {
         if (guild == null) {
-            return commands.values();
+            return global;
         }
-        return commands.values().stream()
-                .filter(c -> !ctrl.getData(guild).getCommandBlacklist().contains(c.getName()))
-                .collect(Collectors.toList());
+        return tables.computeIfAbsent(guild.asLong(), id -> new CommandTable(index, ctrl.getData(guild).getCommandBlacklist()));
+    }
+
+    /**
+     * Drop the command table of a guild, after its blacklist has been changed.
+     */
+    public void invalidateCommands(Snowflake guild) {
+        tables.remove(guild.asLong());
     }
 
     public Optional<ControlData> getControls(CommandContext ctx) {
@@ -0,0 +1,116 @@
+package com.tterrag.k9.commands.api;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.tterrag.k9.util.NameTrie;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+/**
+ * The commands available in one guild, that is every registered command not on its blacklist.
+ * <p>
+ * All tables share one {@link Index} of the registered commands, so a table itself is only a bitset over their
+ * indices. Looking a command up by name or checking whether it is available allocates nothing, and the blacklist is
+ * read only when the table is built.
+ */
+public final class CommandTable implements Iterable<ICommand> {
+
+    /**
+     * Every registered command, numbered in name order.
+     */
+    static final class Index {
+
+        final ICommand[] commands;
+        final Object2IntMap<String> byName;
+        final Reference2IntMap<ICommand> byCommand;
+        final NameTrie<Integer> names;
+
+        Index(Collection<ICommand> commands) {
+            this.commands = commands.toArray(new ICommand[0]);
+            this.byName = new Object2IntOpenHashMap<>(this.commands.length);
+            this.byCommand = new Reference2IntOpenHashMap<>(this.commands.length);
+            byName.defaultReturnValue(-1);
+            byCommand.defaultReturnValue(-1);
+            for (int i = 0; i < this.commands.length; i++) {
+                byName.put(this.commands[i].getName(), i);
+                byCommand.put(this.commands[i], i);
+            }
+            this.names = NameTrie.of(byName);
+        }
+    }
+
+    private final Index index;
+    private final BitSet enabled;
+
+    CommandTable(Index index, Set<String> blacklist) {
+        this.index = index;
+        this.enabled = new BitSet(index.commands.length);
+        for (int i = 0; i < index.commands.length; i++) {
+            if (!blacklist.contains(index.commands[i].getName())) {
+                enabled.set(i);
+            }
+        }
+    }
+
+    private @Nullable ICommand get(int i) {
+        return i >= 0 && enabled.get(i) ? index.commands[i] : null;
+    }
+
+    /**
+     * @return The command with the given name, or null if there is none or it is not available.
+     */
+    public @Nullable ICommand get(String name) {
+        return get(index.byName.getInt(name));
+    }
+
+    /**
+     * @return The command named by the characters from {@code start} (inclusive) to {@code end} (exclusive), or null
+     *         if there is none or it is not available.
+     */
+    public @Nullable ICommand get(CharSequence text, int start, int end) {
+        Integer i = index.names.get(text, start, end);
+        return i == null ? null : get(i);
+    }
+
+    public boolean isEnabled(ICommand command) {
+        return get(index.byCommand.getInt(command)) != null;
+    }
+
+    public int size() {
+        return enabled.cardinality();
+    }
+
+    /**
+     * Iterates over the available commands in name order.
+     */
+    @Override
+    public Iterator<ICommand> iterator() {
+        return new Iterator<ICommand>() {
+
+            private int next = enabled.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public ICommand next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                ICommand ret = index.commands[next];
+                next = enabled.nextSetBit(next + 1);
+                return ret;
+            }
+        };
+    }
+}
@@ -44,6 +44,14 @@ public interface ICommand {
 	default boolean isTransient() {
 	    return false;
 	}
+
+	/**
+	 * Use this if {@link #process(CommandContext)} blocks, so that it is run on a scheduler that allows blocking instead
+	 * of the event threads.
+	 */
+	default boolean isBlocking() {
+	    return false;
+	}
 	
 	/**
 	 * A set of commands to be registered at the time this command is registered. Use this for special constructors.
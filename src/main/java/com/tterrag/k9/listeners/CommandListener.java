@@ -1,36 +1,39 @@
 package com.tterrag.k9.listeners;
 
 import java.time.Duration;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Optional;
 import java.util.function.LongFunction;
-import java.util.regex.Pattern;
-
-import org.apache.commons.lang3.tuple.Pair;
 
 import com.tterrag.k9.commands.CommandTrick;
 import com.tterrag.k9.commands.api.CommandRegistrar;
 import com.tterrag.k9.commands.api.ICommand;
+import com.tterrag.k9.listeners.CommandRouter.Route;
+import com.tterrag.k9.util.annotation.Nullable;
 
 import discord4j.common.util.Snowflake;
 import discord4j.core.event.domain.message.MessageCreateEvent;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 
-@RequiredArgsConstructor
 @Slf4j
 public class CommandListener {
     
     public static final String DEFAULT_PREFIX = "!";
-	public static final String CMD_PATTERN = "%s(%s)?(\\S+)(?:\\s(.*))?$";
 
+    /**
+     * Where prefixes are loaded from. They are read through {@link CommandRouter#getPrefixes(Snowflake)}, so
+     * {@link CommandRouter#invalidatePrefixes()} must be called when this is replaced.
+     */
     public static LongFunction<String> prefixes = id -> DEFAULT_PREFIX;
-    private static final Map<Pair<String, String>, Pattern> patternCache = new HashMap<>();
     
     private final CommandRegistrar commands;
+    private final CommandRouter router;
+    
+    public CommandListener(CommandRegistrar commands) {
+        this.commands = commands;
+        this.router = new CommandRouter(commands);
+    }
     
     public Mono<MessageCreateEvent> onMessage(MessageCreateEvent event) {
         return this.tryInvoke(event)
@@ -45,36 +48,30 @@ public class CommandListener {
     }
     
     private Mono<Void> tryInvoke(MessageCreateEvent evt) {
+        String content = evt.getMessage().getContent();
+        Snowflake guild = evt.getGuildId().orElse(null);
+
         // Hardcoded check for "@K9 help" for a global help command
-        Mono<String> specialHelpCheck = Mono.just(evt.getMessage())
+        Mono<String> specialHelpCheck = content.indexOf("<@") < 0 ? Mono.empty() : Mono.just(evt.getMessage())
                 .filter(msg -> !msg.getUserMentions().isEmpty() && msg.getUserMentions().get(0).getId().equals(evt.getClient().getSelfId()))
                 .map(msg -> msg.getContent().replaceAll("<@!?" + evt.getClient().getSelfId().asLong() + ">", "").trim())
-                .filter(content -> content.toLowerCase(Locale.ROOT).matches("^help.*"))
-                .flatMap(content -> commands.invokeCommand(evt, "help", content.substring(4).trim()).thenReturn(""));
-                
-        Snowflake guild = evt.getGuildId().orElse(null);
-        String cmdPrefix = getPrefix(guild);
-        String trickPrefix = CommandTrick.getTrickPrefix(guild);
-        
-        Mono<?> invokeCommand = Mono.just(patternCache.computeIfAbsent(Pair.of(cmdPrefix, trickPrefix), prefix -> Pattern.compile(String.format(CMD_PATTERN, Pattern.quote(cmdPrefix), Pattern.quote(trickPrefix)), Pattern.DOTALL)))
-           .map(p -> p.matcher(evt.getMessage().getContent()))
-           .filter(m -> m.matches())
-           .flatMap(m -> {
-               String args = m.group(3);
-               return commands.invokeCommand(evt, m.group(2), args)
-                              .switchIfEmpty(runTrickIfPresent(evt, trickPrefix, m.group(1), m.group(2), args));
-           });
+                .filter(msg -> msg.toLowerCase(Locale.ROOT).matches("^help.*"))
+                .flatMap(msg -> commands.invokeCommand(evt, "help", msg.substring(4).trim()).thenReturn(""));
+
+        Mono<?> invokeCommand = Mono.fromSupplier(() -> router.route(guild, content))
+                .flatMap(route -> (route.getCommand() == null ? Mono.<ICommand>empty() : commands.invokeCommand(evt, route.getCommand(), route.getArgs()))
+                        .switchIfEmpty(Mono.defer(() -> runTrickIfPresent(evt, guild, route))));
         
         return specialHelpCheck.switchIfEmpty(invokeCommand.thenReturn("")).then();
     }
     
-    private Mono<ICommand> runTrickIfPresent(MessageCreateEvent evt, String prefix, String trigger, String name, String args) {
-        if (prefix.isEmpty() || trigger != null) {
-            Snowflake guild = evt.getGuildId().orElse(null);
+    private Mono<ICommand> runTrickIfPresent(MessageCreateEvent evt, @Nullable Snowflake guild, Route route) {
+        if (route.isTrick()) {
             CommandTrick cmd = (CommandTrick) commands.findCommand(guild, "trick")
                     .orElseThrow(() -> new IllegalStateException("No trick command?"));
+            String name = route.getName();
             if (cmd.getTrickData(guild, name) != null) {
-                return commands.invokeCommand(evt, "trick", name + (args != null ? " " + args : ""));
+                return commands.invokeCommand(evt, cmd, name + (route.getArgs() != null ? " " + route.getArgs() : ""));
             }
         }
         return Mono.empty();
@@ -85,6 +82,6 @@ public class CommandListener {
     }
     
     public static String getPrefix(Snowflake guild) {
-        return guild == null ? DEFAULT_PREFIX : prefixes.apply(guild.asLong());
+        return CommandRouter.getPrefixes(guild).getCommand();
     }
 }
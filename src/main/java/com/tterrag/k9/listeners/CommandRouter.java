@@ -0,0 +1,115 @@
+package com.tterrag.k9.listeners;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.tterrag.k9.commands.CommandTrick;
+import com.tterrag.k9.commands.api.CommandRegistrar;
+import com.tterrag.k9.commands.api.ICommand;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import discord4j.common.util.Snowflake;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+/**
+ * Decides which messages invoke a command or trick, and which one.
+ * <p>
+ * Almost no message is a command, so each is first checked against the prefix of its guild, kept in a concurrent table
+ * rather than read from the prefix storage every time. Only messages starting with the prefix are split into a name and
+ * arguments, and the name is looked up in the command trie where it lies, without being cut out of the message.
+ */
+@RequiredArgsConstructor
+public class CommandRouter {
+
+    @Value
+    public static class Prefixes {
+        String command;
+        String trick;
+    }
+
+    @Value
+    public static class Route {
+        String content;
+        int nameStart, nameEnd;
+        /**
+         * The command named by the message, or null if it can only be a trick.
+         */
+        @Nullable ICommand command;
+        /**
+         * Everything after the whitespace following the name, or null if the message ends with the name.
+         */
+        @Nullable String args;
+        /**
+         * If the name may be a trick, which is when the trick prefix was used, or there is none.
+         */
+        boolean trick;
+
+        public String getName() {
+            return content.substring(nameStart, nameEnd);
+        }
+    }
+
+    private static final Prefixes DEFAULT_PREFIXES = new Prefixes(CommandListener.DEFAULT_PREFIX, CommandTrick.DEFAULT_PREFIX);
+
+    private static final Map<Long, Prefixes> prefixTable = new ConcurrentHashMap<>();
+
+    private final CommandRegistrar commands;
+
+    public static Prefixes getPrefixes(@Nullable Snowflake guild) {
+        if (guild == null) {
+            return DEFAULT_PREFIXES;
+        }
+        return prefixTable.computeIfAbsent(guild.asLong(), id -> new Prefixes(CommandListener.prefixes.apply(id), CommandTrick.getTrickPrefix(guild)));
+    }
+
+    /**
+     * Drop the prefixes of a guild, after they have been changed.
+     */
+    public static void invalidatePrefixes(Snowflake guild) {
+        prefixTable.remove(guild.asLong());
+    }
+
+    /**
+     * Drop the prefixes of every guild, after the source of prefixes has been changed.
+     */
+    public static void invalidatePrefixes() {
+        prefixTable.clear();
+    }
+
+    /**
+     * @return The command or trick invoked by the message, or null if it is not a command.
+     */
+    public @Nullable Route route(@Nullable Snowflake guild, String content) {
+        Prefixes prefixes = getPrefixes(guild);
+        String cmd = prefixes.getCommand();
+        int len = content.length();
+        if (len <= cmd.length() || !content.startsWith(cmd)) {
+            return null;
+        }
+        int start = cmd.length();
+        String trick = prefixes.getTrick();
+        boolean triggered = false;
+        // Like the name, a trick prefix counts only when something other than whitespace follows it
+        if (!trick.isEmpty() && start + trick.length() < len && content.startsWith(trick, start) && !isWhitespace(content.charAt(start + trick.length()))) {
+            start += trick.length();
+            triggered = true;
+        }
+        if (isWhitespace(content.charAt(start))) {
+            return null;
+        }
+        int end = start + 1;
+        while (end < len && !isWhitespace(content.charAt(end))) {
+            end++;
+        }
+        String args = end == len ? null : content.substring(end + 1);
+        return new Route(content, start, end, commands.findCommand(guild, content, start, end), args, triggered || trick.isEmpty());
+    }
+
+    /**
+     * Matches {@code \s} in a regex.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+}
@@ -5,7 +5,6 @@ import java.time.Duration;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.object.entity.Member;
 import discord4j.rest.util.Permission;
-import discord4j.rest.util.PermissionSet;
 import discord4j.common.util.Snowflake;
 import reactor.core.publisher.Mono;
 
@@ -27,10 +26,10 @@ public enum EnderIOListener {
                      .then(Mono.when(author.addRole(ROLE), event.getMessage().delete()))
                      .subscribe();
             }
-            PermissionSet perms = author.getBasePermissions().block();
-            if (!perms.contains(Permission.ADMINISTRATOR)) {
-                event.getMessage().delete().subscribe();
-            }
+            author.getBasePermissions()
+                  .filter(perms -> !perms.contains(Permission.ADMINISTRATOR))
+                  .flatMap($ -> event.getMessage().delete())
+                  .subscribe();
         }
     }
 }
@@ -15,6 +15,7 @@ import com.tterrag.k9.util.SaveHelper;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Slf4j
 public enum IncrementListener {
@@ -38,9 +39,10 @@ public enum IncrementListener {
                  }
                  String action = matcher.group(2);
                  long incr = action.equals("++") ? 1 : action.equals("--") ? -1 : 0;
-                 long current = counts.get(event.getMessage()).block().merge(key, incr, (a, b) -> a + b);
-                 saveHelper.writeJson(event.getGuildId().get().asLong() + ".json", counts.get(event.getGuildId().get()));
-                 return event.getMessage().getChannel()
+                 long current = counts.get(event.getGuildId().get()).merge(key, incr, (a, b) -> a + b);
+                 return Mono.fromRunnable(() -> saveHelper.writeJson(event.getGuildId().get().asLong() + ".json", counts.get(event.getGuildId().get())))
+                         .subscribeOn(Schedulers.boundedElastic())
+                         .then(event.getMessage().getChannel())
                          .flatMap(chan -> new BakedMessage().withContent(key + " == " + current).send(chan));
              })
              .doOnError(t -> log.error("Exception processing increment:", t))
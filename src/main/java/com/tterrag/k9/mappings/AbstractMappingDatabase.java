@@ -1,36 +1,79 @@
 package com.tterrag.k9.mappings;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.EnumMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
-import com.google.common.collect.Tables;
-import com.tterrag.k9.util.NullHelper;
 import com.tterrag.k9.util.Patterns;
 import com.tterrag.k9.util.annotation.NonNull;
+import com.tterrag.k9.util.annotation.Nullable;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 @RequiredArgsConstructor
+@Slf4j
 public abstract class AbstractMappingDatabase<@NonNull T extends Mapping> implements MappingDatabase<T> {
     
     @Getter
     private final String minecraftVersion;
     
-    private final Table<NameType, MappingType, ListMultimap<String, @NonNull T>> mappings = Tables.newCustomTable(new EnumMap<>(NameType.class), () -> new EnumMap<>(MappingType.class));
+    private static final NameType[] NAME_TYPES = NameType.values();
+    private static final MappingType[] MAPPING_TYPES = MappingType.values();
+    
+    private final MappingTable<@NonNull T>[] mappings = createTables();
+    
+    /**
+     * Suffix indices over the keys of {@link #mappings}, used for fuzzy class lookups.
+     */
+    private final AtomicReferenceArray<SuffixIndex<@NonNull T>> nameIndices = new AtomicReferenceArray<>(NAME_TYPES.length * MAPPING_TYPES.length);
+    
+    /**
+     * Suffix indices over "owner.name" of members, used for owner qualified lookups.
+     */
+    private final AtomicReferenceArray<SuffixIndex<@NonNull T>> ownerIndices = new AtomicReferenceArray<>(NAME_TYPES.length * MAPPING_TYPES.length);
+    
+    private volatile boolean indexed;
+    
+    private volatile boolean frozen;
+    
+    private volatile @Nullable ClassRemapper remapper;
+    
+    private volatile @Nullable ConversionIndex<T> conversionIndex;
+    
+    private volatile @Nullable SuggestionIndex suggestionIndex;
+    
+    /**
+     * Run when something built on demand adds to the size of this database after it was loaded, so that the cache can
+     * weigh it again, see {@link #estimateSize()}.
+     */
+    private volatile @Nullable Runnable sizeListener;
 
     protected abstract Collection<T> parseMappings() throws NoSuchVersionException, IOException;
     
+    @SuppressWarnings("unchecked")
+    private static <T> MappingTable<T>[] createTables() {
+        MappingTable<T>[] ret = new MappingTable[NAME_TYPES.length * MAPPING_TYPES.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = new MappingTable<>();
+        }
+        return ret;
+    }
+    
+    private static int tableIndex(NameType by, MappingType type) {
+        return by.ordinal() * MAPPING_TYPES.length + type.ordinal();
+    }
+    
     protected final void removeFromAll(T mapping) {
-        for (NameType t : NameType.values()) {
+        for (NameType t : NAME_TYPES) {
             String name = t.get(mapping);
             if (name != null) {
                 getTable(t, mapping.getType()).remove(name, mapping);
@@ -39,7 +82,7 @@ public abstract class AbstractMappingDatabase<@NonNull T extends Mapping> implem
     }
     
     protected final void addToAll(T mapping) {
-        for (NameType t : NameType.values()) {
+        for (NameType t : NAME_TYPES) {
             String name = t.get(mapping);
             if (name != null) {
                 getTable(t, mapping.getType()).put(name, mapping);
@@ -52,26 +95,349 @@ public abstract class AbstractMappingDatabase<@NonNull T extends Mapping> implem
         return true;
     }
     
-    protected ListMultimap<String, T> getTable(NameType by, MappingType type) {
-        return NullHelper.notnullJ(mappings.row(by).computeIfAbsent(type, t -> ArrayListMultimap.create()), "Map#computeIfAbsent");
+    protected MappingTable<T> getTable(NameType by, MappingType type) {
+        return mappings[tableIndex(by, type)];
     }
     
     @Override
     public MappingDatabase<T> reload() throws IOException, NoSuchVersionException {
         parseMappings().forEach(this::addMapping);
+        freeze();
         return this;
     }
     
+    /**
+     * Called once all mappings are added. Compacts all tables into their read-only form and builds the class indices.
+     * <p>
+     * Adding and removing mappings does not touch the indices, so any built during the load, from only part of the
+     * mappings, are thrown away here once for the whole batch.
+     */
+    protected void freeze() {
+        invalidateIndices();
+        for (MappingTable<T> table : mappings) {
+            table.freeze();
+        }
+        buildIndices();
+        if (hasSuggestions()) {
+            suggestionIndex = buildSuggestionIndex();
+        }
+        frozen = true;
+    }
+    
+    /**
+     * @return False if names in this database are never looked up directly, so no suggestion index is needed.
+     */
+    protected boolean hasSuggestions() {
+        return true;
+    }
+    
+    private SuggestionIndex buildSuggestionIndex() {
+        SuggestionIndex.Builder builder = SuggestionIndex.builder();
+        for (MappingType type : MAPPING_TYPES) {
+            for (NameType by : new NameType[] { NameType.INTERMEDIATE, NameType.NAME }) {
+                for (String name : getTable(by, type).keys()) {
+                    builder.put(type, simpleName(name));
+                }
+            }
+        }
+        return builder.build();
+    }
+    
+    private static String simpleName(String name) {
+        return name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('.')) + 1);
+    }
+    
+    /**
+     * Find names close to a search that found nothing, for "did you mean" suggestions. This is bounded to a few
+     * milliseconds, so may miss some matches for very common fragments.
+     * 
+     * @param type
+     *            The type of mapping to suggest names of, or null for any.
+     * @return Up to {@code limit} intermediate or mapped names similar to the search, closest first.
+     */
+    public List<String> suggest(@Nullable MappingType type, String search, int limit) {
+        SuggestionIndex index = suggestionIndex;
+        return index == null ? Collections.emptyList() : index.suggest(type, simpleName(search), limit);
+    }
+    
+    /**
+     * @return The remapper for class names and descriptors in this database. Until loading is done this looks up every
+     *         class as it goes, afterwards all names are translated once and shared.
+     */
+    public ClassRemapper getRemapper() {
+        ClassRemapper ret = remapper;
+        if (ret == null) {
+            if (!frozen) {
+                return ClassRemapper.direct(this);
+            }
+            synchronized (this) {
+                ret = remapper;
+                if (ret != null) {
+                    return ret;
+                }
+                ret = remapper = ClassRemapper.build(this);
+            }
+            grown();
+        }
+        return ret;
+    }
+    
+    /**
+     * @return The index used to convert mappings from other databases of this version into this one, or null if this
+     *         database is still loading.
+     */
+    public @Nullable ConversionIndex<T> getConversionIndex() {
+        ConversionIndex<T> ret = conversionIndex;
+        if (ret == null) {
+            if (!frozen) {
+                return null;
+            }
+            synchronized (this) {
+                ret = conversionIndex;
+                if (ret != null) {
+                    return ret;
+                }
+                ret = conversionIndex = ConversionIndex.build(this);
+            }
+            grown();
+        }
+        return ret;
+    }
+    
+    /**
+     * Drops every mapping, e.g. when a snapshot turns out to be corrupt halfway through restoring it. Subclasses holding
+     * their own lookups must reset them here as well.
+     */
+    protected void clear() {
+        for (MappingTable<T> table : mappings) {
+            table.clear();
+        }
+        invalidateIndices();
+    }
+    
+    /**
+     * Approximate heap retained by a single mapping, including its caches and its share of strings not pooled with other
+     * versions.
+     */
+    private static final int MAPPING_SIZE = 256;
+    
+    void setSizeListener(@Nullable Runnable listener) {
+        this.sizeListener = listener;
+    }
+    
+    private void grown() {
+        Runnable listener = sizeListener;
+        if (listener != null && frozen) {
+            listener.run();
+        }
+    }
+    
+    /**
+     * @return A rough estimate of the heap retained by this database, for weighing it against others in the cache.
+     *         This includes everything built on demand so far, and grows as more is built.
+     */
+    public long estimateSize() {
+        long ret = 0;
+        for (MappingType type : MAPPING_TYPES) {
+            // Most mappings are in every table of their type, so count each only once
+            int count = 0;
+            for (NameType by : NAME_TYPES) {
+                MappingTable<T> table = getTable(by, type);
+                ret += table.estimateSize();
+                count = Math.max(count, table.size());
+            }
+            ret += (long) count * MAPPING_SIZE;
+        }
+        SuggestionIndex suggestions = suggestionIndex;
+        if (suggestions != null) {
+            ret += suggestions.estimateSize();
+        }
+        for (int i = 0; i < nameIndices.length(); i++) {
+            SuffixIndex<?> index = nameIndices.get(i);
+            if (index != null) {
+                // Reversed keys are not pooled
+                ret += index.size() * 80L;
+            }
+            index = ownerIndices.get(i);
+            if (index != null) {
+                // Neither are the qualified names they are reversed from
+                ret += index.size() * 160L;
+            }
+        }
+        ClassRemapper remapper = this.remapper;
+        if (remapper != null) {
+            ret += remapper.estimateSize();
+        }
+        ConversionIndex<T> conversionIndex = this.conversionIndex;
+        if (conversionIndex != null) {
+            ret += conversionIndex.estimateSize();
+        }
+        return ret;
+    }
+    
+    /* == Suffix indices == */
+    
+    private void invalidateIndices() {
+        frozen = false;
+        remapper = null;
+        conversionIndex = null;
+        suggestionIndex = null;
+        if (indexed) {
+            indexed = false;
+            for (int i = 0; i < nameIndices.length(); i++) {
+                nameIndices.set(i, null);
+                ownerIndices.set(i, null);
+            }
+        }
+    }
+    
+    /**
+     * Eagerly build the class name indices, so the first fuzzy lookup does not have to. Member indices are comparatively
+     * large and rarely needed, so those are only built on demand.
+     */
+    protected void buildIndices() {
+        for (NameType by : NAME_TYPES) {
+            getNameIndex(by, MappingType.CLASS);
+        }
+    }
+    
+    private SuffixIndex<@NonNull T> getNameIndex(NameType by, MappingType type) {
+        int idx = tableIndex(by, type);
+        SuffixIndex<@NonNull T> ret = nameIndices.get(idx);
+        if (ret == null) {
+            SuffixIndex.Builder<@NonNull T> builder = SuffixIndex.builder();
+            getTable(by, type).forEach(builder::put);
+            ret = builder.build();
+            nameIndices.set(idx, ret);
+            indexed = true;
+            grown();
+        }
+        return ret;
+    }
+    
+    private SuffixIndex<@NonNull T> getOwnerIndex(NameType by, MappingType type) {
+        int idx = tableIndex(by, type);
+        SuffixIndex<@NonNull T> ret = ownerIndices.get(idx);
+        if (ret == null) {
+            SuffixIndex.Builder<@NonNull T> builder = SuffixIndex.builder();
+            getTable(by, type).forEach((name, m) -> {
+                String owner = m.getOwner(by);
+                // Names with dots could be mistaken for part of the owner, these can never match a lookup anyways
+                if (owner != null && name.indexOf('.') == -1) {
+                    builder.put(owner + "." + name, m);
+                }
+            });
+            ret = builder.build();
+            ownerIndices.set(idx, ret);
+            indexed = true;
+            grown();
+        }
+        return ret;
+    }
+    
+    /* == Snapshots == */
+    
+    /**
+     * @return This database as a {@link SnapshotDatabase}, or null if it does not support snapshots.
+     */
+    @SuppressWarnings("unchecked")
+    private @Nullable SnapshotDatabase<T> asSnapshotDatabase() {
+        return this instanceof SnapshotDatabase ? (SnapshotDatabase<T>) this : null;
+    }
+    
+    /**
+     * @return The fingerprint of the files this database is parsed from, or null if it does not support snapshots or
+     *         the files are missing. This must be taken before the database is parsed, so that a snapshot is never
+     *         trusted for files that changed while it was being built.
+     */
+    public @Nullable String getSnapshotFingerprint() {
+        SnapshotDatabase<T> codec = asSnapshotDatabase();
+        if (codec == null) {
+            return null;
+        }
+        try {
+            List<Path> sources = codec.getSourceFiles();
+            return sources.isEmpty() ? null : MappingSnapshot.fingerprint(sources);
+        } catch (IOException e) {
+            log.error("Could not fingerprint mappings for " + getMinecraftVersion(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Attempt to populate this database from a snapshot instead of parsing it.
+     * 
+     * @param fingerprint
+     *            The fingerprint of the source files, see {@link #getSnapshotFingerprint()}.
+     * @return True if this database is a {@link SnapshotDatabase}, and the snapshot was valid and has been loaded.
+     */
+    public boolean loadSnapshot(Path file, int dataVersion, String fingerprint) {
+        SnapshotDatabase<T> codec = asSnapshotDatabase();
+        if (codec == null) {
+            return false;
+        }
+        try {
+            MappingSnapshot snapshot = MappingSnapshot.read(file, dataVersion, fingerprint);
+            if (snapshot == null) {
+                return false;
+            }
+            // Add as we go, so that later mappings can already resolve names against the earlier ones
+            List<T> loaded = new ArrayList<>(snapshot.getEntries().size());
+            for (MappingSnapshot.Entry entry : snapshot.getEntries()) {
+                T mapping = codec.fromSnapshot(entry, loaded::get);
+                loaded.add(mapping);
+                addMapping(mapping);
+            }
+            freeze();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not load mappings snapshot " + file, e);
+            clear();
+            return false;
+        }
+    }
+    
+    /**
+     * Write the current contents of this database to a snapshot, if it is a {@link SnapshotDatabase}.
+     * 
+     * @param fingerprint
+     *            The fingerprint of the source files, taken before this database was parsed, see
+     *            {@link #getSnapshotFingerprint()}.
+     */
+    public void saveSnapshot(Path file, int dataVersion, String fingerprint) {
+        SnapshotDatabase<T> codec = asSnapshotDatabase();
+        if (codec == null) {
+            return;
+        }
+        try {
+            Map<Mapping, Integer> indices = new IdentityHashMap<>();
+            List<MappingSnapshot.Entry> entries = new ArrayList<>();
+            for (MappingType type : MappingType.values()) {
+                for (NameType by : NameType.values()) {
+                    for (T mapping : lookup(by, type)) {
+                        if (!indices.containsKey(mapping)) {
+                            indices.put(mapping, entries.size());
+                            entries.add(codec.toSnapshot(mapping, m -> indices.getOrDefault(m, -1)));
+                        }
+                    }
+                }
+            }
+            new MappingSnapshot(dataVersion, fingerprint, entries).write(file);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not save mappings snapshot " + file, e);
+        }
+    }
+    
     protected Collection<T> fuzzyLookup(NameType by, MappingType type, String search) {
         if (type == MappingType.CLASS && !Patterns.NOTCH_PARAM.matcher(search).matches()) {
-            return getTable(by, type).values().stream().filter(m -> by.get(m) != null && by.get(m).endsWith(search)).collect(Collectors.toList());
+            return getNameIndex(by, type).find(search);
         }
         return getTable(by, type).get(search);
     }
     
     @Override
     public Collection<T> lookup(NameType by, MappingType type) {
-        return NullHelper.notnullL(getTable(by, type).values(), "Multimap#values");
+        return getTable(by, type).values();
     }
     
     @Override
@@ -82,9 +448,8 @@ public abstract class AbstractMappingDatabase<@NonNull T extends Mapping> implem
         } else if (type == MappingType.CLASS) {
             return fuzzyLookup(by, type, search.replace('.', '/'));
         }
-        String ownerMatch = search.substring(0, lastDot);
-        String name = search.substring(lastDot + 1);
-        return fuzzyLookup(by, type, name).stream().filter(m -> m.getOwner(by) != null).filter(m -> m.getOwner(by).endsWith(ownerMatch)).collect(Collectors.toList());
+        // Equivalent to an exact match on the name, and a suffix match on the owner
+        return getOwnerIndex(by, type).find(search);
     }
     
     @Override
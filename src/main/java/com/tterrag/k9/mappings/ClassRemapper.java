@@ -0,0 +1,168 @@
+package com.tterrag.k9.mappings;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tterrag.k9.util.Patterns;
+import com.tterrag.k9.util.annotation.Nullable;
+
+/**
+ * Translates class names and descriptors of a database between {@link NameType name types}, working directly on the
+ * descriptor characters.
+ * <p>
+ * A remapper {@link #build(MappingDatabase) built} for a fully loaded database resolves every class name once, into a
+ * translation table per target name type, and keeps a bounded cache of remapped descriptors. While a database is still
+ * loading, a {@link #direct(MappingDatabase) direct} remapper is used instead, which looks each class up as it goes.
+ */
+public final class ClassRemapper {
+
+    private static final NameType[] NAME_TYPES = NameType.values();
+
+    private static final int DESCRIPTOR_CACHE_SIZE = 4096;
+
+    private final MappingDatabase<?> db;
+
+    /**
+     * By target name type, the mapped names of all classes whose name changes. Null for a direct remapper.
+     */
+    private final @Nullable Map<String, String>[] tables;
+
+    private final @Nullable Cache<String, String>[] descriptors;
+
+    private ClassRemapper(MappingDatabase<?> db, @Nullable Map<String, String>[] tables, @Nullable Cache<String, String>[] descriptors) {
+        this.db = db;
+        this.tables = tables;
+        this.descriptors = descriptors;
+    }
+
+    public static ClassRemapper direct(MappingDatabase<?> db) {
+        return new ClassRemapper(db, null, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static ClassRemapper build(MappingDatabase<?> db) {
+        // Same precedence as a lookup would have, earlier name types first, and the first mapping for each name
+        Map<String, Mapping> byName = new HashMap<>();
+        for (NameType by : NAME_TYPES) {
+            for (Mapping m : db.lookup(by, MappingType.CLASS)) {
+                String name = by.get(m);
+                if (name != null) {
+                    byName.putIfAbsent(name, m);
+                }
+            }
+        }
+        Map<String, String>[] tables = new Map[NAME_TYPES.length];
+        Cache<String, String>[] descriptors = new Cache[NAME_TYPES.length];
+        for (NameType target : NAME_TYPES) {
+            tables[target.ordinal()] = new HashMap<>();
+            descriptors[target.ordinal()] = Caffeine.newBuilder().maximumSize(DESCRIPTOR_CACHE_SIZE).build();
+        }
+        // Resolve each name once and fill every target's table from it
+        byName.forEach((name, m) -> {
+            Mapping match = resolve(db, name, byName);
+            if (match == null) {
+                return;
+            }
+            for (NameType target : NAME_TYPES) {
+                String mapped = mappedName(target, match);
+                if (mapped != null && !mapped.equals(name)) {
+                    tables[target.ordinal()].put(name, mapped);
+                }
+            }
+        });
+        return new ClassRemapper(db, tables, descriptors);
+    }
+
+    /**
+     * @return A rough estimate of the heap retained by this remapper, counting its descriptor caches as full, since they
+     *         fill up as the remapper is used.
+     */
+    public long estimateSize() {
+        if (tables == null) {
+            return 0;
+        }
+        long ret = 0;
+        for (Map<String, String> table : tables) {
+            // Names are shared with the database
+            ret += table.size() * 48L;
+        }
+        // Cache nodes, with remapped descriptors that are not shared
+        ret += NAME_TYPES.length * DESCRIPTOR_CACHE_SIZE * 160L;
+        return ret;
+    }
+
+    private static @Nullable Mapping resolve(MappingDatabase<?> db, String name, @Nullable Map<String, Mapping> byName) {
+        if (Patterns.NOTCH_PARAM.matcher(name).matches()) {
+            // Short names are ambiguous, these only ever match obfuscated names
+            return db.lookupExact(NameType.ORIGINAL, MappingType.CLASS, name).stream().filter(m -> m.getOriginal().equals(name)).findFirst().orElse(null);
+        } else if (byName != null) {
+            return byName.get(name);
+        }
+        return db.lookupExact(MappingType.CLASS, name).stream().findFirst().orElse(null);
+    }
+
+    private static @Nullable String mappedName(NameType target, Mapping match) {
+        String ret = target.get(match);
+        if (ret == null && target == NameType.NAME) {
+            ret = NameType.INTERMEDIATE.get(match);
+        }
+        return ret;
+    }
+
+    /**
+     * @param name
+     *            An internal class name, e.g. {@code net/minecraft/block/Block}.
+     * @return The name of that class in the given name type, or the name itself if it is unknown.
+     */
+    public String mapClass(NameType target, String name) {
+        if (tables != null) {
+            return tables[target.ordinal()].getOrDefault(name, name);
+        }
+        Mapping match = resolve(db, name, null);
+        String ret = match == null ? null : mappedName(target, match);
+        return ret == null ? name : ret;
+    }
+
+    /**
+     * Remap all classes referenced by a field or method descriptor.
+     */
+    public String mapDescriptor(NameType target, String desc) {
+        if (desc.indexOf('L') == -1) {
+            return desc; // Primitives only
+        }
+        if (descriptors != null) {
+            return descriptors[target.ordinal()].get(desc, d -> remap(target, d));
+        }
+        return remap(target, desc);
+    }
+
+    private String remap(NameType target, String desc) {
+        StringBuilder ret = null;
+        int copied = 0;
+        for (int i = 0; i < desc.length(); i++) {
+            if (desc.charAt(i) != 'L') {
+                continue;
+            }
+            int end = desc.indexOf(';', i);
+            if (end == -1) {
+                break;
+            }
+            String name = desc.substring(i + 1, end);
+            String mapped = mapClass(target, name);
+            if (!mapped.equals(name)) {
+                if (ret == null) {
+                    ret = new StringBuilder(desc.length() + 16);
+                }
+                ret.append(desc, copied, i + 1).append(mapped);
+                copied = end;
+            }
+            i = end;
+        }
+        if (ret == null) {
+            return desc;
+        }
+        return ret.append(desc, copied, desc.length()).toString();
+    }
+}
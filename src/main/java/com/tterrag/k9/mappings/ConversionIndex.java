@@ -0,0 +1,123 @@
+package com.tterrag.k9.mappings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.tterrag.k9.util.annotation.NonNull;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * Finds the mapping in a database that corresponds to a mapping from any other database of the same version, for
+ * {@link Mapping#convert(MappingDatabase)}.
+ * <p>
+ * Mappings are joined on their original (obfuscated) type, owner, name and descriptor, which all mapping sets of a
+ * version share. Every mapping of the target database is hashed on these once, so each conversion is a single probe.
+ */
+public final class ConversionIndex<@NonNull T extends Mapping> {
+
+    private static final MappingType[] MAPPING_TYPES = MappingType.values();
+
+    private final Long2ObjectMap<T> byKey;
+
+    /**
+     * Mappings whose key collides with a different mapping already in {@link #byKey}. Practically always empty.
+     */
+    private final List<T> collisions = new ArrayList<>();
+
+    /**
+     * If false, fields match on their owner and name alone, for mapping sets that do not all have field descriptors.
+     */
+    private final boolean fieldDescs;
+
+    private ConversionIndex(Iterable<? extends T> mappings, int expectedSize, boolean fieldDescs) {
+        this.fieldDescs = fieldDescs;
+        Long2ObjectOpenHashMap<T> byKey = new Long2ObjectOpenHashMap<>(expectedSize);
+        for (T m : mappings) {
+            long key = key(m);
+            T existing = byKey.putIfAbsent(key, m);
+            // Keep the first mapping for each key, as a lookup would
+            if (existing != null && existing != m && !sameKey(existing, m) && collisions.stream().noneMatch(c -> sameKey(c, m))) {
+                collisions.add(m);
+            }
+        }
+        byKey.trim();
+        this.byKey = byKey;
+    }
+
+    public static <@NonNull T extends Mapping> ConversionIndex<T> build(MappingDatabase<T> db) {
+        List<T> mappings = new ArrayList<>();
+        for (MappingType type : MAPPING_TYPES) {
+            mappings.addAll(db.lookup(NameType.ORIGINAL, type));
+        }
+        return new ConversionIndex<>(mappings, mappings.size(), true);
+    }
+
+    /**
+     * Index only the given mappings.
+     *
+     * @param fieldDescs
+     *            If field descriptors must match as well.
+     */
+    public static <@NonNull T extends Mapping> ConversionIndex<T> of(Collection<? extends T> mappings, boolean fieldDescs) {
+        return new ConversionIndex<>(mappings, mappings.size(), fieldDescs);
+    }
+
+    private @Nullable String descOf(Mapping m) {
+        return fieldDescs || m.getType() != MappingType.FIELD ? m.getDesc(NameType.ORIGINAL) : null;
+    }
+
+    private long key(Mapping m) {
+        long h = m.getType().ordinal();
+        h = h * 0x9E3779B97F4A7C15L + Objects.hashCode(m.getOwner(NameType.ORIGINAL));
+        h = h * 0x9E3779B97F4A7C15L + m.getOriginal().hashCode();
+        h = h * 0x9E3779B97F4A7C15L + Objects.hashCode(descOf(m));
+        return HashCommon.mix(h);
+    }
+
+    private boolean sameKey(Mapping a, Mapping b) {
+        return a.getType() == b.getType()
+                && a.getOriginal().equals(b.getOriginal())
+                && Objects.equals(a.getOwner(NameType.ORIGINAL), b.getOwner(NameType.ORIGINAL))
+                && Objects.equals(descOf(a), descOf(b));
+    }
+
+    /**
+     * @return The mapping in this index for the same original member or class as the given mapping.
+     */
+    public Optional<T> convert(Mapping from) {
+        T ret = byKey.get(key(from));
+        if (ret != null && sameKey(ret, from)) {
+            return Optional.of(ret);
+        }
+        return ret == null ? Optional.empty() : findCollision(from);
+    }
+
+    private Optional<T> findCollision(Mapping from) {
+        for (T m : collisions) {
+            if (sameKey(m, from)) {
+                return Optional.of(m);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public int size() {
+        return byKey.size() + collisions.size();
+    }
+
+    /**
+     * @return A rough estimate of the heap retained by this index, not counting the mappings, which are shared with the
+     *         database.
+     */
+    public long estimateSize() {
+        // Trimmed open hash table of long keys and references
+        return 64 + byKey.size() * 24L + collisions.size() * 8L;
+    }
+}
@@ -26,11 +26,34 @@ public abstract class FastIntLookupDatabase<T extends Mapping> extends AbstractM
     }
     
     public static OptionalInt getSrgId(String name) {
-        String[] byUnderscores = name.split("_");
-        try {
-            return OptionalInt.of(Integer.parseInt(byUnderscores.length > 1 ? byUnderscores[1] : name));
-        } catch (NumberFormatException e) {}
-        return OptionalInt.empty();
+        int id = parseSrgId(name);
+        return id < 0 ? OptionalInt.empty() : OptionalInt.of(id);
+    }
+    
+    /**
+     * Allocation-free version of {@link #getSrgId(String)}, for bulk use.
+     * 
+     * @return The number between the first and second underscore of the name (or the whole name, if it has no
+     *         underscores), or -1 if that is not a number.
+     */
+    public static int parseSrgId(String name) {
+        int start = name.indexOf('_') + 1;
+        int end = start == 0 ? name.length() : name.indexOf('_', start);
+        if (end == -1) {
+            end = name.length();
+        }
+        if (start == end || end - start > 10) {
+            return -1;
+        }
+        long ret = 0;
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            ret = ret * 10 + (c - '0');
+        }
+        return ret > Integer.MAX_VALUE ? -1 : (int) ret;
     }
     
     @Override
@@ -42,6 +65,12 @@ public abstract class FastIntLookupDatabase<T extends Mapping> extends AbstractM
         return false;
     }
     
+    @Override
+    protected void clear() {
+        super.clear();
+        idFastLookup.clear();
+    }
+    
     protected Collection<T> fastLookup(MappingType type, String search) {
         OptionalInt id = getIntKey(search);
         if (id.isPresent()) {
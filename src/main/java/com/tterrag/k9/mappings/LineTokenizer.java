@@ -0,0 +1,269 @@
+package com.tterrag.k9.mappings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads a mappings file line by line into a single reusable buffer, without allocating a string per line.
+ * <p>
+ * The current line is exposed as a {@link CharSequence}, and can be {@link #split(char, int) split} into fields which
+ * are only described by their offsets. Fields are turned into strings through the {@link StringPool}, so a symbol that
+ * is already pooled is never copied.
+ * <p>
+ * The contents of the current line are only valid until the next call to {@link #next()}.
+ */
+public final class LineTokenizer implements CharSequence, Closeable {
+
+    private final Reader reader;
+
+    private char[] buf = new char[8192];
+    /** Buffered, not yet consumed data is in [pos, limit) */
+    private int pos, limit;
+    private boolean eof;
+
+    private int lineStart, lineEnd;
+
+    /** Start and end offsets, relative to the line, of each field */
+    private int[] fields = new int[32];
+    private int fieldCount;
+
+    public LineTokenizer(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    public LineTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    public static LineTokenizer open(Path file) throws IOException {
+        return new LineTokenizer(Files.newInputStream(file));
+    }
+
+    /**
+     * Advance to the next line.
+     *
+     * @return False if the end of the input was reached.
+     */
+    public boolean next() throws IOException {
+        fieldCount = 0;
+        int scan = pos;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    setLine(pos, i);
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (pos < limit) {
+                    setLine(pos, limit);
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+            scan = limit - pos;
+            fill();
+        }
+    }
+
+    private void setLine(int start, int end) {
+        if (end > start && buf[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int read = reader.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Split the current line on the given delimiter, ignoring the first {@code from} characters. Empty fields are kept.
+     *
+     * @return The amount of fields.
+     */
+    public int split(char delim, int from) {
+        fieldCount = 0;
+        int len = length();
+        int start = from;
+        for (int i = from; i <= len; i++) {
+            if (i == len || buf[lineStart + i] == delim) {
+                if (fieldCount * 2 == fields.length) {
+                    fields = Arrays.copyOf(fields, fields.length * 2);
+                }
+                fields[fieldCount * 2] = start;
+                fields[fieldCount * 2 + 1] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+        return fieldCount;
+    }
+
+    public int split(char delim) {
+        return split(delim, 0);
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public int start(int field) {
+        return fields[checkField(field) * 2];
+    }
+
+    public int end(int field) {
+        return fields[checkField(field) * 2 + 1];
+    }
+
+    private int checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + field + " of " + fieldCount + " in line: " + this);
+        }
+        return field;
+    }
+
+    /**
+     * @return The given field, from the {@link StringPool}.
+     */
+    public String intern(int field) {
+        return StringPool.intern(this, start(field), end(field));
+    }
+
+    /**
+     * @return The given range of the current line, from the {@link StringPool}.
+     */
+    public String intern(int start, int end) {
+        return StringPool.intern(this, start, end);
+    }
+
+    public String field(int field) {
+        return new String(buf, lineStart + start(field), end(field) - start(field));
+    }
+
+    public boolean fieldEquals(int field, String value) {
+        int start = start(field);
+        return end(field) - start == value.length() && regionMatches(start, value);
+    }
+
+    public int fieldInt(int field) {
+        int start = start(field), end = end(field);
+        if (start == end) {
+            throw new NumberFormatException("Empty field " + field + " in line: " + this);
+        }
+        int ret = 0;
+        for (int i = start; i < end; i++) {
+            int digit = charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number in field " + field + " of line: " + this);
+            }
+            ret = ret * 10 + digit;
+        }
+        return ret;
+    }
+
+    /**
+     * @return The index of the last occurrence of {@code c} in the given range, or -1.
+     */
+    public int lastIndexOf(char c, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buf[lineStart + i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(char c, int from) {
+        for (int i = from; i < length(); i++) {
+            if (buf[lineStart + i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(String value, int from) {
+        for (int i = indexOf(value.charAt(0), from); i >= 0; i = indexOf(value.charAt(0), i + 1)) {
+            if (regionMatches(i, value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replace all occurrences of a character within the given range of the current line, in place.
+     */
+    public void replace(char from, char to, int start, int end) {
+        for (int i = lineStart + start; i < lineStart + end; i++) {
+            if (buf[i] == from) {
+                buf[i] = to;
+            }
+        }
+    }
+
+    public boolean startsWith(String prefix) {
+        return prefix.length() <= length() && regionMatches(0, prefix);
+    }
+
+    public boolean regionMatches(int offset, String value) {
+        if (offset + value.length() > length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (buf[lineStart + offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return lineEnd - lineStart;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buf[lineStart + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(buf, lineStart + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, lineStart, length());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -53,7 +53,14 @@ public interface Mapping {
      */
     String formatMessage(String mcver);
 
+    /**
+     * @return The mapping in the given database for the same class or member as this one.
+     */
     default <T extends Mapping> Optional<? extends T> convert(MappingDatabase<? extends T> db) {
+        ConversionIndex<? extends T> index = db instanceof AbstractMappingDatabase ? ((AbstractMappingDatabase<? extends T>) db).getConversionIndex() : null;
+        if (index != null) {
+            return index.convert(this);
+        }
         String owner = getOwner(NameType.ORIGINAL);
         String desc = getDesc(NameType.ORIGINAL);
         return db.lookup(NameType.ORIGINAL, getType(), owner == null ? getOriginal() : owner + "." + getOriginal())
@@ -0,0 +1,196 @@
+package com.tterrag.k9.mappings;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The cache of loaded databases, shared by all {@link MappingDownloader downloaders}.
+ * <p>
+ * Entries are weighed by the estimated heap size of each database, and evicted by frequency once their total exceeds
+ * a global budget. The budget defaults to a third of the max heap, and can be set in bytes with the
+ * {@code k9.mappings.cacheBytes} system property.
+ * <p>
+ * Loads run on the {@link #LOADER loader scheduler}, and concurrent requests for the same version share a single load.
+ * Requests for versions that are already loaded complete immediately, regardless of any other loads in progress.
+ * Databases that others are built from, such as SRG names, are loaded once through this cache and then shared by all of
+ * them, see {@link MappingDownloader#loadDatabase(String)}.
+ */
+@Slf4j
+public final class MappingCache {
+
+    @Value
+    static class Key {
+        MappingDownloader<?, ?> downloader;
+        String version;
+
+        @Override
+        public String toString() {
+            return downloader.getName() + " " + version;
+        }
+    }
+
+    /**
+     * Used for any database that cannot estimate its own size.
+     */
+    private static final long DEFAULT_SIZE = 64L << 20;
+
+    public static final long BUDGET = Long.getLong("k9.mappings.cacheBytes", Runtime.getRuntime().maxMemory() / 3);
+
+    /**
+     * Runs all database loads. These block on IO and parsing, so must never run on an event thread.
+     */
+    public static final Scheduler LOADER = Schedulers.newBoundedElastic(Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+            Integer.MAX_VALUE, "Mapping loader", 60, true);
+
+    private static final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+    private static final ScheduledExecutorService cacheCleanupExecutor = Executors.newScheduledThreadPool(1, r -> {
+        Thread ret = defaultFactory.newThread(r);
+        ret.setName("Mapping cache cleanup");
+        ret.setDaemon(true);
+        return ret;
+    });
+
+    // Weights are in KiB, so that a single database cannot overflow an int
+    private static final AsyncLoadingCache<Key, MappingDatabase<?>> cache = Caffeine.newBuilder()
+            .maximumWeight(BUDGET >> 10)
+            .<Key, MappingDatabase<?>>weigher((key, db) -> (int) Math.min(Integer.MAX_VALUE, estimateSize(db) >> 10))
+            .expireAfterAccess(Duration.ofHours(1))
+            .scheduler(com.github.benmanes.caffeine.cache.Scheduler.forScheduledExecutorService(cacheCleanupExecutor))
+            .removalListener((key, db, cause) -> {
+                // Also the cause when a database is weighed again, see reweigh
+                if (cause != RemovalCause.REPLACED) {
+                    log.info("Removed {} mappings from cache ({})", key, cause);
+                }
+            })
+            .executor(LOADER::schedule)
+            .recordStats()
+            .buildAsync(MappingCache::create);
+
+    private MappingCache() {}
+
+    private static MappingDatabase<?> create(Key key) throws IOException, NoSuchVersionException {
+        MappingDatabase<?> db = key.getDownloader().createDatabase(key.getVersion());
+        if (db instanceof AbstractMappingDatabase) {
+            ((AbstractMappingDatabase<?>) db).setSizeListener(() -> reweigh(key, db));
+        }
+        return db;
+    }
+
+    /**
+     * Weigh a cached database again, after it has built something on demand since it was first weighed.
+     */
+    private static void reweigh(Key key, MappingDatabase<?> db) {
+        CompletableFuture<MappingDatabase<?>> current = cache.asMap().get(key);
+        if (current != null && current.isDone() && !current.isCompletedExceptionally() && current.join() == db) {
+            // Only replaced if still current, the weigher runs again on the replacement
+            cache.asMap().replace(key, current, CompletableFuture.completedFuture(db));
+        }
+    }
+
+    private static long estimateSize(MappingDatabase<?> db) {
+        return db instanceof AbstractMappingDatabase ? ((AbstractMappingDatabase<?>) db).estimateSize() : DEFAULT_SIZE;
+    }
+
+    /**
+     * @return The database for the given version, loading it if it is not already loaded or loading.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends MappingDatabase<?>> Mono<T> get(MappingDownloader<?, T> downloader, String version) {
+        // The future is shared by everyone waiting on this version, so a cancelled subscriber must not cancel it
+        return Mono.defer(() -> Mono.fromFuture(((CompletableFuture<T>) cache.get(new Key(downloader, version))).thenApply(Function.identity())));
+    }
+
+    /**
+     * Get a database from within the load of another, which is already on a loader or parser thread. If the database
+     * is not loaded or loading, it is loaded on the calling thread, so that loads that depend on each other never wait
+     * for a free loader thread. Otherwise this waits for the existing load, which is then shared.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends MappingDatabase<?>> T join(MappingDownloader<?, T> downloader, String version) throws IOException, NoSuchVersionException {
+        CompletableFuture<MappingDatabase<?>> created = new CompletableFuture<>();
+        CompletableFuture<MappingDatabase<?>> future = cache.get(new Key(downloader, version), (key, executor) -> created);
+        if (future == created) {
+            try {
+                created.complete(create(new Key(downloader, version)));
+            } catch (IOException | NoSuchVersionException | RuntimeException | Error e) {
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof NoSuchVersionException) {
+                throw (NoSuchVersionException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    static void invalidate(MappingDownloader<?, ?> downloader, String version) {
+        cache.synchronous().invalidate(new Key(downloader, version));
+    }
+
+    /**
+     * Reload the database for the given version in the background, if it is loaded. The current database keeps being
+     * served until the new one is ready, and is kept if the reload fails.
+     */
+    static void refresh(MappingDownloader<?, ?> downloader, String version) {
+        Key key = new Key(downloader, version);
+        CompletableFuture<MappingDatabase<?>> current = cache.asMap().get(key);
+        if (current == null) {
+            return;
+        }
+        if (!current.isDone() || current.isCompletedExceptionally()) {
+            // A load in progress may already have read the old data, so start over once it is next requested
+            cache.synchronous().invalidate(key);
+        } else {
+            cache.synchronous().refresh(key);
+        }
+    }
+
+    public static CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * @return The estimated size in bytes of all cached databases.
+     */
+    public static long size() {
+        return cache.synchronous().policy().eviction().map(e -> e.weightedSize().orElse(0) << 10).orElse(0L);
+    }
+
+    /**
+     * @return The estimated size in bytes of each cached database, by downloader name and version.
+     */
+    public static Map<String, Long> entries() {
+        return cache.synchronous().asMap().entrySet().stream()
+                .collect(Collectors.toMap(e -> e.getKey().toString(), e -> estimateSize(e.getValue())));
+    }
+}
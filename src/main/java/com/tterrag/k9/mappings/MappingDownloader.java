@@ -6,34 +6,35 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.FileUtils;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
-import com.github.benmanes.caffeine.cache.Scheduler;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 import com.tterrag.k9.util.NullHelper;
+import com.tterrag.k9.util.SaveHelper;
 import com.tterrag.k9.util.annotation.NonNull;
 import com.tterrag.k9.util.annotation.Nullable;
 
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 @Slf4j
@@ -47,6 +48,13 @@ public abstract class MappingDownloader<M extends Mapping, T extends MappingData
     }
         
     private static final String VERSION_FILE = ".dataversion";
+    private static final String QUERIES_FILE = "queries.json";
+    
+    /**
+     * How many of the most queried versions to load on startup, in addition to the latest stable version.
+     */
+    private static final int PREWARM_COUNT = Integer.getInteger("k9.mappings.prewarm", 2);
+    private static final Duration QUERIES_SAVE_INTERVAL = Duration.ofMinutes(5);
         
     private final Path dataFolder = Paths.get(".", "data");
     
@@ -54,27 +62,104 @@ public abstract class MappingDownloader<M extends Mapping, T extends MappingData
     private final DatabaseFactory<T> dbFactory;
     private final int version;
     
-    private static final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
-    private static final ScheduledExecutorService cacheCleanupExecutor = Executors.newScheduledThreadPool(1, r -> {
-        Thread ret = defaultFactory.newThread(r);
-        ret.setName("Mapping cache cleanup");
-        ret.setDaemon(true);
-        return ret;
-    });
+    /**
+     * The update and load state of a single Minecraft version. All fields are guarded by the state itself, which is
+     * only ever held briefly, never while waiting on IO.
+     */
+    private static final class VersionState {
+        
+        private long lastChecked;
+        private boolean checked;
+        @Nullable
+        private Mono<Void> pendingCheck;
+        
+        /**
+         * Incremented each time the data for this version changes, so that loads started before then do not save
+         * stale snapshots.
+         */
+        private int generation;
         
-    private final LoadingCache<String, T> mappingTable = Caffeine.newBuilder()
-            .expireAfterAccess(Duration.ofHours(1))
-            .maximumSize(4)
-            .scheduler(Scheduler.forScheduledExecutorService(cacheCleanupExecutor))
-            .build(this::createDatabase);
+        /**
+         * Guards the snapshot file. This is held while a snapshot is written, so is separate from the state itself.
+         */
+        private final Object snapshotLock = new Object();
+    }
+    
+    private final Map<String, VersionState> versionStates = new ConcurrentHashMap<>();
+    
+    private VersionState getState(String mcver) {
+        return versionStates.computeIfAbsent(mcver, $ -> new VersionState());
+    }
+    
+    /**
+     * The number of successful lookups of each version, persisted so that the most used versions can be loaded ahead
+     * of time after a restart.
+     */
+    private final Map<String, Long> queryCounts = new ConcurrentHashMap<>();
+    @Nullable
+    private SaveHelper<Map<String, Long>> queriesHelper;
+    
+    /**
+     * @return The name of this downloader, which is also the name of its data folder.
+     */
+    public String getName() {
+        return folder;
+    }
     
     @SuppressWarnings("unchecked")
-    private T createDatabase(String mcver) throws NoSuchVersionException, IOException {
-        return (T) dbFactory.create(mcver).reload();
+    T createDatabase(String mcver) throws NoSuchVersionException, IOException {
+        T db = dbFactory.create(mcver);
+        if (!(db instanceof AbstractMappingDatabase) || !(db instanceof SnapshotDatabase)) {
+            return (T) db.reload();
+        }
+        // Try to restore from a snapshot of a previous load, otherwise parse and save one for next time
+        AbstractMappingDatabase<?> snapshotted = (AbstractMappingDatabase<?>) db;
+        Path snapshot = getSnapshotFile(mcver);
+        VersionState state = getState(mcver);
+        int generation;
+        synchronized (state) {
+            generation = state.generation;
+        }
+        long start = System.currentTimeMillis();
+        // Taken before parsing, so that if the files change while parsing, the snapshot is not trusted after a restart
+        String fingerprint = snapshotted.getSnapshotFingerprint();
+        if (fingerprint == null) {
+            return (T) db.reload();
+        }
+        if (ParserPool.time(folder + "/snapshot/load", () -> snapshotted.loadSnapshot(snapshot, version, fingerprint))) {
+            log.info("Loaded {} {} mappings from snapshot in {}ms", folder, mcver, System.currentTimeMillis() - start);
+            return db;
+        }
+        ParserPool.time(folder + "/parse", db::reload);
+        log.info("Parsed {} {} mappings in {}ms", folder, mcver, System.currentTimeMillis() - start);
+        ParserPool.time(folder + "/snapshot/save", () -> {
+            synchronized (state.snapshotLock) {
+                synchronized (state) {
+                    if (state.generation != generation) {
+                        log.info("{} {} mappings changed while loading, not saving snapshot", folder, mcver);
+                        return null;
+                    }
+                }
+                snapshotted.saveSnapshot(snapshot, version, fingerprint);
+            }
+            return null;
+        });
+        log.debug("Mapping load timings: {}", ParserPool.getMetrics());
+        return db;
+    }
+    
+    /**
+     * @return Timings of each phase of all database loads so far, by phase name.
+     */
+    public static Map<String, ParserPool.PhaseMetrics> getLoadMetrics() {
+        return ParserPool.getMetrics();
+    }
+    
+    private Path getSnapshotFile(String mcver) {
+        return getDataFolder().resolve(mcver).resolve(MappingSnapshot.FILE_NAME);
     }
     
     private volatile long lastVersionCheck;
-    private final Object2LongMap<String> lastChecked = new Object2LongOpenHashMap<>();
     
     protected abstract Mono<Void> updateVersions();
     
@@ -105,6 +190,21 @@ public abstract class MappingDownloader<M extends Mapping, T extends MappingData
         return dataFolder.resolve(folder);
     }
     
+    @Nullable
+    private volatile MappingHttp http; // lazy load
+    protected MappingHttp getHttp() {
+        MappingHttp ret = this.http;
+        if (ret == null) {
+            synchronized (this) {
+                ret = this.http;
+                if (ret == null) {
+                    ret = this.http = new MappingHttp(getDataFolder(), getGson());
+                }
+            }
+        }
+        return ret;
+    }
+    
     protected void collectParsers(GsonBuilder builder) {}
     
     @Nullable
@@ -164,51 +264,114 @@ public abstract class MappingDownloader<M extends Mapping, T extends MappingData
             FileUtils.write(new File(dataDir, VERSION_FILE), Integer.toString(version), Charsets.UTF_8);
         }
         
-        return Mono.empty(); // TODO
+        SaveHelper<Map<String, Long>> queriesHelper = new SaveHelper<>(getDataFolder().toFile(), getGson(), new ConcurrentHashMap<>());
+        queryCounts.putAll(queriesHelper.fromJson(QUERIES_FILE, new TypeToken<Map<String, Long>>(){}));
+        this.queriesHelper = queriesHelper;
+        
+        return Flux.merge(prewarm(), Flux.interval(QUERIES_SAVE_INTERVAL, QUERIES_SAVE_INTERVAL, Schedulers.boundedElastic()).doOnNext($ -> saveQueryCounts())).then();
     }
     
-    public void remove(String mcver) {
-        synchronized (mappingTable) {
-            mappingTable.invalidate(mcver);
+    private void saveQueryCounts() {
+        SaveHelper<Map<String, Long>> queriesHelper = this.queriesHelper;
+        if (queriesHelper != null) {
+            queriesHelper.writeJson(QUERIES_FILE, new ConcurrentHashMap<>(queryCounts), new TypeToken<Map<String, Long>>(){});
         }
     }
     
-    private T get(String mcver) {
-        synchronized (mappingTable) {
-            return mappingTable.get(mcver);
+    /**
+     * Load the latest stable version and the most queried versions, one at a time, so that they are ready before anyone
+     * asks for them.
+     */
+    private Mono<Void> prewarm() {
+        return getLatestMinecraftVersion(true)
+                .map(latest -> {
+                    Set<String> ret = new LinkedHashSet<>();
+                    ret.add(latest);
+                    queryCounts.entrySet().stream()
+                            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                            .limit(PREWARM_COUNT)
+                            .forEach(e -> ret.add(e.getKey()));
+                    ret.retainAll(getMinecraftVersionsInternal());
+                    return ret;
+                })
+                .flatMapIterable(versions -> versions)
+                .concatMap(mcver -> getDatabase(mcver)
+                        .doOnNext($ -> log.info("Prewarmed {} {} mappings", folder, mcver))
+                        .doOnError(t -> log.warn("Failed to prewarm " + folder + " " + mcver + " mappings", t))
+                        .onErrorResume($ -> Mono.empty()))
+                .then();
+    }
+    
+    /**
+     * Drop the loaded database and snapshot of a version, after its data has changed. Loads of this version that are
+     * still in progress complete for anyone already waiting on them, but are not cached.
+     */
+    public void remove(String mcver) {
+        discardSnapshot(mcver);
+        MappingCache.invalidate(this, mcver);
+    }
+    
+    /**
+     * Rebuild the database of a version in the background, after its data has changed. Until the new database is
+     * ready, the old one keeps being served, so lookups never wait on the reload.
+     */
+    public void refresh(String mcver) {
+        discardSnapshot(mcver);
+        MappingCache.refresh(this, mcver);
+    }
+    
+    private void discardSnapshot(String mcver) {
+        VersionState state = getState(mcver);
+        synchronized (state) {
+            state.generation++;
+        }
+        synchronized (state.snapshotLock) {
+            getSnapshotFile(mcver).toFile().delete();
         }
     }
     
     public Mono<Void> forceUpdateCheck(String mcver) {
-        synchronized (lastChecked) {
-            lastChecked.removeLong(mcver);
+        VersionState state = getState(mcver);
+        synchronized (state) {
+            state.lastChecked = 0;
         }
-        return checkUpdateIfRequired(mcver);
+        return checkUpdateIfRequired(mcver, state);
     }
     
-    private Mono<Void> checkUpdateIfRequired(String mcver) {
-        Mono<Void> updateCheck = Mono.empty();
-        synchronized (lastChecked) {
-            long checked = lastChecked.getLong(mcver);
-            if (checked + TimeUnit.HOURS.toMillis(1) < System.currentTimeMillis()) {
-                updateCheck = checkUpdates(mcver).doOnError($ -> {
-                    synchronized (lastChecked) {
-                        lastChecked.removeLong(mcver);
-                    }
-                });
-                lastChecked.put(mcver, System.currentTimeMillis());
+    /**
+     * @return The latest update check for this version, starting a new one if it has not been checked within the last
+     *         hour. This is cached, so once complete it can be waited on without repeating the check.
+     */
+    private Mono<Void> checkUpdateIfRequired(String mcver, VersionState state) {
+        synchronized (state) {
+            if (state.lastChecked + TimeUnit.HOURS.toMillis(1) < System.currentTimeMillis()) {
+                state.lastChecked = System.currentTimeMillis();
+                state.pendingCheck = checkUpdates(mcver)
+                        .subscribeOn(MappingCache.LOADER) // Update checks download files in place
+                        .doOnSuccess($ -> {
+                            synchronized (state) {
+                                state.checked = true;
+                            }
+                        })
+                        .doOnError($ -> {
+                            synchronized (state) {
+                                state.lastChecked = 0;
+                            }
+                        })
+                        .cache();
             }
+            Mono<Void> ret = state.pendingCheck;
+            return ret == null ? Mono.empty() : ret;
         }
-        return updateCheck;
     }
 
     public Mono<T> getDatabase(String mcver) {
-        boolean force; // If this is the first lookup on this version, wait for the initial update check to complete,
-                       // otherwise files might be missing
-        synchronized (lastChecked) {
-            force = !lastChecked.containsKey(mcver);
+        VersionState state = getState(mcver);
+        Mono<Void> updateCheck = checkUpdateIfRequired(mcver, state);
+        boolean force; // Until the first update check on this version completes, wait for it, otherwise files might be missing
+        synchronized (state) {
+            force = !state.checked;
         }
-        Mono<Void> updateCheck = checkUpdateIfRequired(mcver);
         if (!force) {
             updateCheck.subscribe(); // This is not a forced update, so we can use old data for now. So intentionally
                                      // run this "to the side", the mappings will update naturally when this completes
@@ -216,14 +379,61 @@ public abstract class MappingDownloader<M extends Mapping, T extends MappingData
             updateCheck = Mono.empty();
         }
 
-        return updateCheck.then(Mono.fromSupplier(() -> get(mcver)));
+        return updateCheck.then(MappingCache.get(this, mcver));
+    }
+    
+    /**
+     * Count a lookup by a user, for {@link #prewarm()}. Loads by the bot itself are not counted, so that they do not
+     * keep the versions they load ahead of those users ask for.
+     */
+    private void countQuery(String mcver) {
+        queryCounts.merge(mcver, 1L, Long::sum);
+    }
+    
+    /**
+     * Get the shared database for a version from within the load of another database, loading it on the calling
+     * thread if needed. This blocks, and does not check for updates, so callers must make sure the data is present
+     * before their own load starts.
+     * <p>
+     * The result is only to be used while building the other database, and should not be kept afterwards, so that it
+     * can still be evicted and reloaded on its own.
+     */
+    public T loadDatabase(String mcver) throws NoSuchVersionException, IOException {
+        return MappingCache.join(this, mcver);
     }
     
     public Flux<M> lookup(String name, String mcver) {
-        return getDatabase(mcver).flatMapIterable(db -> db.lookup(name));
+        return getDatabase(mcver).doOnNext($ -> countQuery(mcver)).flatMapIterable(db -> db.lookup(name));
     }
     
     public Flux<M> lookup(MappingType type, String name, String mcver) {
-        return getDatabase(mcver).flatMapIterable(db -> db.lookup(type, name));
+        return getDatabase(mcver).doOnNext($ -> countQuery(mcver)).flatMapIterable(db -> db.lookup(type, name));
+    }
+    
+    /**
+     * @param type
+     *            The type of mapping to find, or null for any.
+     * @return The matches for the name from {@code skip} to {@code skip + limit}, best first, see
+     *         {@link MappingRanking}.
+     */
+    public Mono<MappingRanking.Result<M>> lookupRanked(@Nullable MappingType type, String name, String mcver, int skip, int limit) {
+        return getDatabase(mcver)
+                // Later windows are the same query, paged
+                .doOnNext($ -> {
+                    if (skip == 0) {
+                        countQuery(mcver);
+                    }
+                })
+                .map(db -> MappingRanking.lookup(db, type, name, skip, limit));
+    }
+    
+    /**
+     * Suggest names similar to one that was just looked up and not found, see
+     * {@link AbstractMappingDatabase#suggest(MappingType, String, int)}.
+     */
+    public Mono<List<String>> suggest(@Nullable MappingType type, String name, String mcver, int limit) {
+        // The database was just used for the failed lookup, so skip the update check and query count
+        return MappingCache.get(this, mcver)
+                .map(db -> db instanceof AbstractMappingDatabase ? ((AbstractMappingDatabase<?>) db).suggest(type, name, limit) : Collections.<String>emptyList());
     }
 }
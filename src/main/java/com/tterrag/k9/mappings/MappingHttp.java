@@ -0,0 +1,495 @@
+package com.tterrag.k9.mappings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.tterrag.k9.util.SaveHelper;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.function.Tuples;
+
+/**
+ * HTTP access for a single {@link MappingDownloader downloader}, through a client shared by all of them.
+ * <p>
+ * The shared client pools connections, with at most {@link #MAX_CONNECTIONS_PER_HOST} open to each host, and requests
+ * gzip transfer, except for files, which are resumed by byte ranges of the unencoded body. Each downloader keeps the ETag and Last-Modified of everything it fetched in its data folder, so that
+ * unchanged resources are revalidated with a conditional request instead of downloaded again, even across restarts.
+ * Files are streamed to disk and verified before they replace anything, see {@link #download(String, Path, Checksum)}.
+ */
+@Slf4j
+public final class MappingHttp {
+
+    @Value
+    private static class Validators {
+        @Nullable
+        String etag;
+        @Nullable
+        String lastModified;
+    }
+
+    @Value
+    private static class Response {
+        /**
+         * False if the server answered 304 Not Modified, in which case there is no body.
+         */
+        boolean modified;
+        byte[] body;
+        @Nullable
+        Validators validators;
+    }
+
+    private static final Response NOT_MODIFIED = new Response(false, new byte[0], null);
+
+    /**
+     * The server resumed a download from somewhere other than the end of the partial file.
+     */
+    private static class ResumeMismatchException extends IOException {
+
+        private static final long serialVersionUID = -3170865932519476124L;
+
+        ResumeMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * An expected checksum of a download, as a hex string.
+     */
+    @Value
+    public static class Checksum {
+        String algorithm;
+        String hex;
+
+        public static Checksum sha1(String hex) {
+            return new Checksum("SHA-1", firstToken(hex));
+        }
+
+        public static Checksum md5(String hex) {
+            return new Checksum("MD5", firstToken(hex));
+        }
+
+        // Checksum files may be followed by the file name
+        private static String firstToken(String hex) {
+            String ret = hex.trim();
+            int space = ret.indexOf(' ');
+            return space == -1 ? ret : ret.substring(0, space);
+        }
+
+        boolean matches(@Nullable byte[] digest) {
+            return digest != null && BaseEncoding.base16().lowerCase().encode(digest).equalsIgnoreCase(hex);
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + " " + hex;
+        }
+    }
+
+    /**
+     * Streams a download into its partial file, hashing it on the way.
+     */
+    private static class PartWriter {
+
+        private final Path file;
+        @Nullable
+        private final MessageDigest digest;
+        @Nullable
+        private AsynchronousFileChannel channel;
+        @Getter
+        private long position;
+        @Getter
+        @Setter
+        @Nullable
+        private Validators received;
+
+        PartWriter(Path file, @Nullable Checksum checksum) throws IOException {
+            this.file = file;
+            try {
+                this.digest = checksum == null ? null : MessageDigest.getInstance(checksum.getAlgorithm());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Continue from the end of the existing partial file, hashing what is already there.
+         */
+        void seed() throws IOException {
+            if (digest != null) {
+                byte[] buf = new byte[1 << 16];
+                try (InputStream in = Files.newInputStream(file)) {
+                    int read;
+                    while ((read = in.read(buf)) != -1) {
+                        digest.update(buf, 0, read);
+                    }
+                }
+            }
+            position = Files.size(file);
+        }
+
+        /**
+         * Discard anything already written, the server is sending the whole file.
+         */
+        void restart() throws IOException {
+            if (digest != null) {
+                digest.reset();
+            }
+            position = 0;
+            Files.createDirectories(file.getParent());
+            getChannel().truncate(0);
+        }
+
+        private AsynchronousFileChannel getChannel() throws IOException {
+            AsynchronousFileChannel ret = channel;
+            if (ret == null) {
+                ret = channel = AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            return ret;
+        }
+
+        Mono<Void> write(ByteBuf buf) {
+            ByteBuffer data = buf.nioBuffer();
+            if (digest != null) {
+                digest.update(data.duplicate());
+            }
+            return Mono.<Void>create(sink -> {
+                try {
+                    writeFully(getChannel(), data, sink);
+                } catch (IOException e) {
+                    sink.error(e);
+                }
+            }).doFinally($ -> buf.release());
+        }
+
+        private void writeFully(AsynchronousFileChannel channel, ByteBuffer data, MonoSink<Void> sink) {
+            channel.write(data, position, null, new CompletionHandler<Integer, Void>() {
+
+                @Override
+                public void completed(Integer written, Void attachment) {
+                    position += written;
+                    if (data.hasRemaining()) {
+                        writeFully(channel, data, sink);
+                    } else {
+                        sink.success();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment) {
+                    sink.error(exc);
+                }
+            });
+        }
+
+        @Nullable
+        byte[] getDigest() {
+            return digest == null ? null : digest.digest();
+        }
+
+        void close() {
+            AsynchronousFileChannel channel = this.channel;
+            this.channel = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close partial download " + file, e);
+                }
+            }
+        }
+    }
+
+    private static final String FOLDER_NAME = ".http";
+    private static final String PART_SUFFIX = ".part";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String INDEX_FILE = "index.json";
+    private static final TypeToken<Map<String, Validators>> INDEX_TYPE = new TypeToken<Map<String, Validators>>(){};
+
+    public static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    // Pools are per remote address, so this also bounds the concurrent requests to any one host
+    private static final ConnectionProvider CONNECTIONS = ConnectionProvider.builder("mappings")
+            .maxConnections(MAX_CONNECTIONS_PER_HOST)
+            .pendingAcquireMaxCount(-1)
+            .maxIdleTime(Duration.ofMinutes(1))
+            .build();
+
+    public static final HttpClient CLIENT = HttpClient.create(CONNECTIONS)
+            .compress(true)
+            .followRedirect(true);
+
+    /**
+     * For files, see {@link #download(String, Path, Checksum)}. Ranges count bytes of the body as sent, so it must not
+     * be encoded, or a resumed download would continue from the wrong position.
+     */
+    private static final HttpClient DOWNLOAD_CLIENT = CLIENT.compress(false);
+
+    private final Path folder;
+    private final SaveHelper<Map<String, Validators>> saveHelper;
+    private final Map<String, Validators> validators = new ConcurrentHashMap<>();
+
+    MappingHttp(Path dataFolder, Gson gson) {
+        this.folder = dataFolder.resolve(FOLDER_NAME);
+        this.saveHelper = new SaveHelper<>(folder.toFile(), gson, new ConcurrentHashMap<>());
+        this.validators.putAll(saveHelper.fromJson(INDEX_FILE, INDEX_TYPE));
+    }
+
+    /**
+     * @return True if the file is an incomplete download, which must not be read as mappings data.
+     */
+    public static boolean isPartial(File file) {
+        return file.getName().endsWith(PART_SUFFIX) || file.getName().endsWith(TMP_SUFFIX);
+    }
+
+    private Path getBodyFile(String url) {
+        return folder.resolve(Hashing.murmur3_128().hashString(url, StandardCharsets.UTF_8) + ".body");
+    }
+
+    private Mono<Response> fetch(String url, boolean revalidate) {
+        Validators cached = revalidate ? validators.get(url) : null;
+        return CLIENT
+                .headers(h -> {
+                    if (cached != null && cached.getEtag() != null) {
+                        h.set("If-None-Match", cached.getEtag());
+                    }
+                    if (cached != null && cached.getLastModified() != null) {
+                        h.set("If-Modified-Since", cached.getLastModified());
+                    }
+                })
+                .get()
+                .uri(url)
+                .responseSingle((resp, content) -> {
+                    int code = resp.status().code();
+                    if (code == 304 && cached != null) {
+                        log.debug("Not modified: {}", url);
+                        return Mono.just(NOT_MODIFIED);
+                    }
+                    if (code / 100 != 2) {
+                        return Mono.error(new IOException("Unexpected response " + resp.status() + " from " + url));
+                    }
+                    Validators received = new Validators(resp.responseHeaders().get("ETag"), resp.responseHeaders().get("Last-Modified"));
+                    return content.asByteArray()
+                            .defaultIfEmpty(new byte[0])
+                            .map(body -> new Response(true, body, received));
+                });
+    }
+
+    private void remember(String url, @Nullable Validators received) {
+        if (received == null || (received.getEtag() == null && received.getLastModified() == null)) {
+            forget(url);
+            return;
+        }
+        validators.put(url, received);
+        saveHelper.writeJson(INDEX_FILE, new ConcurrentHashMap<>(validators), INDEX_TYPE);
+    }
+
+    private void forget(String url) {
+        if (validators.remove(url) != null) {
+            saveHelper.writeJson(INDEX_FILE, new ConcurrentHashMap<>(validators), INDEX_TYPE);
+        }
+    }
+
+    private static void write(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+        Files.write(tmp, data);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * GET a text resource, such as a versions JSON. The last response is stored, and returned again if the server
+     * reports it has not changed.
+     */
+    public Mono<String> getString(String url) {
+        Path body = getBodyFile(url);
+        return Mono.defer(() -> fetch(url, Files.exists(body)))
+                .publishOn(MappingCache.LOADER)
+                .flatMap(resp -> Mono.fromCallable(() -> {
+                    if (!resp.isModified()) {
+                        return Files.readAllBytes(body);
+                    }
+                    write(body, resp.getBody());
+                    remember(url, resp.getValidators());
+                    return resp.getBody();
+                }))
+                .map(bytes -> new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Download a file, unless it already exists and the server reports it has not changed since. The file only appears
+     * once it is complete and verified, see {@link #download(String, Path, Checksum)}.
+     * <p>
+     * The expected checksum is read from the SHA-1 file next to the URL, as published by maven repositories. If there
+     * is none, the download is not verified.
+     *
+     * @return True if the file was written.
+     */
+    public Mono<Boolean> downloadVerified(String url, Path target) {
+        return getString(url + ".sha1")
+                .map(Checksum::sha1)
+                .map(Optional::of)
+                .onErrorResume(t -> {
+                    log.warn("No checksum available for {}, downloading unverified", url);
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(checksum -> download(url, target, checksum.orElse(null)));
+    }
+
+    /**
+     * Download a file, unless it already exists and the server reports it has not changed since.
+     * <p>
+     * The body is streamed into a partial file next to the target, which is only moved into place once complete, and
+     * once its checksum matches if one is given. If a previous download of the same URL was interrupted, it is resumed
+     * from where it stopped, as long as the server still has the same version of the file.
+     *
+     * @return True if the file was written.
+     */
+    public Mono<Boolean> download(String url, Path target, @Nullable Checksum checksum) {
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        return Mono.fromCallable(() -> {
+                    Validators partial = Files.exists(part) ? validators.get(url + PART_SUFFIX) : null;
+                    PartWriter writer = new PartWriter(part, checksum);
+                    if (partial != null) {
+                        writer.seed();
+                    }
+                    return Tuples.of(writer, Optional.ofNullable(partial));
+                })
+                .subscribeOn(MappingCache.LOADER)
+                .flatMap(t -> {
+                    PartWriter writer = t.getT1();
+                    return stream(url, target, writer, t.getT2().orElse(null))
+                            // What is already written cannot be continued from where the server resumed, so start over
+                            .onErrorResume(ResumeMismatchException.class, e -> {
+                                log.warn(e.getMessage());
+                                forget(url + PART_SUFFIX);
+                                return stream(url, target, writer, null);
+                            })
+                            .publishOn(MappingCache.LOADER)
+                            .flatMap(written -> !written ? Mono.just(false) : Mono.fromCallable(() -> {
+                                writer.close();
+                                if (checksum != null && !checksum.matches(writer.getDigest())) {
+                                    Files.deleteIfExists(part);
+                                    forget(url + PART_SUFFIX);
+                                    throw new IOException("Checksum mismatch for " + url + ", expected " + checksum);
+                                }
+                                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                                forget(url + PART_SUFFIX);
+                                remember(url, writer.getReceived());
+                                return true;
+                            }))
+                            .doFinally($ -> writer.close());
+                });
+    }
+
+    /**
+     * @return False if the file was not modified, otherwise true once the body has been written to the partial file.
+     */
+    private Mono<Boolean> stream(String url, Path target, PartWriter writer, @Nullable Validators partial) {
+        Validators cached = partial == null && Files.exists(target) ? validators.get(url) : null;
+        return DOWNLOAD_CLIENT
+                .headers(h -> {
+                    h.set("Accept-Encoding", "identity");
+                    if (partial != null) {
+                        h.set("Range", "bytes=" + writer.getPosition() + "-");
+                        h.set("If-Range", partial.getEtag() != null ? partial.getEtag() : partial.getLastModified());
+                    } else if (cached != null) {
+                        if (cached.getEtag() != null) {
+                            h.set("If-None-Match", cached.getEtag());
+                        }
+                        if (cached.getLastModified() != null) {
+                            h.set("If-Modified-Since", cached.getLastModified());
+                        }
+                    }
+                })
+                .get()
+                .uri(url)
+                .response((resp, body) -> {
+                    int code = resp.status().code();
+                    if (code == 304 && cached != null) {
+                        log.debug("Not modified: {}", url);
+                        return Mono.just(false);
+                    }
+                    if (code / 100 != 2) {
+                        return Mono.<Boolean>error(new IOException("Unexpected response " + resp.status() + " from " + url));
+                    }
+                    Validators received = new Validators(resp.responseHeaders().get("ETag"), resp.responseHeaders().get("Last-Modified"));
+                    try {
+                        if (code == 206) {
+                            long start = getRangeStart(resp.responseHeaders().get("Content-Range"));
+                            if (start != writer.getPosition()) {
+                                return Mono.<Boolean>error(new ResumeMismatchException("Download of " + url + " was resumed from " + start
+                                        + " instead of " + writer.getPosition() + " bytes, starting over"));
+                            }
+                            log.info("Resuming download of {} from {} bytes", url, writer.getPosition());
+                        } else {
+                            writer.restart();
+                        }
+                        writer.setReceived(received);
+                        remember(url + PART_SUFFIX, received);
+                    } catch (IOException e) {
+                        return Mono.<Boolean>error(e);
+                    }
+                    return body.retain()
+                            .concatMap(writer::write)
+                            .doOnDiscard(ByteBuf.class, ReferenceCountUtil::safeRelease)
+                            .then(Mono.just(true));
+                })
+                .next();
+    }
+
+    /**
+     * @param contentRange
+     *            A Content-Range header, e.g. {@code bytes 100-199/200}.
+     * @return The position of the first byte in the range, or -1 if there is none.
+     */
+    private static long getRangeStart(@Nullable String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash == -1 ? -1 : Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The status code of a HEAD request to the given URL.
+     */
+    public Mono<Integer> status(String url) {
+        return CLIENT.head()
+                .uri(url)
+                .response()
+                .map(resp -> resp.status().code());
+    }
+}
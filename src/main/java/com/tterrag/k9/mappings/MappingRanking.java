@@ -0,0 +1,145 @@
+package com.tterrag.k9.mappings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.tterrag.k9.util.annotation.NonNull;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+/**
+ * Ranks the results of a lookup by how closely they match the search, keeping only a window of the best.
+ * <p>
+ * Every match is scored as it is found and offered to a heap bounded to the end of the window, so a broad search costs
+ * one pass over its matches, and only the kept results are ever sorted or formatted. Results past the window are
+ * ranked by another lookup, once someone asks for them.
+ */
+public final class MappingRanking {
+
+    private static final MappingType[] MAPPING_TYPES = MappingType.values();
+    private static final NameType[] NAME_TYPES = NameType.values();
+
+    private static final int EXACT_NAME = 16;
+    private static final int EXACT_INTERMEDIATE = 12;
+    private static final int SAME_ID = 10;
+    private static final int EXACT_ORIGINAL = 8;
+    private static final int IGNORING_CASE = 6;
+    private static final int OWNER = 2;
+    private static final int SUFFIX = 1;
+
+    @Value
+    public static class Result<T> {
+        /**
+         * The matches in the requested window, best first.
+         */
+        List<T> top;
+        /**
+         * The number of matches found in total.
+         */
+        int total;
+    }
+
+    @RequiredArgsConstructor
+    private static class Scored<T extends Mapping> {
+        final T mapping;
+        final int score;
+    }
+
+    private static final Comparator<Scored<?>> BEST_FIRST = Comparator.<Scored<?>>comparingInt(s -> -s.score)
+            .thenComparing(s -> s.mapping.getType())
+            .thenComparing(s -> s.mapping.getIntermediate(), Comparator.nullsLast(Comparator.naturalOrder()))
+            // Windows of the same search are ranked separately, so ties are broken as far as possible
+            .thenComparing(s -> s.mapping.getOriginal(), Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(s -> s.mapping.getOwner(), Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(s -> s.mapping.getDesc(), Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private MappingRanking() {}
+
+    /**
+     * @param type
+     *            The type of mapping to find, or null for any.
+     * @param skip
+     *            The number of best matches to leave out, which an earlier window already returned.
+     * @param limit
+     *            The most results to return.
+     */
+    public static <@NonNull T extends Mapping> Result<T> lookup(MappingDatabase<T> db, @Nullable MappingType type, String search, int skip, int limit) {
+        int lastDot = search.lastIndexOf('.');
+        String owner = lastDot == -1 ? null : simpleName(search.substring(0, lastDot));
+        String name = search.substring(lastDot + 1);
+        int id = FastIntLookupDatabase.parseSrgId(name);
+
+        int keep = skip + limit;
+        ReferenceOpenHashSet<T> seen = new ReferenceOpenHashSet<>();
+        PriorityQueue<Scored<T>> best = new PriorityQueue<>(keep + 1, BEST_FIRST.reversed());
+        for (MappingType t : MAPPING_TYPES) {
+            if (type != null && t != type) {
+                continue;
+            }
+            for (NameType by : NAME_TYPES) {
+                for (T mapping : db.lookup(by, t, search)) {
+                    if (seen.add(mapping)) {
+                        best.add(new Scored<>(mapping, score(mapping, owner, name, id)));
+                        if (best.size() > keep) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Scored<T>> sorted = new ArrayList<>(best);
+        sorted.sort(BEST_FIRST);
+        List<T> top = new ArrayList<>(Math.max(0, sorted.size() - skip));
+        for (int i = skip; i < sorted.size(); i++) {
+            top.add(sorted.get(i).mapping);
+        }
+        return new Result<>(Collections.unmodifiableList(top), seen.size());
+    }
+
+    private static int score(Mapping mapping, @Nullable String owner, String name, int id) {
+        boolean isClass = mapping.getType() == MappingType.CLASS;
+        String mapped = mapping.getName();
+        // Not every database has intermediate names
+        String intermediate = mapping.getIntermediate();
+        String original = mapping.getOriginal();
+        if (isClass) {
+            mapped = simpleName(mapped);
+            intermediate = simpleName(intermediate);
+            original = simpleName(original);
+        }
+        int ret = 0;
+        if (name.equals(mapped)) {
+            ret += EXACT_NAME;
+        } else if (name.equals(intermediate)) {
+            ret += EXACT_INTERMEDIATE;
+        } else if (id >= 0 && intermediate != null && id == FastIntLookupDatabase.parseSrgId(intermediate)) {
+            ret += SAME_ID;
+        } else if (name.equals(original)) {
+            ret += EXACT_ORIGINAL;
+        } else if (name.equalsIgnoreCase(mapped) || name.equalsIgnoreCase(intermediate)) {
+            ret += IGNORING_CASE;
+        } else if ((mapped != null && mapped.endsWith(name)) || (intermediate != null && intermediate.endsWith(name))) {
+            ret += SUFFIX;
+        }
+        if (owner != null && !isClass) {
+            String mappingOwner = mapping.getOwner();
+            if (mappingOwner != null && owner.equals(simpleName(mappingOwner))) {
+                ret += OWNER;
+            }
+        }
+        return ret;
+    }
+
+    private static @Nullable String simpleName(@Nullable String name) {
+        if (name == null) {
+            return null;
+        }
+        return name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('.')) + 1);
+    }
+}
@@ -0,0 +1,208 @@
+package com.tterrag.k9.mappings;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.tterrag.k9.util.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A compact binary image of a fully built {@link AbstractMappingDatabase}. Loading one of these is a matter of reading a
+ * string table and a flat list of entries, which is far cheaper than running the parsers again.
+ * <p>
+ * Each database decides how its mappings are encoded, see {@link SnapshotDatabase#toSnapshot(Mapping, java.util.function.ToIntFunction)}.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class MappingSnapshot {
+
+    public static final String FILE_NAME = "mappings.snapshot";
+
+    private static final int MAGIC = 0x4B394D53; // K9MS
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int NULL = -1;
+
+    @Value
+    public static class Entry {
+
+        MappingType type;
+
+        /**
+         * Index of the entry this one belongs to (e.g. the method of a parameter), or -1.
+         */
+        int parent;
+
+        int flags;
+
+        int index;
+
+        @Nullable String[] values;
+
+        public static Entry of(MappingType type, int flags, @Nullable String... values) {
+            return new Entry(type, NULL, flags, 0, values);
+        }
+
+        public static Entry child(MappingType type, int parent, int flags, int index, @Nullable String... values) {
+            return new Entry(type, parent, flags, index, values);
+        }
+
+        public @Nullable String get(int i) {
+            return i < values.length ? values[i] : null;
+        }
+
+        public boolean hasParent() {
+            return parent != NULL;
+        }
+
+        public boolean hasFlag(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final int dataVersion;
+    private final String fingerprint;
+    @Getter
+    private final List<Entry> entries;
+
+    public static boolean isSnapshot(File file) {
+        return file.getName().equals(FILE_NAME);
+    }
+
+    /**
+     * Builds a string which changes whenever any of the given source files change.
+     *
+     * @return The fingerprint, or null if any of the files are missing.
+     */
+    public static @Nullable String fingerprint(List<Path> sources) throws IOException {
+        StringBuilder ret = new StringBuilder();
+        for (Path source : sources) {
+            if (!Files.exists(source)) {
+                return null;
+            }
+            ret.append(source.getFileName()).append(':')
+               .append(Files.size(source)).append(':')
+               .append(Files.getLastModifiedTime(source).toMillis()).append(';');
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @return The snapshot stored in the given file, or null if it does not exist or is out of date.
+     */
+    public static @Nullable MappingSnapshot read(Path file, int dataVersion, String fingerprint) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION || buf.getInt() != dataVersion) {
+                log.info("Discarding incompatible snapshot {}", file);
+                return null;
+            }
+            if (!fingerprint.equals(readString(buf))) {
+                log.info("Discarding out of date snapshot {}", file);
+                return null;
+            }
+
+            String[] strings = new String[buf.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = StringPool.intern(readString(buf));
+            }
+
+            MappingType[] types = MappingType.values();
+            int count = buf.getInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                MappingType type = types[buf.get() & 0xFF];
+                int parent = buf.getInt();
+                int flags = buf.getInt();
+                int index = buf.getInt();
+                String[] values = new String[buf.get() & 0xFF];
+                for (int j = 0; j < values.length; j++) {
+                    int id = buf.getInt();
+                    values[j] = id == NULL ? null : strings[id];
+                }
+                entries.add(new Entry(type, parent, flags, index, values));
+            }
+            return new MappingSnapshot(dataVersion, fingerprint, Collections.unmodifiableList(entries));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            log.warn("Discarding corrupt snapshot " + file, e);
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+        ids.defaultReturnValue(NULL);
+        List<String> strings = new ArrayList<>();
+        for (Entry e : entries) {
+            for (String s : e.getValues()) {
+                if (s != null && ids.getInt(s) == NULL) {
+                    ids.put(s, strings.size());
+                    strings.add(s);
+                }
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dataVersion);
+            writeString(out, fingerprint);
+
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                writeString(out, s);
+            }
+
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                out.writeByte(e.getType().ordinal());
+                out.writeInt(e.getParent());
+                out.writeInt(e.getFlags());
+                out.writeInt(e.getIndex());
+                out.writeByte(e.getValues().length);
+                for (String s : e.getValues()) {
+                    out.writeInt(s == null ? NULL : ids.getInt(s));
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,214 @@
+package com.tterrag.k9.mappings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.tterrag.k9.util.annotation.Nullable;
+
+/**
+ * All mappings of a single {@link NameType} and {@link MappingType} in a database, keyed by that name.
+ * <p>
+ * While a database is loading, this is backed by a regular multimap. Once loaded, it is {@link #freeze() frozen} into
+ * a sorted array of keys, with the values of each key stored contiguously in a second array. This takes a fraction of
+ * the memory, and once frozen, reads need no locking.
+ */
+public final class MappingTable<T> {
+
+    private static final String[] NO_KEYS = new String[0];
+    private static final int[] NO_OFFSETS = { 0 };
+
+    private static final class Frozen {
+
+        /**
+         * Sorted, unique keys.
+         */
+        final String[] keys;
+
+        /**
+         * The values of {@code keys[i]} are in {@code values[offsets[i]]} up to {@code values[offsets[i + 1]]}.
+         */
+        final int[] offsets;
+
+        final Object[] values;
+
+        Frozen(String[] keys, int[] offsets, Object[] values) {
+            this.keys = keys;
+            this.offsets = offsets;
+            this.values = values;
+        }
+
+        int indexOf(String key) {
+            return Arrays.binarySearch(keys, key);
+        }
+    }
+
+    /**
+     * Outside of a change between the two, exactly one of these is set. Every change sets the new one before it clears
+     * the old, so a reader that finds neither has raced a freeze, and only has to read {@link #frozen} again.
+     */
+    private volatile @Nullable ListMultimap<String, T> building;
+    private volatile @Nullable Frozen frozen = new Frozen(NO_KEYS, NO_OFFSETS, new Object[0]);
+
+    public boolean isFrozen() {
+        return frozen != null;
+    }
+
+    void put(String key, T value) {
+        thaw().put(key, value);
+    }
+
+    void remove(String key, T value) {
+        thaw().remove(key, value);
+    }
+
+    void clear() {
+        frozen = new Frozen(NO_KEYS, NO_OFFSETS, new Object[0]);
+        building = null;
+    }
+
+    private ListMultimap<String, T> thaw() {
+        ListMultimap<String, T> ret = building;
+        if (ret == null) {
+            ret = building = ArrayListMultimap.create();
+            forEach(ret::put);
+            frozen = null;
+        }
+        return ret;
+    }
+
+    /**
+     * Convert the contents of this table to the compact read-only form. Any later modification will undo this.
+     */
+    void freeze() {
+        ListMultimap<String, T> building = this.building;
+        if (building == null) {
+            return;
+        }
+        String[] keys = building.keySet().toArray(NO_KEYS);
+        Arrays.sort(keys);
+        int[] offsets = new int[keys.length + 1];
+        Object[] values = new Object[building.size()];
+        int idx = 0;
+        for (int i = 0; i < keys.length; i++) {
+            offsets[i] = idx;
+            for (T value : building.get(keys[i])) {
+                values[idx++] = value;
+            }
+        }
+        offsets[keys.length] = idx;
+        this.frozen = new Frozen(keys, offsets, values);
+        this.building = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> slice(Frozen f, int from, int to) {
+        return Collections.unmodifiableList((List<T>) Arrays.asList(f.values).subList(from, to));
+    }
+
+    public List<T> get(String key) {
+        Frozen f = frozen;
+        if (f == null) {
+            ListMultimap<String, T> b = building;
+            if (b != null) {
+                return Collections.unmodifiableList(b.get(key));
+            }
+            f = frozen;
+        }
+        int i = f.indexOf(key);
+        return i < 0 ? Collections.emptyList() : slice(f, f.offsets[i], f.offsets[i + 1]);
+    }
+
+    public boolean containsKey(String key) {
+        Frozen f = frozen;
+        if (f == null) {
+            ListMultimap<String, T> b = building;
+            if (b != null) {
+                return b.containsKey(key);
+            }
+            f = frozen;
+        }
+        return f.indexOf(key) >= 0;
+    }
+
+    /**
+     * @return All keys in this table. Sorted, if the table is frozen.
+     */
+    public List<String> keys() {
+        Frozen f = frozen;
+        if (f == null) {
+            ListMultimap<String, T> b = building;
+            if (b != null) {
+                return new ArrayList<>(b.keySet());
+            }
+            f = frozen;
+        }
+        return Collections.unmodifiableList(Arrays.asList(f.keys));
+    }
+
+    public Collection<T> values() {
+        Frozen f = frozen;
+        if (f == null) {
+            ListMultimap<String, T> b = building;
+            if (b != null) {
+                return Collections.unmodifiableCollection(b.values());
+            }
+            f = frozen;
+        }
+        return slice(f, 0, f.values.length);
+    }
+
+    public int size() {
+        Frozen f = frozen;
+        if (f == null) {
+            ListMultimap<String, T> b = building;
+            if (b != null) {
+                return b.size();
+            }
+            f = frozen;
+        }
+        return f.values.length;
+    }
+
+    /**
+     * @return A rough estimate of the heap used by this table itself, not counting the keys and values.
+     */
+    public long estimateSize() {
+        Frozen f = frozen;
+        if (f == null) {
+            ListMultimap<String, T> b = building;
+            if (b != null) {
+                // Multimap entries and their lists
+                return b.size() * 48L + b.keySet().size() * 64L;
+            }
+            f = frozen;
+        }
+        return 48 + f.keys.length * 12L + f.values.length * 8L;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super String, ? super T> action) {
+        Frozen f = frozen;
+        if (f == null) {
+            ListMultimap<String, T> b = building;
+            if (b != null) {
+                for (Map.Entry<String, T> e : b.entries()) {
+                    action.accept(e.getKey(), e.getValue());
+                }
+                return;
+            }
+            f = frozen;
+        }
+        for (int i = 0; i < f.keys.length; i++) {
+            for (int j = f.offsets[i]; j < f.offsets[i + 1]; j++) {
+                action.accept(f.keys[i], (T) f.values[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.tterrag.k9.mappings;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import com.tterrag.k9.util.annotation.Nullable;
+
+/**
+ * Memoizes a lazily remapped name (owner, descriptor, etc.) for each {@link NameType}.
+ * <p>
+ * Mappings are read from many threads at once, so unlike an {@link java.util.EnumMap} this is safe to fill
+ * concurrently. At worst, two threads compute the same value.
+ */
+public final class NameTypeCache {
+
+    private static final NameType[] TYPES = NameType.values();
+
+    // Distinct instance, so that a remapped null can be told apart from a value not yet computed
+    private static final String NULL = new String("null");
+
+    private final AtomicReferenceArray<String> values = new AtomicReferenceArray<>(TYPES.length);
+
+    public @Nullable String computeIfAbsent(NameType type, Function<NameType, @Nullable String> func) {
+        String ret = values.get(type.ordinal());
+        if (ret == null) {
+            ret = func.apply(type);
+            values.lazySet(type.ordinal(), ret == null ? NULL : ret);
+            return ret;
+        }
+        return ret == NULL ? null : ret;
+    }
+
+    public void clear() {
+        for (int i = 0; i < TYPES.length; i++) {
+            values.set(i, null);
+        }
+    }
+}
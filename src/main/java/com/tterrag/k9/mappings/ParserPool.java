@@ -0,0 +1,132 @@
+package com.tterrag.k9.mappings;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A bounded pool shared by all databases to parse independent inputs (files, dependent databases) of a single load in
+ * parallel, along with timings of each named phase of those loads.
+ * <p>
+ * This is a fork/join pool, so a task may itself fork and join further tasks without starving the pool.
+ */
+@Slf4j
+public final class ParserPool {
+
+    @FunctionalInterface
+    public interface Phase<T> {
+
+        T run() throws IOException, NoSuchVersionException;
+
+    }
+
+    public static final class PhaseMetrics {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+
+        @Override
+        public String toString() {
+            long count = getCount();
+            return count + "x, avg " + (count == 0 ? 0 : getTotalMillis() / count) + "ms, max " + getMaxMillis() + "ms";
+        }
+    }
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())), p -> {
+        ForkJoinWorkerThread ret = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        ret.setName("Mapping parser #" + threadCount.incrementAndGet());
+        ret.setDaemon(true);
+        return ret;
+    }, (t, e) -> log.error("Uncaught exception in mapping parser", e), false);
+
+    private static final Map<String, PhaseMetrics> metrics = new ConcurrentHashMap<>();
+
+    private ParserPool() {}
+
+    /**
+     * Run a phase on the parser pool.
+     *
+     * @param name
+     *            The name to record the timing of this phase under, e.g. "mcp/srg".
+     * @return The running task, to be passed to {@link #join(ForkJoinTask)}.
+     */
+    public static <T> ForkJoinTask<T> fork(String name, Phase<T> phase) {
+        return pool.submit(() -> time(name, phase));
+    }
+
+    /**
+     * Wait for a task started by {@link #fork(String, Phase)}, rethrowing anything it failed with.
+     */
+    public static <T> T join(ForkJoinTask<T> task) throws IOException, NoSuchVersionException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading mappings", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof NoSuchVersionException) {
+                throw (NoSuchVersionException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Run a phase on the current thread, recording its timing.
+     */
+    public static <T> T time(String name, Phase<T> phase) throws IOException, NoSuchVersionException {
+        long start = System.nanoTime();
+        try {
+            return phase.run();
+        } finally {
+            metrics.computeIfAbsent(name, $ -> new PhaseMetrics()).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The timings of all phases run so far, by name.
+     */
+    public static Map<String, PhaseMetrics> getMetrics() {
+        return Collections.unmodifiableMap(new TreeMap<>(metrics));
+    }
+}
@@ -0,0 +1,38 @@
+package com.tterrag.k9.mappings;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import com.tterrag.k9.util.annotation.NonNull;
+
+/**
+ * A database that can be saved to a {@link MappingSnapshot} and restored from one instead of being parsed, see
+ * {@link AbstractMappingDatabase#loadSnapshot(Path, int, String)}. Databases that do not implement this are always parsed.
+ */
+public interface SnapshotDatabase<@NonNull T extends Mapping> extends MappingDatabase<T> {
+
+    /**
+     * @return The files this database is parsed from. If any of these change, snapshots of this database are discarded.
+     *         An empty list means there is nothing to snapshot yet.
+     */
+    List<Path> getSourceFiles();
+
+    /**
+     * Encode a mapping for a {@link MappingSnapshot}. Mappings are written in {@link MappingType} order, so a mapping can
+     * reference any mapping of an earlier type.
+     *
+     * @param indexOf
+     *            Finds the snapshot index of another mapping in this database, for use as a parent reference.
+     */
+    MappingSnapshot.Entry toSnapshot(T mapping, ToIntFunction<Mapping> indexOf);
+
+    /**
+     * Decode a mapping previously encoded by {@link #toSnapshot(Mapping, ToIntFunction)}.
+     *
+     * @param byIndex
+     *            Finds an already decoded mapping by its snapshot index.
+     */
+    T fromSnapshot(MappingSnapshot.Entry entry, IntFunction<T> byIndex);
+}
@@ -0,0 +1,150 @@
+package com.tterrag.k9.mappings;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import com.tterrag.k9.util.annotation.Nullable;
+
+/**
+ * A process-wide pool of weakly referenced strings, used by the mapping parsers so that names, owners and descriptors
+ * are shared between all loaded versions instead of being duplicated by each of them.
+ * <p>
+ * Lookups can be done directly on a range of characters, so parsers need not allocate a string for a symbol that is
+ * already pooled. Strings are dropped from the pool once nothing else references them.
+ */
+public final class StringPool {
+
+    private static final int SEGMENTS = 16;
+
+    private static final Segment[] segments = new Segment[SEGMENTS];
+    static {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private StringPool() {}
+
+    public static @Nullable String intern(@Nullable String s) {
+        return s == null ? null : segmentFor(s.hashCode()).intern(s, 0, s.length(), s.hashCode(), s);
+    }
+
+    public static String intern(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return segmentFor(hash).intern(chars, start, end, hash, null);
+    }
+
+    public static int size() {
+        int ret = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                ret += segment.count;
+            }
+        }
+        return ret;
+    }
+
+    private static Segment segmentFor(int hash) {
+        // Spread so that the segment is not picked by the same low bits as the bucket
+        hash ^= hash >>> 16;
+        return segments[(hash >>> 8) & (SEGMENTS - 1)];
+    }
+
+    private static final class Node extends WeakReference<String> {
+
+        final int hash;
+        @Nullable Node next;
+
+        Node(String value, int hash, @Nullable Node next, ReferenceQueue<String> queue) {
+            super(value, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment {
+
+        private final ReferenceQueue<String> queue = new ReferenceQueue<>();
+        private Node[] table = new Node[1024];
+        private int count;
+
+        synchronized String intern(CharSequence chars, int start, int end, int hash, @Nullable String value) {
+            expunge();
+            int len = end - start;
+            int idx = hash & (table.length - 1);
+            for (Node n = table[idx]; n != null; n = n.next) {
+                if (n.hash != hash) {
+                    continue;
+                }
+                String s = n.get();
+                if (s != null && s.length() == len && contentEquals(s, chars, start)) {
+                    return s;
+                }
+            }
+            if (value == null) {
+                value = chars.subSequence(start, end).toString();
+            }
+            table[idx] = new Node(value, hash, table[idx], queue);
+            if (++count > table.length * 3 / 4) {
+                resize();
+            }
+            return value;
+        }
+
+        private static boolean contentEquals(String s, CharSequence chars, int start) {
+            if (chars instanceof String) {
+                return s.regionMatches(0, (String) chars, start, s.length());
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) != chars.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void expunge() {
+            Node stale;
+            while ((stale = (Node) queue.poll()) != null) {
+                int idx = stale.hash & (table.length - 1);
+                Node prev = null;
+                for (Node n = table[idx]; n != null; prev = n, n = n.next) {
+                    if (n == stale) {
+                        if (prev == null) {
+                            table[idx] = n.next;
+                        } else {
+                            prev.next = n.next;
+                        }
+                        count--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void resize() {
+            Node[] old = table;
+            Node[] resized = new Node[old.length * 2];
+            for (Node head : old) {
+                Node n = head;
+                while (n != null) {
+                    Node next = n.next;
+                    if (n.get() == null) {
+                        // Will be removed from the queue later, unlink it now so it is not found twice
+                        count--;
+                        n.next = null;
+                    } else {
+                        int idx = n.hash & (resized.length - 1);
+                        n.next = resized[idx];
+                        resized[idx] = n;
+                    }
+                    n = next;
+                }
+            }
+            table = resized;
+        }
+    }
+}
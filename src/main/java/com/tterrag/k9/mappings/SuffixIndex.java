@@ -0,0 +1,88 @@
+package com.tterrag.k9.mappings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable index of string keys which finds every key ending with a given suffix.
+ * <p>
+ * Keys are stored reversed and sorted, so all keys sharing a suffix form one contiguous run. Finding that run is a
+ * binary search, after which the cost of a query is proportional to the number of results.
+ */
+public class SuffixIndex<T> {
+
+    private final String[] keys;
+    private final Object[] values;
+
+    private SuffixIndex(List<Map.Entry<String, T>> entries) {
+        entries.sort(Map.Entry.comparingByKey(Comparator.naturalOrder()));
+        this.keys = new String[entries.size()];
+        this.values = new Object[entries.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Map.Entry<String, T> e = entries.get(i);
+            keys[i] = e.getKey();
+            values[i] = e.getValue();
+        }
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    public static class Builder<T> {
+
+        private final List<Map.Entry<String, T>> entries = new ArrayList<>();
+
+        public Builder<T> put(String key, T value) {
+            entries.add(Maps.immutableEntry(reverse(key), value));
+            return this;
+        }
+
+        public SuffixIndex<T> build() {
+            return new SuffixIndex<>(entries);
+        }
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return All values whose key ends with the given suffix, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> find(String suffix) {
+        String prefix = reverse(suffix);
+        int i = lowerBound(prefix);
+        if (i == keys.length || !keys[i].startsWith(prefix)) {
+            return Collections.emptyList();
+        }
+        List<T> ret = new ArrayList<>();
+        for (; i < keys.length && keys[i].startsWith(prefix); i++) {
+            ret.add((T) values[i]);
+        }
+        return ret;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static String reverse(String s) {
+        return new StringBuilder(s).reverse().toString();
+    }
+}
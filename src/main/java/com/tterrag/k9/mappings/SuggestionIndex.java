@@ -0,0 +1,224 @@
+package com.tterrag.k9.mappings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.tterrag.k9.util.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongHeapPriorityQueue;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * An immutable trigram index over the names in a database, used to suggest names close to a lookup that found nothing.
+ * <p>
+ * Every distinct name is lowercased and padded, and each run of three characters in it maps to the IDs of all names
+ * containing that run. A query reads only the postings of its own trigrams, rarest first, and stops reading once its
+ * time budget is spent. The names sharing the most trigrams with the query are then ranked by edit distance.
+ */
+public final class SuggestionIndex {
+
+    private static final char PAD = '\0';
+
+    /**
+     * How long a single query may spend reading postings.
+     */
+    private static final long BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(3);
+
+    /**
+     * How many of the names sharing the most trigrams are ranked by edit distance.
+     */
+    private static final int MAX_CANDIDATES = 64;
+
+    private final String[] names;
+
+    /**
+     * Bitmask of the {@link MappingType MappingTypes} that have each name, by name ID.
+     */
+    private final byte[] types;
+
+    /**
+     * The number of distinct trigrams in each name, by name ID.
+     */
+    private final int[] gramCounts;
+
+    private final Long2ObjectMap<int[]> postings;
+
+    private SuggestionIndex(List<String> names, ByteArrayList types) {
+        this.names = names.toArray(new String[0]);
+        this.types = types.toByteArray();
+        this.gramCounts = new int[this.names.length];
+        Long2ObjectOpenHashMap<IntArrayList> lists = new Long2ObjectOpenHashMap<>();
+        for (int id = 0; id < this.names.length; id++) {
+            long[] grams = grams(this.names[id]);
+            gramCounts[id] = grams.length;
+            for (long gram : grams) {
+                IntArrayList list = lists.get(gram);
+                if (list == null) {
+                    lists.put(gram, list = new IntArrayList(4));
+                }
+                list.add(id);
+            }
+        }
+        Long2ObjectOpenHashMap<int[]> postings = new Long2ObjectOpenHashMap<>(lists.size());
+        for (Long2ObjectMap.Entry<IntArrayList> e : lists.long2ObjectEntrySet()) {
+            postings.put(e.getLongKey(), e.getValue().toIntArray());
+        }
+        this.postings = postings;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final ByteArrayList types = new ByteArrayList();
+
+        {
+            ids.defaultReturnValue(-1);
+        }
+
+        public Builder put(MappingType type, String name) {
+            int id = ids.getInt(name);
+            if (id == -1) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+                types.add((byte) 0);
+            }
+            types.set(id, (byte) (types.getByte(id) | 1 << type.ordinal()));
+            return this;
+        }
+
+        public SuggestionIndex build() {
+            return new SuggestionIndex(names, types);
+        }
+    }
+
+    /**
+     * @return The distinct trigrams of the lowercased name, padded so that the start and end of the name count, each
+     *         packed into a long.
+     */
+    private static long[] grams(String name) {
+        String padded = PAD + name.toLowerCase(Locale.ROOT) + PAD;
+        if (padded.length() < 3) {
+            return new long[0];
+        }
+        long[] ret = new long[padded.length() - 2];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+        }
+        Arrays.sort(ret);
+        int distinct = 0;
+        for (int i = 0; i < ret.length; i++) {
+            if (i == 0 || ret[i] != ret[i - 1]) {
+                ret[distinct++] = ret[i];
+            }
+        }
+        return Arrays.copyOf(ret, distinct);
+    }
+
+    @RequiredArgsConstructor
+    private static class Candidate {
+        final String name;
+        final int distance;
+        final int shared;
+    }
+
+    /**
+     * @param type
+     *            The type of mapping to suggest names of, or null for any.
+     * @param search
+     *            A name that was not found.
+     * @return Up to {@code limit} names similar to the search, closest first.
+     */
+    @SuppressWarnings("deprecation")
+    public List<String> suggest(@Nullable MappingType type, String search, int limit) {
+        long deadline = System.nanoTime() + BUDGET_NANOS;
+        long[] grams = grams(search);
+        int[][] lists = new int[grams.length][];
+        int count = 0;
+        for (long gram : grams) {
+            int[] list = postings.get(gram);
+            if (list != null) {
+                lists[count++] = list;
+            }
+        }
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        // Rarest first, so that the most selective postings are read if the budget runs out
+        Arrays.sort(lists, 0, count, Comparator.comparingInt(list -> list.length));
+        int typeMask = type == null ? -1 : 1 << type.ordinal();
+        Int2IntOpenHashMap shared = new Int2IntOpenHashMap();
+        for (int i = 0; i < count && System.nanoTime() < deadline; i++) {
+            for (int id : lists[i]) {
+                if ((types[id] & typeMask) != 0) {
+                    shared.addTo(id, 1);
+                }
+            }
+        }
+
+        // Keep the best candidates by Dice coefficient, packed with their ID so the heap holds only primitives
+        LongHeapPriorityQueue best = new LongHeapPriorityQueue(MAX_CANDIDATES + 1);
+        for (Int2IntMap.Entry e : shared.int2IntEntrySet()) {
+            int id = e.getIntKey();
+            int score = e.getIntValue() * 20_000 / (grams.length + gramCounts[id]);
+            best.enqueue((long) score << 32 | id);
+            if (best.size() > MAX_CANDIDATES) {
+                best.dequeueLong();
+            }
+        }
+
+        String lower = search.toLowerCase(Locale.ROOT);
+        int threshold = Math.max(2, lower.length() / 3);
+        List<Candidate> ret = new ArrayList<>();
+        while (!best.isEmpty()) {
+            long packed = best.dequeueLong();
+            String name = names[(int) packed];
+            int distance = StringUtils.getLevenshteinDistance(lower, name.toLowerCase(Locale.ROOT), threshold);
+            if (distance != -1) {
+                ret.add(new Candidate(name, distance, (int) (packed >>> 32)));
+            }
+        }
+        ret.sort(Comparator.<Candidate>comparingInt(c -> c.distance).thenComparing(c -> -c.shared).thenComparing(c -> c.name));
+        List<String> suggestions = new ArrayList<>(Math.min(limit, ret.size()));
+        for (int i = 0; i < ret.size() && i < limit; i++) {
+            suggestions.add(ret.get(i).name);
+        }
+        return suggestions;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return A rough estimate of the heap retained by this index, not counting the names, which are shared with the
+     *         database.
+     */
+    public long estimateSize() {
+        long ret = names.length * 13L;
+        for (int[] list : postings.values()) {
+            ret += 16 + list.length * 4L + 24;
+        }
+        return ret;
+    }
+}
@@ -1,10 +1,11 @@
 package com.tterrag.k9.mappings;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.net.URI;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -14,45 +15,43 @@ import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.function.BiFunction;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
-import com.tterrag.k9.mappings.srg.SrgDownloader;
-import org.apache.commons.io.FileUtils;
-
-import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ListMultimap;
 import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
-import com.tterrag.k9.mappings.mcp.IntermediateMapping;
+import com.google.common.hash.HashingOutputStream;
 import com.tterrag.k9.mappings.mcp.McpDownloader;
 import com.tterrag.k9.mappings.mcp.McpMapping;
 import com.tterrag.k9.mappings.mcp.McpMapping.Side;
 import com.tterrag.k9.mappings.srg.SrgDatabase;
+import com.tterrag.k9.mappings.srg.SrgDownloader;
 import com.tterrag.k9.mappings.srg.SrgMapping;
 import com.tterrag.k9.mappings.yarn.YarnDownloader;
-import com.tterrag.k9.util.Monos;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import org.reactivestreams.Publisher;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpStatusClass;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.netty.NettyOutbound;
 import reactor.netty.http.client.HttpClient;
-import reactor.util.function.Tuple2;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.util.retry.Retry;
 
 @Slf4j
 public class Yarn2McpService {
@@ -64,6 +63,8 @@ public class Yarn2McpService {
     
     private static final String EOL = "\r\n";
     
+    private static final int UPLOAD_RETRIES = 3;
+    
     private static final String POM_TEMPLATE = 
             "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + EOL + 
             "<project xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\" xmlns=\"http://maven.apache.org/POM/4.0.0\"" + EOL + 
@@ -103,14 +104,13 @@ public class Yarn2McpService {
     
     public final String output;
     
-    private final String user, pass;
-    
-    private Path tempDir;
+    private final HttpClient client;
         
     public Yarn2McpService(String url, String user, String pass) {
         this.output = url + "/de/oceanlabs/mcp";
-        this.user = user;
-        this.pass = pass;
+        String md5login = Base64.getEncoder().encodeToString((user + ":" + pass).getBytes());
+        this.client = HttpClient.create()
+                .headers(h -> h.add("Authorization", "Basic " + md5login));
     }
     
     public Mono<Void> start() {
@@ -155,103 +155,159 @@ public class Yarn2McpService {
     
     private Mono<SrgDatabase> getSrgs(String version) {
         return SrgDownloader.INSTANCE.updateSrgs(version)
-                .then(Mono.fromCallable(() -> (SrgDatabase) new SrgDatabase(version).reload()));
-    }
-    
-    private Mono<Void> setupTempDir() {
-        return Mono.fromCallable(() -> {
-            if (tempDir != null) {
-                FileUtils.deleteDirectory(tempDir.toFile());
-            }
-            tempDir = Files.createTempDirectory("yarn2mcp");
-            return null;
-        });
+                .then(Mono.fromCallable(() -> SrgDownloader.INSTANCE.loadDatabase(version))
+                        .subscribeOn(Schedulers.boundedElastic()));
     }
     
     private Mono<Void> publishMixedMappings(String mcpVersion, String yarnVersion) {
+        // Each of these is loaded by the mapping cache on its own thread, so that they are built in parallel
         return Mono.zip(getSrgs(yarnVersion),
                         YarnDownloader.INSTANCE.getDatabase(yarnVersion),
                         McpDownloader.INSTANCE.getDatabase(mcpVersion))
                 .doOnNext($ -> log.info("Publishing mixed mappings for MC " + mcpVersion + "/" + yarnVersion))
-                .flatMap(srgs -> setupTempDir().thenReturn(srgs))
-                .as(Monos.groupWith(Flux.just(SUPPORTED_TYPES), (type, dbs) -> Mono.zip(
-                        findMatching(type, dbs.getT1(), dbs.getT2()),
-                        this.<SrgMapping, Mapping>findMatchingByIntermediate(type, dbs.getT1(), dbs.getT3()))))
-                .flatMap(gf -> gf
-                        .doOnNext(maps -> maps.getT1().forEach(maps.getT2()::putIfAbsent))
-                        .map(Tuple2::getT2)
-                        .flatMapIterable(Map::entrySet)
-                        .filter(e -> e.getKey().getName() != null || e.getValue().getName() != null)
-                        .map(e -> toCsv(e.getKey(), e.getValue()))
-                        .collectList()
-                        .flatMap(csv -> writeToFile(yarnVersion, false, gf.key(), csv, MIXED)))
-                .last()
-                .flatMap(p -> uploadFile(yarnVersion, false, MIXED, p))
+                // MCP names take priority, yarn fills in the rest
+                .flatMap(dbs -> export(yarnVersion, MIXED, dbs.getT1(), dbs.getT2(), dbs.getT3()))
+                .flatMap(zip -> uploadFile(yarnVersion, false, MIXED, zip)
+                        .doFinally($ -> zip.getFile().toFile().delete()))
                 .then();
     }
     
     private Mono<Void> publishMappings(String version, boolean stable) {
         return Mono.zip(getSrgs(version), YarnDownloader.INSTANCE.getDatabase(version))
                 .doOnNext($ -> log.info("Publishing yarn-over-mcp for MC " + version))
-                .flatMap(srgs -> setupTempDir().thenReturn(srgs))
-                .as(Monos.groupWith(Flux.just(SUPPORTED_TYPES), (type, t) -> findMatching(type, t.getT1(), t.getT2())))
-                .flatMap(gf -> gf.flatMapIterable(m -> m.entrySet())
-                        .filter(e -> e.getKey().getName() != null || e.getValue().getName() != null)
-                        .map(e -> toCsv(e.getKey(), e.getValue()))
-                        .collectList()
-                        .flatMap(csv -> writeToFile(version, stable, gf.key(), csv, YARN)))
-                .last()
-                .flatMap(p -> uploadFile(version, stable, YARN, p))
+                .flatMap(dbs -> export(version, YARN, dbs.getT1(), dbs.getT2(), null))
+                .flatMap(zip -> uploadFile(version, stable, YARN, zip)
+                        .doFinally($ -> zip.getFile().toFile().delete()))
                 .then();
     }
-
-    private <M extends IntermediateMapping> Comparator<M> bySrg() {
-        return Comparator.<M>comparingInt(m -> FastIntLookupDatabase.getSrgId(m.getIntermediate())
-                .orElse(Integer.MAX_VALUE))
-                .thenComparing(Mapping::getIntermediate);
+    
+    /**
+     * An exported file, with the digests that are published alongside it.
+     */
+    @Value
+    private static class Artifact {
+        Path file;
+        HashCode md5, sha1;
     }
     
-    private <M1 extends IntermediateMapping, M2 extends Mapping> Mono<SortedMap<M1, M2>> findMatchingByIntermediate(
-            MappingType type, AbstractMappingDatabase<? extends M1> a, AbstractMappingDatabase<? extends M2> b) {
-        return Mono.fromSupplier(() -> {
-            ListMultimap<String, ? extends M1> aBySrg = a.getTable(NameType.INTERMEDIATE, type);
-            ListMultimap<String, ? extends M2> bBySrg = b.getTable(NameType.INTERMEDIATE, type);
-            SortedMap<M1, M2> ret = new TreeMap<>(bySrg());
-            for (String key : aBySrg.keySet()) {
-                List<? extends M1> aMappings = aBySrg.get(key);
-                List<? extends M2> bMappings = bBySrg.get(key);
-                if (!aMappings.isEmpty() && !bMappings.isEmpty()) {
-                    ret.put(aMappings.get(0), bMappings.get(0));
+    /**
+     * Mappings of one type, sorted by SRG ID and then by intermediate name, so that two of these can be merged.
+     */
+    private static class SortedBySrg<M extends Mapping> {
+        
+        final List<M> mappings;
+        final int[] ids;
+        
+        SortedBySrg(Collection<? extends M> mappings) {
+            // Parse each ID once, rather than on every comparison
+            Object2IntMap<String> idCache = new Object2IntOpenHashMap<>(mappings.size());
+            for (M m : mappings) {
+                if (!idCache.containsKey(m.getIntermediate())) {
+                    idCache.put(m.getIntermediate(), FastIntLookupDatabase.getSrgId(m.getIntermediate()).orElse(Integer.MAX_VALUE));
                 }
             }
-            return ret;
-        });
+            this.mappings = new ArrayList<>(mappings);
+            this.mappings.sort(Comparator.<M>comparingInt(m -> idCache.getInt(m.getIntermediate())).thenComparing(Mapping::getIntermediate));
+            this.ids = new int[this.mappings.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = idCache.getInt(this.mappings.get(i).getIntermediate());
+            }
+        }
+        
+        int compare(int i, SortedBySrg<?> other, int j) {
+            int ret = Integer.compare(ids[i], other.ids[j]);
+            return ret != 0 ? ret : mappings.get(i).getIntermediate().compareTo(other.mappings.get(j).getIntermediate());
+        }
     }
-
-    private <M1 extends IntermediateMapping, M2 extends Mapping> Mono<SortedMap<M1, M2>> findMatching(
-            MappingType type, AbstractMappingDatabase<M1> mcp, AbstractMappingDatabase<M2> yarn) {
-        return Mono.defer(() -> {
-            Map<String, M1> mcpBySignature = bySignature(mcp.getTable(NameType.ORIGINAL, type));
-            Map<String, M2> yarnBySignature = bySignature(yarn.getTable(NameType.ORIGINAL, type));
-            return Flux.fromIterable(mcpBySignature.entrySet())
-                    .filter(e -> yarnBySignature.containsKey(e.getKey()))
-                    .collectMap(Map.Entry::getValue, e -> yarnBySignature.get(e.getKey()), () -> new TreeMap<M1, M2>(bySrg()))
-                    .map(m -> (SortedMap<M1, M2>) m); // wtf reactor?
-        });
+    
+    /**
+     * Write a CSV of names for each supported type straight into a new zip, one row per SRG name, in SRG order.
+     * <p>
+     * Each SRG mapping takes its name from the MCP mapping with the same SRG name if there is one, which is found by
+     * merging both sorted by SRG name. Otherwise it takes its name from the yarn mapping of the same obfuscated member.
+     *
+     * @return The temporary zip file and its digests, which are computed as it is written. The file is to be deleted
+     *         once uploaded.
+     */
+    @SuppressWarnings("deprecation")
+    private Mono<Artifact> export(String version, String name, SrgDatabase srgs, AbstractMappingDatabase<? extends Mapping> yarn,
+            @Nullable AbstractMappingDatabase<? extends Mapping> mcp) {
+        return Mono.fromCallable(() -> {
+            Path tmp = Files.createTempFile("yarn2mcp-" + version + "-" + name + "-", ".zip");
+            HashingOutputStream sha1 = new HashingOutputStream(Hashing.sha1(), new BufferedOutputStream(Files.newOutputStream(tmp)));
+            HashingOutputStream md5 = new HashingOutputStream(Hashing.md5(), sha1);
+            try (ZipOutputStream zip = new ZipOutputStream(md5);
+                    Writer out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8))) {
+                for (MappingType type : SUPPORTED_TYPES) {
+                    log.info("Writing yarn-to-mcp data for " + version + " [" + type + "] to temp file");
+                    SortedBySrg<SrgMapping> from = new SortedBySrg<>(srgs.lookup(NameType.ORIGINAL, type));
+                    // Not all yarn versions have field descriptors, and SRG never does
+                    ConversionIndex<? extends Mapping> byOriginal = ConversionIndex.of(yarn.lookup(NameType.ORIGINAL, type), false);
+                    SortedBySrg<Mapping> byIntermediate = mcp == null ? null : new SortedBySrg<>(mcp.lookup(NameType.INTERMEDIATE, type));
+                    
+                    zip.putNextEntry(new ZipEntry(type.getCsvName() + ".csv"));
+                    out.write("searge,name,side,desc");
+                    writeRows(out, from, byOriginal, byIntermediate);
+                    out.flush();
+                    zip.closeEntry();
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-rw-r--"));
+            }
+            return new Artifact(tmp, md5.hash(), sha1.hash());
+        }).subscribeOn(Schedulers.boundedElastic());
     }
     
-    private <M1 extends Mapping, M2 extends Mapping> String toCsv(M1 m1, M2 m2) {
+    private void writeRows(Writer out, SortedBySrg<SrgMapping> from, ConversionIndex<? extends Mapping> byOriginal, @Nullable SortedBySrg<Mapping> byIntermediate) throws IOException {
+        int j = 0;
+        int end;
+        for (int i = 0; i < from.mappings.size(); i = end) {
+            String intermediate = from.mappings.get(i).getIntermediate();
+            end = i + 1;
+            while (end < from.mappings.size() && from.mappings.get(end).getIntermediate().equals(intermediate)) {
+                end++;
+            }
+            
+            SrgMapping source = from.mappings.get(i);
+            Mapping target = null;
+            if (byIntermediate != null) {
+                while (j < byIntermediate.mappings.size() && from.compare(i, byIntermediate, j) > 0) {
+                    j++;
+                }
+                if (j < byIntermediate.mappings.size() && from.compare(i, byIntermediate, j) == 0) {
+                    target = byIntermediate.mappings.get(j);
+                }
+            }
+            // Any mapping with this SRG name will do, usually there is only one, otherwise they are overrides
+            for (int k = i; target == null && k < end; k++) {
+                target = byOriginal.convert(from.mappings.get(k)).orElse(null);
+                source = from.mappings.get(k);
+            }
+            if (target != null && (source.getName() != null || target.getName() != null)) {
+                out.write(EOL);
+                writeCsv(out, source, target);
+            }
+        }
+    }
+    
+    private void writeCsv(Writer out, Mapping m1, Mapping m2) throws IOException {
         String name = m2.getName();
         if (name == null) {
             name = m1.getName();
         } else {
             name = CORRECTIONS.getOrDefault(m1.getIntermediate(), name);
         }
-        return Joiner.on(',').join(
-                m1.getIntermediate(),
-                name,
-                m1 instanceof McpMapping ? ((McpMapping)m1).getSide().ordinal() : Side.BOTH.ordinal(),
-                Strings.nullToEmpty(m2.getName() != null ? getComment(m2) : getComment(m1)));
+        out.write(m1.getIntermediate());
+        out.write(',');
+        out.write(String.valueOf(name));
+        out.write(',');
+        out.write(Integer.toString(m1 instanceof McpMapping ? ((McpMapping)m1).getSide().ordinal() : Side.BOTH.ordinal()));
+        out.write(',');
+        out.write(Strings.nullToEmpty(m2.getName() != null ? getComment(m2) : getComment(m1)));
     }
     
     private String getComment(Mapping m) {
@@ -271,25 +327,7 @@ public class Yarn2McpService {
                 + "/" + channel + "-" + snapshot + ".zip";
     }
     
-    private Mono<Path> writeToFile(String version, boolean stable, MappingType type, List<String> csv, String name) {
-        return Mono.fromCallable(() -> {
-            log.info("Writing yarn-to-mcp data for " + version + " [" + type + "] to temp file");
-            Map<String, String> env = new HashMap<>(); 
-            env.put("create", "true");
-            Path tmp = tempDir.resolve(version + "-" + name + ".zip");
-            URI uri = URI.create("jar:" + tmp.toUri());
-            String text = "searge,name,side,desc" + EOL + csv.stream().collect(Collectors.joining(EOL));
-            try (FileSystem fs = FileSystems.newFileSystem(uri, env)) {
-                writeToFile(fs.getPath(type.getCsvName() + ".csv"), text);
-            }
-            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
-                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-rw-r--"));
-            }
-            return tmp;
-        });
-    }
-    
-    private Mono<Void> uploadFile(String version, boolean stable, String name, Path file) {
+    private Mono<Void> uploadFile(String version, boolean stable, String name, Artifact zip) {
         return Mono.defer(() -> {
             String zipURL = getOutputURL(version, stable, name);
 
@@ -297,69 +335,53 @@ public class Yarn2McpService {
             String filename = pomURL.substring(pomURL.lastIndexOf('/') + 1).replace(".pom", "");
             int split = filename.indexOf('-');
             Object[] args = { filename.substring(0, split), filename.substring(split + 1) };
-            String pomText = String.format(POM_TEMPLATE, args);
+            byte[] pom = String.format(POM_TEMPLATE, args).getBytes(StandardCharsets.UTF_8);
 
+            // The zip goes last, as its presence is what marks a version as published
             return Mono.fromRunnable(() -> log.info("Uploading yarn-to-mcp data to " + zipURL))
-                    .then(writeFile(zipURL, file))
-                    .then(Mono.fromCallable(() -> Files.readAllBytes(file))
-                            .flatMap(b -> writeHashes(zipURL, b)))
-                    .then(writeText(pomURL, pomText))
-                    .then(writeHashes(pomURL, pomText.getBytes(StandardCharsets.UTF_8)));
+                    .then(Mono.when(
+                            writeHashes(zipURL, zip.getMd5(), zip.getSha1()),
+                            writeData(pomURL, pom),
+                            writeHashes(pomURL, md5(pom), sha1(pom))))
+                    .then(writeFile(zipURL, zip.getFile()));
         });
     }
     
-    private void writeToFile(Path path, String text) throws IOException {
-        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-            writer.write(text);
-        }
+    @SuppressWarnings("deprecation")
+    private static HashCode md5(byte[] data) {
+        return Hashing.md5().hashBytes(data);
+    }
+    
+    @SuppressWarnings("deprecation")
+    private static HashCode sha1(byte[] data) {
+        return Hashing.sha1().hashBytes(data);
     }
     
     private Mono<Void> writeFile(String url, Path file) {
-        return writeData(url, Mono.fromCallable(() -> Files.readAllBytes(file)).map(Unpooled::wrappedBuffer));
+        // Streamed from disk, in chunks if the connection cannot transfer the file directly
+        return write(url, (req, out) -> out.sendFile(file));
     }
     
-    private Mono<Void> writeText(String url, String text) {
-        return writeData(url, Mono.just(text).map(s -> s.getBytes(StandardCharsets.UTF_8)).map(Unpooled::wrappedBuffer));
+    private Mono<Void> writeData(String url, byte[] data) {
+        return write(url, (req, out) -> out.sendByteArray(Mono.just(data)));
     }
     
-    private Mono<Void> writeData(String url, Mono<ByteBuf> data) {
-        String md5login = Base64.getEncoder().encodeToString((user + ":" + pass).getBytes());
-        
-        return HttpClient.create()
-            .wiretap(true)
-            .headers(h -> h.add("Authorization", "Basic " + md5login))
+    private Mono<Void> writeHashes(String url, HashCode md5, HashCode sha1) {
+        return Mono.when(
+                writeData(url + ".md5", md5.toString().getBytes(StandardCharsets.US_ASCII)),
+                writeData(url + ".sha1", sha1.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+    
+    private Mono<Void> write(String url, BiFunction<? super HttpClientRequest, ? super NettyOutbound, ? extends Publisher<Void>> body) {
+        return client
             .put()
             .uri(url)
-            .send(data)
+            .send(body)
             .responseSingle((resp, buf) -> resp.status().codeClass() != HttpStatusClass.SUCCESS
-                    ? buf.asString().flatMap(err -> Mono.error(new IllegalStateException("Unexpected error publishing yarn2mcp artifacts to " + url + ": " + err)))
+                    ? buf.asString().defaultIfEmpty("").flatMap(err -> Mono.error(new IllegalStateException("Unexpected error publishing yarn2mcp artifacts to " + url + ": " + resp.status() + " " + err)))
                     : Mono.empty())
-            .then();
-    }
-    
-    @SuppressWarnings("deprecation")
-    private Mono<Void> writeHashes(String url, byte[] toHash) {
-        return writeHash(url + ".md5", toHash, Hashing.md5())
-         .then(writeHash(url + ".sha1", toHash, Hashing.sha1()));
-    }
-    
-    private Mono<Void> writeHash(String url, byte[] text, HashFunction hasher) {
-        return writeData(url, Mono.just(hasher)
-                .map(m -> m.hashBytes(text))
-                .map(HashCode::asBytes)
-                .map(Unpooled::wrappedBuffer));
-    }
-    
-    private String getSignature(Mapping mapping) {
-        StringBuilder ret = new StringBuilder(mapping.getOwner(NameType.ORIGINAL)).append(".").append(mapping.getOriginal());
-        if (mapping.getType() == MappingType.METHOD) {
-            ret.append(mapping.getDesc(NameType.ORIGINAL));
-        }
-        return ret.toString();
-    }
-    
-    private <T extends Mapping> Map<String, T> bySignature(ListMultimap<String, T> table) {
-        return table.values().stream()
-                .collect(Collectors.toMap(this::getSignature, Function.identity()));
+            .then()
+            .retryWhen(Retry.backoff(UPLOAD_RETRIES, Duration.ofSeconds(2))
+                    .doBeforeRetry(r -> log.warn("Retrying upload to " + url + " after error: " + r.failure())));
     }
 }
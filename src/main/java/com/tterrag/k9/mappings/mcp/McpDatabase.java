@@ -2,40 +2,48 @@ package com.tterrag.k9.mappings.mcp;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import java.util.zip.ZipFile;
 
 import com.tterrag.k9.mappings.srg.SrgDatabase;
+import com.tterrag.k9.mappings.srg.SrgDownloader;
 import com.tterrag.k9.mappings.srg.SrgMapping;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
-import com.tterrag.k9.mappings.AbstractMappingDatabase;
+import com.google.common.base.Strings;
+import com.tterrag.k9.mappings.FastIntLookupDatabase;
+import com.tterrag.k9.mappings.LineTokenizer;
 import com.tterrag.k9.mappings.Mapping;
 import com.tterrag.k9.mappings.MappingDatabase;
+import com.tterrag.k9.mappings.MappingHttp;
+import com.tterrag.k9.mappings.MappingSnapshot;
+import com.tterrag.k9.mappings.SnapshotDatabase;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
 import com.tterrag.k9.mappings.NoSuchVersionException;
 import com.tterrag.k9.mappings.ParamMapping;
+import com.tterrag.k9.mappings.ParserPool;
 import com.tterrag.k9.mappings.mcp.McpMapping.Side;
-import com.tterrag.k9.util.NullHelper;
 import com.tterrag.k9.util.Patterns;
-import com.tterrag.k9.util.annotation.NonNull;
 import com.tterrag.k9.util.annotation.Nullable;
 
 import clojure.asm.Type;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
@@ -43,7 +51,7 @@ import lombok.experimental.Delegate;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class McpDatabase extends OverrideRemovingDatabase<McpMapping> {
+public class McpDatabase extends OverrideRemovingDatabase<McpMapping> implements SnapshotDatabase<McpMapping> {
     
     @RequiredArgsConstructor
     public static class McpParamMapping implements McpMapping, ParamMapping {
@@ -76,27 +84,45 @@ public class McpDatabase extends OverrideRemovingDatabase<McpMapping> {
         }
         
         public static Type findType(IntermediateMapping method, int param) {
-            if (!method.isStatic()) {
-                if (param == 0) {
-                    log.error("Cannot use param 0 for non-static method: " + method + "  param: " + param);
-                    return Type.LONG_TYPE;
-                }
-                param--; // "this" counts as param 0 
-            }
-            String desc = method.getDesc(NameType.ORIGINAL);
-            List<Type> args = Lists.newArrayList(Type.getArgumentTypes(desc));
-            // double and long count twice....because java
-            for (int i = 0; i < args.size(); i++) {
-                Type type = args.get(i);
-                if (type.getSort() == Type.DOUBLE || type.getSort() == Type.LONG) {
-                    args.add(i++, type); // duplicate this parameter for easy lookup
-                }
+            return findType(method, getParamSlots(method), param);
+        }
+        
+        /**
+         * @param slots
+         *            The {@link #getParamSlots(IntermediateMapping) param slots} of the method.
+         */
+        public static Type findType(IntermediateMapping method, Type[] slots, int param) {
+            if (!method.isStatic() && param == 0) {
+                log.error("Cannot use param 0 for non-static method: " + method + "  param: " + param);
+                return Type.LONG_TYPE;
             }
-            if (param >= args.size()) {
+            if (param >= slots.length) {
                 log.error("Could not find type name. Method: " + method + "  param: " + param);
                 return Type.BOOLEAN_TYPE;
             }
-            return args.get(param);
+            return slots[param];
+        }
+        
+        /**
+         * @return The type of each param of the method, by param ID. "this" counts as param 0 of non-static methods,
+         *         and doubles and longs count twice....because java, so those IDs are left null or duplicated.
+         */
+        public static Type[] getParamSlots(IntermediateMapping method) {
+            Type[] args = Type.getArgumentTypes(method.getDesc(NameType.ORIGINAL));
+            int slot = method.isStatic() ? 0 : 1;
+            int size = slot;
+            for (Type arg : args) {
+                size += arg.getSize();
+            }
+            Type[] ret = new Type[size];
+            for (Type arg : args) {
+                ret[slot] = arg;
+                if (arg.getSize() == 2) {
+                    ret[slot + 1] = arg;
+                }
+                slot += arg.getSize();
+            }
+            return ret;
         }
         
         @Override
@@ -140,84 +166,172 @@ public class McpDatabase extends OverrideRemovingDatabase<McpMapping> {
         Side side;
     }
     
+    /**
+     * The names from one CSV, by SRG ID.
+     */
+    private static class CsvTable {
+        
+        final List<CsvMapping> mappings;
+        
+        private final Int2ObjectMap<CsvMapping> byId;
+        
+        /**
+         * Names without an ID, or whose ID is already taken by a different name. Practically always empty.
+         */
+        private final Map<String, CsvMapping> others = new HashMap<>();
+        
+        CsvTable(List<CsvMapping> mappings) {
+            this.mappings = mappings;
+            this.byId = new Int2ObjectOpenHashMap<>(mappings.size());
+            for (CsvMapping csv : mappings) {
+                int id = FastIntLookupDatabase.parseSrgId(csv.getIntermediate());
+                CsvMapping existing = id < 0 ? null : byId.putIfAbsent(id, csv);
+                // The first row for each name wins
+                if (id < 0 || (existing != null && !existing.getIntermediate().equals(csv.getIntermediate()))) {
+                    others.putIfAbsent(csv.getIntermediate(), csv);
+                }
+            }
+        }
+        
+        @Nullable CsvMapping get(String intermediate) {
+            int id = FastIntLookupDatabase.parseSrgId(intermediate);
+            CsvMapping ret = id < 0 ? null : byId.get(id);
+            if (ret != null && ret.getIntermediate().equals(intermediate)) {
+                return ret;
+            }
+            return others.isEmpty() ? null : others.get(intermediate);
+        }
+    }
+    
+    private static final int FLAG_STATIC = 1;
+    private static final int SIDE_SHIFT = 1;
+    
     public McpDatabase(String mcver) throws NoSuchVersionException {
         super(mcver);
     }
-
-    private final SrgDatabase srgs = new SrgDatabase(getMinecraftVersion());
+    
+    private @Nullable File getMappingsZip() {
+        File folder = McpDownloader.INSTANCE.getDataFolder().resolve(Paths.get(getMinecraftVersion(), "mappings")).toFile();
+        File[] contents = folder.listFiles(f -> !MappingHttp.isPartial(f));
+        return contents == null || contents.length == 0 ? null : contents[0];
+    }
+    
+    @Override
+    public List<Path> getSourceFiles() {
+        File srgZip = SrgDatabase.getSrgZip(getMinecraftVersion());
+        File mappingsZip = getMappingsZip();
+        if (srgZip == null || mappingsZip == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(srgZip.toPath(), mappingsZip.toPath());
+    }
+    
+    @Override
+    public MappingSnapshot.Entry toSnapshot(McpMapping mapping, ToIntFunction<Mapping> indexOf) {
+        int flags = (mapping.isStatic() ? FLAG_STATIC : 0) | mapping.getSide().ordinal() << SIDE_SHIFT;
+        if (mapping instanceof McpParamMapping) {
+            McpParamMapping param = (McpParamMapping) mapping;
+            return MappingSnapshot.Entry.child(MappingType.PARAM, indexOf.applyAsInt(param.method), flags, param.getIndex(),
+                    param.getIntermediate(), param.getName(), param.getComment());
+        }
+        McpMapping.Impl impl = (McpMapping.Impl) mapping;
+        return MappingSnapshot.Entry.of(impl.getType(), flags,
+                impl.getOriginal(), impl.getIntermediate(), impl.getName(), impl.getRawDesc(), impl.getRawOwner(), impl.getComment());
+    }
+    
+    @Override
+    public McpMapping fromSnapshot(MappingSnapshot.Entry entry, IntFunction<McpMapping> byIndex) {
+        Side side = Side.values()[entry.getFlags() >> SIDE_SHIFT];
+        if (entry.hasParent()) {
+            String comment = Strings.nullToEmpty(entry.get(2));
+            CsvMapping csv = new CsvMapping(MappingType.PARAM, entry.get(0), entry.get(1), comment, side);
+            return new McpParamMapping(byIndex.apply(entry.getParent()), csv, entry.getIndex(), comment, side);
+        }
+        return new McpMapping.Impl(this, entry.getType(), entry.get(0), entry.get(1), entry.get(2), entry.get(3), entry.get(4),
+                entry.hasFlag(FLAG_STATIC), entry.get(5), side);
+    }
 
     @Override
     protected List<McpMapping> parseMappings() throws NoSuchVersionException, IOException {
-        srgs.reload();
-        
-        File folder = McpDownloader.INSTANCE.getDataFolder().resolve(Paths.get(getMinecraftVersion(), "mappings")).toFile();
-        if (!folder.exists()) {
+        File zip = getMappingsZip();
+        if (zip == null) {
             throw new NoSuchVersionException("mcp", getMinecraftVersion());
         }
-        File zip = folder.listFiles()[0];
-        ZipFile zipfile = new ZipFile(zip);
-
-        try {
-            MappingDatabase<CsvMapping> tempDb = new AbstractMappingDatabase<CsvMapping>(getMinecraftVersion()) {
-                
-                @Override
-                protected List<CsvMapping> parseMappings() throws NoSuchVersionException, IOException {
-                    return NullHelper.notnullJ(Arrays.stream(MappingType.values())
-                                 .filter(type -> type.getCsvName() != null)
-                                 .flatMap(type -> {
-                                    List<String> lines;
-                                    try {
-                                        lines = IOUtils.readLines(zipfile.getInputStream(zipfile.getEntry(type.getCsvName() + ".csv")), Charsets.UTF_8);
-                                    } catch (IOException e) {
-                                        throw new RuntimeException(e);
-                                    }
-                
-                                    lines.remove(0); // Remove header line
-                
-                                    return lines.stream()
-                                                .map(line -> {
-                                                    String[] info = line.split(",", -1);
-                                                    String comment = info.length > 3 ? Joiner.on(',').join(ArrayUtils.subarray(info, 3, info.length)) : "";
-                                                    return new CsvMapping(type, info[0], info[1], comment, Side.values()[Integer.valueOf(info[2])]);
-                                                });
-                                })
-                                .collect(Collectors.toList()), "Stream#collect");
+        // The srgs are only needed once the CSVs are read, so load them alongside
+        // These are shared with every other database built from the same srgs
+        String mcver = getMinecraftVersion();
+        ForkJoinTask<SrgDatabase> srgLoad = ParserPool.fork("mcp/srg", () -> SrgDownloader.INSTANCE.loadDatabase(mcver));
+        
+        try (ZipFile zipfile = new ZipFile(zip)) {
+            Map<MappingType, ForkJoinTask<CsvTable>> csvLoads = new EnumMap<>(MappingType.class);
+            for (MappingType type : MappingType.values()) {
+                if (type.getCsvName() != null) {
+                    csvLoads.put(type, ParserPool.fork("mcp/" + type.getCsvName(), () -> new CsvTable(parseCsv(zipfile, type))));
                 }
-            };
-            tempDb.reload();
+            }
+            Map<MappingType, CsvTable> csvs = new EnumMap<>(MappingType.class);
+            for (Map.Entry<MappingType, ForkJoinTask<CsvTable>> e : csvLoads.entrySet()) {
+                csvs.put(e.getKey(), ParserPool.join(e.getValue()));
+            }
+            SrgDatabase srgs = ParserPool.join(srgLoad);
 
             // Add all srg mappings to this, if unmapped just use null/defaults
             for (MappingType type : MappingType.values()) {
-                Collection<SrgMapping> byType = srgs.lookup(NameType.INTERMEDIATE, type);
-                for (SrgMapping srg : byType) {
-                    McpMapping mapping;
-                    Optional<@NonNull CsvMapping> csv = tempDb.lookup(NameType.INTERMEDIATE, type, srg.getIntermediate()).stream().sorted(Comparator.comparingInt(m -> m.getIntermediate().length())).findFirst();
-                    mapping = new McpMapping.Impl(this, type, srg.getOriginal(), srg.getIntermediate(), csv.map(CsvMapping::getName).orElse(null), srg.getDesc(), srg.getOwner(), srg.isStatic(), csv.map(CsvMapping::getComment).orElse(""), csv.map(CsvMapping::getSide).orElse(Side.BOTH));
-                    addMapping(mapping);
+                CsvTable table = csvs.get(type);
+                for (SrgMapping srg : srgs.lookup(NameType.INTERMEDIATE, type)) {
+                    CsvMapping csv = table == null ? null : table.get(srg.getIntermediate());
+                    addMapping(new McpMapping.Impl(this, type, srg.getOriginal(), srg.getIntermediate(),
+                            csv == null ? null : csv.getName(), srg.getDesc(), srg.getOwner(), srg.isStatic(),
+                            csv == null ? "" : csv.getComment(), csv == null ? Side.BOTH : csv.getSide()));
                 }
             }
             
-            // Params are not part of srgs, so add them after the fact using the merged data as a source
-            for (CsvMapping csv : tempDb.lookup(NameType.INTERMEDIATE, MappingType.PARAM)) {
-                Matcher m = Patterns.SRG_PARAM.matcher(csv.getIntermediate());
-                if (m.matches()) {
-                    lookup(NameType.INTERMEDIATE, MappingType.METHOD, m.replaceAll("$1")).stream().findFirst().ifPresent(method -> {
-                        m.reset();
-                        m.matches();
-                        addMapping(new McpParamMapping(method, csv, Integer.parseInt(m.group(2)), csv.getComment(), csv.getSide()));
-                    });
+            // Params are not part of srgs, so add them after the fact, joined to the methods that made it in by ID
+            Int2ObjectMap<McpMapping> methods = new Int2ObjectOpenHashMap<>();
+            for (McpMapping method : lookup(NameType.INTERMEDIATE, MappingType.METHOD)) {
+                int id = FastIntLookupDatabase.parseSrgId(method.getIntermediate());
+                if (id >= 0) {
+                    methods.putIfAbsent(id, method);
+                }
+            }
+            Int2ObjectMap<Type[]> paramSlots = new Int2ObjectOpenHashMap<>();
+            Matcher m = Patterns.SRG_PARAM.matcher("");
+            for (CsvMapping csv : csvs.get(MappingType.PARAM).mappings) {
+                if (m.reset(csv.getIntermediate()).matches()) {
+                    int methodId = Integer.parseInt(m.group(1));
+                    McpMapping method = methods.get(methodId);
+                    if (method != null) {
+                        Type[] slots = paramSlots.get(methodId);
+                        if (slots == null) {
+                            slots = McpParamMapping.getParamSlots(method);
+                            paramSlots.put(methodId, slots);
+                        }
+                        int param = Integer.parseInt(m.group(2));
+                        addMapping(new McpParamMapping(method, csv, McpParamMapping.findType(method, slots, param), csv.getComment(), csv.getSide(), param));
+                    }
                 } else {
                     addMapping(new McpMapping.Impl(this, MappingType.PARAM, csv.getOriginal(), csv.getIntermediate(), csv.getName(), null, null, csv.isStatic(), csv.getComment(), csv.getSide()));
                 }
             }
-            
-        } finally {
-            zipfile.close();
         }
         
         return Collections.emptyList(); // We must add the mappings as we go so that params can find methods, so this return is not needed
     }
     
+    private static List<CsvMapping> parseCsv(ZipFile zipfile, MappingType type) throws IOException {
+        List<CsvMapping> ret = new ArrayList<>();
+        try (LineTokenizer line = new LineTokenizer(zipfile.getInputStream(zipfile.getEntry(type.getCsvName() + ".csv")))) {
+            line.next(); // Skip header line
+            while (line.next()) {
+                int fields = line.split(',');
+                // Comments may contain commas, so take the rest of the line as-is
+                String comment = fields > 3 ? line.intern(line.start(3), line.length()) : "";
+                ret.add(new CsvMapping(type, line.intern(0), line.intern(1), comment, Side.values()[line.fieldInt(2)]));
+            }
+        }
+        return ret;
+    }
+    
     private boolean matches(McpMapping m, String lookup) {
         String[] byUnderscores = m.getIntermediate().split("_");
         if (byUnderscores.length > 1 && byUnderscores[1].equals(lookup)) {
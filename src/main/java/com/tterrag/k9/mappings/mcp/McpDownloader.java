@@ -2,7 +2,6 @@ package com.tterrag.k9.mappings.mcp;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Map;
@@ -10,7 +9,6 @@ import java.util.Set;
 import java.util.regex.Matcher;
 
 import com.tterrag.k9.mappings.srg.SrgDownloader;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import com.google.common.base.Charsets;
@@ -20,6 +18,7 @@ import com.google.common.reflect.TypeToken;
 import com.google.gson.GsonBuilder;
 import com.tterrag.k9.mappings.DeserializeIntArrayList;
 import com.tterrag.k9.mappings.MappingDownloader;
+import com.tterrag.k9.mappings.MappingHttp;
 import com.tterrag.k9.mappings.mcp.McpVersionJson.McpMappingsJson;
 import com.tterrag.k9.util.Monos;
 import com.tterrag.k9.util.Patterns;
@@ -27,7 +26,6 @@ import com.tterrag.k9.util.annotation.Nullable;
 
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
 
 @Slf4j
 public class McpDownloader extends MappingDownloader<McpMapping, McpDatabase> {
@@ -43,6 +41,7 @@ public class McpDownloader extends MappingDownloader<McpMapping, McpDatabase> {
     
     private McpDownloader() {
         super("mcp", McpDatabase::new, 1);
+        SrgDownloader.INSTANCE.addDependent(this);
     }
 
     @Nullable
@@ -65,11 +64,8 @@ public class McpDownloader extends MappingDownloader<McpMapping, McpDatabase> {
     }
     
     private Mono<McpVersionJson> getVersions(String url) {
-        return HttpClient.create()
-            .get()
-            .uri(url)
-            .responseSingle(($, content) -> content.asString()
-                    .map(s -> new McpVersionJson(getGson().fromJson(s, new TypeToken<Map<String, McpMappingsJson>>(){}.getType()))));
+        return getHttp().getString(url)
+                .map(s -> new McpVersionJson(getGson().fromJson(s, new TypeToken<Map<String, McpMappingsJson>>(){}.getType())));
     }
     
     @Override
@@ -104,30 +100,33 @@ public class McpDownloader extends MappingDownloader<McpMapping, McpDatabase> {
                 int mappingsVersion = mappings.latestStable() < 0 ? mappings.latestSnapshot() : mappings.latestStable();
                 String mappingsChannel = mappings.latestStable() < 0 ? "mcp_snapshot" : "mcp_stable";
                 String mappingsUrl = String.format(getMinVersion(version) == 16 ? TEMP_MAPPINGS_URL : MAPPINGS_URL, mappingsChannel, mappingsVersion, version);
-                URL url = new URL(mappingsUrl);
     
                 if (!mappingsFolder.exists()) {
                     mappingsFolder.mkdirs();
                 }
                 
-                File[] folderContents = mappingsFolder.listFiles();
-                if (folderContents != null && folderContents.length > 0) {
-                    int currentVersion = getCurrentVersion(folderContents[0]);
+                File[] folderContents = mappingsFolder.listFiles(f -> !MappingHttp.isPartial(f));
+                File outdated = folderContents != null && folderContents.length > 0 ? folderContents[0] : null;
+                if (outdated != null) {
+                    int currentVersion = getCurrentVersion(outdated);
                     if (currentVersion == mappingsVersion) {
                         log.debug("MCP MC {} mappings up to date: {} == {}", version, mappingsVersion, currentVersion);
-                        return null;
-                    } else {
-                        folderContents[0].delete();
+                        return Mono.<Void>empty();
                     }
                 }
                 
                 log.info("Found out of date or missing MCP mappings for MC {}. New version: {}", version, mappingsVersion);
                 String filename = mappingsUrl.substring(mappingsUrl.lastIndexOf('/') + 1);
-                FileUtils.copyURLToFile(url, mappingsFolder.toPath().resolve(filename).toFile());
-                remove(version);
-                
-                return null;
-            }));
+                // Keep the old mappings until the new ones are fully downloaded
+                return getHttp().downloadVerified(mappingsUrl, mappingsFolder.toPath().resolve(filename))
+                        .doOnNext($ -> {
+                            if (outdated != null) {
+                                outdated.delete();
+                            }
+                            refresh(version);
+                        })
+                        .then();
+            }).flatMap(m -> m));
     }
 
     private int getCurrentVersion(File zipFile) throws IOException {
@@ -1,19 +1,16 @@
 package com.tterrag.k9.mappings.mcp;
 
-import java.util.EnumMap;
-import java.util.Map;
-
 import com.google.common.base.Strings;
 import com.tterrag.k9.mappings.CommentedMapping;
 import com.tterrag.k9.mappings.Mapping;
 import com.tterrag.k9.mappings.MappingDatabase;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
+import com.tterrag.k9.mappings.NameTypeCache;
 import com.tterrag.k9.mappings.SignatureHelper;
 import com.tterrag.k9.util.annotation.NonNull;
 import com.tterrag.k9.util.annotation.Nullable;
 
-import clojure.asm.Type;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.Value;
@@ -101,7 +98,21 @@ public interface McpMapping extends IntermediateMapping, CommentedMapping {
         Side side;
         
         @ToString.Exclude
-        transient Map<NameType, String> mappedOwner = new EnumMap<>(NameType.class), mappedDesc = new EnumMap<>(NameType.class);
+        transient NameTypeCache mappedOwner = new NameTypeCache(), mappedDesc = new NameTypeCache();
+        
+        /**
+         * @return The owner as given at construction, before any remapping.
+         */
+        @Nullable String getRawOwner() {
+            return owner;
+        }
+        
+        /**
+         * @return The descriptor as given at construction, before any remapping.
+         */
+        @Nullable String getRawDesc() {
+            return desc;
+        }
         
         @Override
         public @Nullable String getOwner() {
@@ -110,11 +121,7 @@ public interface McpMapping extends IntermediateMapping, CommentedMapping {
         
         @Override
         public @Nullable String getOwner(NameType name) {
-            return mappedOwner.computeIfAbsent(name, t -> owner == null ? null : sigHelper.mapType(t, owner, this, db).getInternalName());
-        }
-        
-        private String mapType(NameType t, String type) {
-            return sigHelper.mapType(t, Type.getType(type), this, db).getDescriptor();
+            return mappedOwner.computeIfAbsent(name, t -> owner == null ? null : sigHelper.mapClass(t, owner, db));
         }
         
         @Override
@@ -124,7 +131,7 @@ public interface McpMapping extends IntermediateMapping, CommentedMapping {
         
         @Override
         public @Nullable String getDesc(NameType name) {
-            return mappedDesc.computeIfAbsent(name, t -> desc == null ? null : desc.contains("(") ? sigHelper.mapSignature(t, desc, this, db) : mapType(t, desc));
+            return mappedDesc.computeIfAbsent(name, t -> desc == null ? null : sigHelper.mapDescriptor(t, desc, db));
         }
     }
 }
@@ -2,9 +2,9 @@ package com.tterrag.k9.mappings.mcp;
 
 import java.util.Optional;
 
-import com.google.common.collect.Multimap;
 import com.tterrag.k9.mappings.FastIntLookupDatabase;
 import com.tterrag.k9.mappings.Mapping;
+import com.tterrag.k9.mappings.MappingTable;
 import com.tterrag.k9.mappings.NameType;
 
 public abstract class OverrideRemovingDatabase<T extends Mapping> extends FastIntLookupDatabase<T> {
@@ -15,7 +15,7 @@ public abstract class OverrideRemovingDatabase<T extends Mapping> extends FastIn
 
     @Override
     protected boolean addMapping(T mapping) {
-        Multimap<String, T> table = getTable(NameType.INTERMEDIATE, mapping.getType());
+        MappingTable<T> table = getTable(NameType.INTERMEDIATE, mapping.getType());
         String name = mapping.getName();
         String key = mapping.getIntermediate();
         
@@ -1,6 +1,7 @@
 package com.tterrag.k9.mappings.official;
 
 import com.google.gson.Gson;
+import com.tterrag.k9.mappings.MappingHttp;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -8,7 +9,6 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
 
 import java.net.URL;
 import java.util.Arrays;
@@ -47,12 +47,9 @@ public class ManifestJson {
             return "snapshot".equals(type);
         }
 
-        public Mono<VersionJson> getJson(Gson gson) {
-            return HttpClient.create()
-                    .get()
-                    .uri(url.toString())
-                    .responseSingle(($, content) -> content.asString()
-                            .map(s -> gson.fromJson(s, VersionJson.class)));
+        public Mono<VersionJson> getJson(MappingHttp http, Gson gson) {
+            return http.getString(url.toString())
+                    .map(s -> gson.fromJson(s, VersionJson.class));
         }
     }
 
@@ -1,5 +1,6 @@
 package com.tterrag.k9.mappings.official;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -10,95 +11,218 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 import com.beust.jcommander.internal.Lists;
 import com.tterrag.k9.mappings.AbstractMappingDatabase;
+import com.tterrag.k9.mappings.LineTokenizer;
 import com.tterrag.k9.mappings.Mapping;
+import com.tterrag.k9.mappings.MappingDatabase;
+import com.tterrag.k9.mappings.MappingSnapshot;
+import com.tterrag.k9.mappings.SnapshotDatabase;
 import com.tterrag.k9.mappings.MappingType;
+import com.tterrag.k9.mappings.NameType;
 import com.tterrag.k9.mappings.NoSuchVersionException;
+import com.tterrag.k9.mappings.ParserPool;
+import com.tterrag.k9.mappings.StringPool;
 import com.tterrag.k9.mappings.mcp.McpMapping;
 import com.tterrag.k9.mappings.srg.SrgDatabase;
+import com.tterrag.k9.mappings.srg.SrgDownloader;
+import com.tterrag.k9.mappings.srg.SrgMapping;
+import com.tterrag.k9.util.annotation.Nullable;
 
-public class OfficialDatabase extends AbstractMappingDatabase<OfficialMapping> {
-    private final FastSrgDatabase srgs;
+public class OfficialDatabase extends AbstractMappingDatabase<OfficialMapping> implements SnapshotDatabase<OfficialMapping> {
+    /**
+     * The shared SRG database of this version, only held while mappings are being added.
+     */
+    private @Nullable SrgDatabase srgs;
 
     public OfficialDatabase(String minecraftVersion) {
         super(minecraftVersion);
-        srgs = SrgDatabase.srgExists(minecraftVersion) ? new FastSrgDatabase(minecraftVersion) : null;
+    }
+
+    private Path getMappingsFolder() {
+        return OfficialDownloader.INSTANCE.getDataFolder().resolve(Paths.get(getMinecraftVersion(), "mappings"));
     }
 
     @Override
-    protected Collection<OfficialMapping> parseMappings() throws NoSuchVersionException, IOException {
-        if (srgs != null)
-            srgs.reload();
+    public List<Path> getSourceFiles() {
+        Path mappingsFolder = getMappingsFolder();
+        List<Path> ret = Lists.newArrayList(mappingsFolder.resolve("client.txt"), mappingsFolder.resolve("server.txt"));
+        File srgZip = SrgDatabase.getSrgZip(getMinecraftVersion());
+        if (srgZip != null) {
+            ret.add(srgZip.toPath());
+        }
+        return ret;
+    }
 
-        String mcver = getMinecraftVersion();
-        Path mappingsFolder = OfficialDownloader.INSTANCE.getDataFolder().resolve(Paths.get(mcver, "mappings"));
+    @Override
+    public MappingSnapshot.Entry toSnapshot(OfficialMapping mapping, ToIntFunction<Mapping> indexOf) {
+        // Store the intermediate name, so that loading the snapshot does not need the SRG database
+        String intermediate = mapping.getIntermediate();
+        Mapping owner = mapping.getOwnerMapping();
+        return MappingSnapshot.Entry.child(mapping.getType(), owner == null ? -1 : indexOf.applyAsInt(owner), mapping.getSide().ordinal(), 0,
+                mapping.getDesc(), mapping.getParameters(), mapping.getReturnType(), mapping.getOriginal(), mapping.getName(), mapping.getMemberClass(), intermediate);
+    }
+
+    @Override
+    public OfficialMapping fromSnapshot(MappingSnapshot.Entry entry, IntFunction<OfficialMapping> byIndex) {
+        OfficialMapping owner = entry.hasParent() ? byIndex.apply(entry.getParent()) : null;
+        OfficialMapping ret = new OfficialMapping(this, McpMapping.Side.values()[entry.getFlags()], entry.getType(), owner,
+                entry.get(0), entry.get(1), entry.get(2), entry.get(3), entry.get(4), entry.get(5));
+        ret.setIntermediate(entry.get(6));
+        return ret;
+    }
+
+    @Override
+    protected Collection<OfficialMapping> parseMappings() throws NoSuchVersionException, IOException {
+        Path mappingsFolder = getMappingsFolder();
         if (!Files.exists(mappingsFolder)) {
-            throw new NoSuchVersionException("minecraft", mcver);
+            throw new NoSuchVersionException("minecraft", getMinecraftVersion());
         }
 
+        // Intermediate names are only resolved as mappings are added, so the srgs need not be loaded until parsing is done
+        String mcver = getMinecraftVersion();
+        ForkJoinTask<SrgDatabase> srgLoad = SrgDatabase.srgExists(mcver) ? ParserPool.fork("official/srg", () -> SrgDownloader.INSTANCE.loadDatabase(mcver)) : null;
         List<OfficialMapping> parsed = new ArrayList<>(this.parse(mappingsFolder.resolve("client.txt"), mappingsFolder.resolve("server.txt")));
+        if (srgLoad != null) {
+            srgs = ParserPool.join(srgLoad);
+        }
         // Sort by MappingType enum (aka the order of the declared constants)
-        // This sorts classes to be FIRST so that when getIntermediate() is called, method descriptors can be converted correctly since the DB will have the classes populated
+        // This sorts classes to be FIRST so that when the intermediate names are resolved, method descriptors can be converted correctly since the DB will have the classes populated
         parsed.sort(Comparator.comparing(Mapping::getType));
         return parsed;
     }
 
+    @Override
+    public MappingDatabase<OfficialMapping> reload() throws IOException, NoSuchVersionException {
+        try {
+            return super.reload();
+        } finally {
+            // Do not keep the srgs alive once the intermediate names are resolved
+            srgs = null;
+        }
+    }
+
+    @Override
+    protected boolean addMapping(OfficialMapping mapping) {
+        // Mappings from snapshots are already resolved
+        if (mapping.getIntermediate() == null) {
+            mapping.setIntermediate(resolveIntermediate(mapping));
+        }
+        return super.addMapping(mapping);
+    }
+
+    /**
+     * Find the SRG name of a mapping by joining it against the SRG mappings on owner, name and descriptor. Classes are
+     * added first, so member descriptors can already be mapped back to their obfuscated form.
+     */
+    private String resolveIntermediate(OfficialMapping mapping) {
+        SrgDatabase srgs = this.srgs;
+        if (srgs == null) {
+            return "";
+        }
+        SrgMapping srg;
+        if (mapping.getType() == MappingType.CLASS) {
+            srg = srgs.getClassMapping(mapping.getOriginal());
+            if (srg != null && srg.getIntermediate().startsWith("net/minecraft/src/C_")) {
+                // SRG classnames are purely used to make exports not contain mojmaps.
+                // Remap to mojmap classnames here.
+                return mapping.getName();
+            }
+        } else {
+            srg = srgs.getMember(mapping.getOwnerMapping().getOriginal(), mapping.getOriginal(), mapping.getDesc(NameType.ORIGINAL));
+        }
+        if (srg == null) {
+            return mapping.isSpecial() ? mapping.getOriginal() : "";
+        }
+        return srg.getIntermediate();
+    }
+
     public Collection<OfficialMapping> parse(Path client, Path server) throws IOException {
+        ForkJoinTask<Set<OfficialMapping>> clientTask = ParserPool.fork("official/client", () -> parse(client, true));
+        ForkJoinTask<Set<OfficialMapping>> serverTask = ParserPool.fork("official/server", () -> parse(server, false));
+        // Merge in the same order as they would be parsed serially, so that mappings on both sides end up the same
+        Set<OfficialMapping> mappings = ParserPool.join(clientTask);
+        for (OfficialMapping mapping : ParserPool.join(serverTask)) {
+            addMapping(mappings, mapping);
+        }
+        return mappings;
+    }
+
+    private Set<OfficialMapping> parse(Path path, boolean isClient) throws IOException {
         Set<OfficialMapping> mappings = new HashSet<>();
-        for (Path path : Lists.newArrayList(client, server)) {
-            List<String> lines = Files.readAllLines(path).stream()
-                    .filter(s -> !s.startsWith("#"))
-                    .map(s -> s.replace('.', '/'))
-                    .collect(Collectors.toList());
-            populateMappings(mappings, lines, "client.txt".equals(path.getFileName().toString()));
+        try (LineTokenizer line = LineTokenizer.open(path)) {
+            populateMappings(mappings, line, isClient);
         }
         return mappings;
     }
 
     // Derived from SrgUtils in InternalUtils#loadProguard
-    private void populateMappings(Set<OfficialMapping> mappings, List<String> lines, boolean isClient) throws IOException {
+    private void populateMappings(Set<OfficialMapping> mappings, LineTokenizer line, boolean isClient) throws IOException {
         McpMapping.Side side = isClient ? McpMapping.Side.CLIENT : McpMapping.Side.SERVER;
         OfficialMapping clazz = null;
-        for (String line : lines) {
-            if (!line.startsWith("    ") && line.endsWith(":")) {
-                String[] mapped = line.substring(0, line.length() - 1).split(" -> ");
-                clazz = addMapping(mappings, new OfficialMapping(srgs, this, side, MappingType.CLASS, null, null, null, null, mapped[1], mapped[0], null));
-            } else if (line.contains("(") && line.contains(")")) {
+        while (line.next()) {
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            line.replace('.', '/', 0, line.length());
+            if (!line.startsWith("    ") && line.charAt(line.length() - 1) == ':') {
+                int arrow = line.indexOf(" -> ", 0);
+                clazz = addMapping(mappings, new OfficialMapping(this, side, MappingType.CLASS, null, null, null, null,
+                        line.intern(arrow + 4, line.length() - 1), line.intern(0, arrow), null));
+            } else if (line.indexOf('(', 0) != -1 && line.indexOf(')', 0) != -1) {
                 if (clazz == null)
                     throw new IOException("Class was null when parsing method");
 
-                line = line.trim();
-                if (line.indexOf(':') != -1) {
-                    int i = line.indexOf(':');
+                int start = 0;
+                while (line.charAt(start) == ' ') {
+                    start++;
+                }
+                int i = line.indexOf(':', start);
+                if (i != -1) {
                     int j = line.indexOf(':', i + 1);
-                    line = line.substring(j + 1);
+                    if (j != -1) {
+                        start = j + 1;
+                    }
                 }
 
-                String original = line.split(" -> ")[1];
+                int arrow = line.indexOf(" -> ", start);
+                String original = line.intern(arrow + 4, line.length());
                 if (original.equals("<clinit>"))
                     continue; // We don't want <clinit>
-                int spaceIndex = line.indexOf(' ');
-                String returnType = line.substring(0, spaceIndex);
-                String name = line.substring(spaceIndex + 1, line.indexOf('('));
-                String parameters = line.substring(line.indexOf('(') + 1, line.indexOf(')'));
+                int spaceIndex = line.indexOf(' ', start);
+                int paramsStart = line.indexOf('(', start) + 1;
+                int paramsEnd = line.indexOf(')', paramsStart);
+                String name = line.intern(spaceIndex + 1, paramsStart - 1);
 
                 StringBuilder desc = new StringBuilder("(");
-                for (String arg : parameters.split(",")) {
-                    if (arg.isEmpty())
-                        break;
-                    desc.append(toDesc(arg));
+                for (int arg = paramsStart; arg < paramsEnd;) {
+                    int argEnd = line.indexOf(',', arg);
+                    if (argEnd == -1 || argEnd > paramsEnd) {
+                        argEnd = paramsEnd;
+                    }
+                    desc.append(toDesc(line.subSequence(arg, argEnd).toString()));
+                    arg = argEnd + 1;
                 }
-                desc.append(')').append(toDesc(returnType));
-                addMapping(mappings, new OfficialMapping(srgs, this, side, MappingType.METHOD, clazz, desc.toString(), parameters.replace('/', '.'), returnType.replace('/', '.'), original, name, null));
+                desc.append(')').append(toDesc(line.subSequence(start, spaceIndex).toString()));
+
+                // Parameters and return type are kept in source form
+                line.replace('/', '.', start, paramsEnd);
+                addMapping(mappings, new OfficialMapping(this, side, MappingType.METHOD, clazz, StringPool.intern(desc.toString()),
+                        line.intern(paramsStart, paramsEnd), line.intern(start, spaceIndex), original, name, null));
             } else {
                 if (clazz == null)
                     throw new IOException("Class was null when parsing field");
 
-                String[] pts = line.trim().split(" ");
-                addMapping(mappings, new OfficialMapping(srgs, this, side, MappingType.FIELD, clazz, null, null, null, pts[3], pts[1], pts[0]));
+                int start = 0;
+                while (line.charAt(start) == ' ') {
+                    start++;
+                }
+                line.split(' ', start);
+                addMapping(mappings, new OfficialMapping(this, side, MappingType.FIELD, clazz, null, null, null, line.intern(3), line.intern(1), line.intern(0)));
             }
         }
     }
@@ -1,23 +1,21 @@
 package com.tterrag.k9.mappings.official;
 
 import java.io.File;
-import java.net.URL;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.commons.io.FileUtils;
-
 import com.beust.jcommander.internal.Lists;
 import com.tterrag.k9.mappings.MappingDownloader;
+import com.tterrag.k9.mappings.MappingHttp.Checksum;
 import com.tterrag.k9.mappings.srg.SrgDownloader;
 import com.tterrag.k9.util.annotation.Nullable;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
 
 @Slf4j
 public class OfficialDownloader extends MappingDownloader<OfficialMapping, OfficialDatabase> {
@@ -26,6 +24,7 @@ public class OfficialDownloader extends MappingDownloader<OfficialMapping, Offic
 
     private OfficialDownloader() {
         super("official", OfficialDatabase::new, 1);
+        SrgDownloader.INSTANCE.addDependent(this);
     }
 
     @Nullable
@@ -50,11 +49,8 @@ public class OfficialDownloader extends MappingDownloader<OfficialMapping, Offic
     }
 
     private Mono<ManifestJson> getManifestJson() {
-        return HttpClient.create()
-                .get()
-                .uri(MANIFEST_JSON)
-                .responseSingle(($, content) -> content.asString()
-                        .map(s -> getGson().fromJson(s, ManifestJson.class)));
+        return getHttp().getString(MANIFEST_JSON)
+                .map(s -> getGson().fromJson(s, ManifestJson.class));
     }
 
     @Override
@@ -70,33 +66,34 @@ public class OfficialDownloader extends MappingDownloader<OfficialMapping, Offic
         return updateVersions().then(Mono.fromSupplier(() -> this.manifest))
                 .filter(m -> this.getMinecraftVersionsInternal().contains(version))
                 .flatMap(m -> Mono.justOrEmpty(m.getVersionInfo(version)))
-                .flatMap(m -> m.getJson(getGson()))
+                .flatMap(m -> m.getJson(getHttp(), getGson()))
                 .flatMap(m -> SrgDownloader.INSTANCE.updateSrgs(version).onErrorResume(e -> Mono.empty()).thenReturn(m))
                 .flatMap(versionJson -> Mono.fromCallable(() -> {
                     Path versionFolder = getDataFolder().resolve(version);
                     File mappingsFolder = versionFolder.resolve("mappings").toFile();
-                    URL clientUrl = versionJson.getDownloads().get("client_mappings").getUrl();
-                    URL serverUrl = versionJson.getDownloads().get("server_mappings").getUrl();
-                    List<URL> mappingUrls = Lists.newArrayList(clientUrl, serverUrl);
+                    List<VersionJson.Download> downloads = Lists.newArrayList(
+                            versionJson.getDownloads().get("client_mappings"),
+                            versionJson.getDownloads().get("server_mappings"));
 
                     if (!mappingsFolder.exists()) {
                         mappingsFolder.mkdirs();
                     }
 
-                    File[] folderContents = mappingsFolder.listFiles();
-                    if (folderContents != null && folderContents.length > 0) {
+                    if (downloads.stream().allMatch(download -> new File(mappingsFolder, getFileName(download)).exists())) {
                         log.debug("Official MC {} mappings up to date", version);
-                        return null;
+                        return Mono.<Void>empty();
                     }
 
                     log.info("Found missing Official mappings for MC {}. Downloading.", version);
-                    for (URL mappingsUrl : mappingUrls) {
-                        String filename = mappingsUrl.getPath().substring(mappingsUrl.getPath().lastIndexOf('/') + 1);
-                        FileUtils.copyURLToFile(mappingsUrl, new File(mappingsFolder, filename));
-                    }
-                    remove(version);
+                    return Flux.fromIterable(downloads)
+                            .flatMap(download -> getHttp().download(download.getUrl().toString(), mappingsFolder.toPath().resolve(getFileName(download)),
+                                    Checksum.sha1(download.getSha1())))
+                            .then(Mono.fromRunnable(() -> refresh(version)));
+                }).flatMap(m -> m));
+    }
 
-                    return null;
-                }));
+    private static String getFileName(VersionJson.Download download) {
+        String path = download.getUrl().getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
     }
 }
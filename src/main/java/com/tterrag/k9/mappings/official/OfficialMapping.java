@@ -1,19 +1,14 @@
 package com.tterrag.k9.mappings.official;
 
-import java.util.EnumMap;
-import java.util.Map;
-import java.util.Optional;
-
-import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.tterrag.k9.mappings.Mapping;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
+import com.tterrag.k9.mappings.NameTypeCache;
 import com.tterrag.k9.mappings.SignatureHelper;
 import com.tterrag.k9.mappings.mcp.McpMapping;
 import com.tterrag.k9.util.annotation.Nullable;
 
-import clojure.asm.Type;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -31,8 +26,6 @@ import lombok.experimental.NonFinal;
 public class OfficialMapping implements Mapping {
     private static final SignatureHelper sigHelper = new SignatureHelper();
 
-    @ToString.Exclude
-    private final FastSrgDatabase srgs;
     @ToString.Exclude
     private final OfficialDatabase db;
 
@@ -56,8 +49,9 @@ public class OfficialMapping implements Mapping {
 
     @ToString.Exclude
     @Getter(AccessLevel.NONE)
-    private final Map<NameType, String> mappedDesc = new EnumMap<>(NameType.class);
+    private final NameTypeCache mappedDesc = new NameTypeCache();
 
+    @Setter(AccessLevel.PACKAGE)
     @NonFinal
     private String intermediate = null;
 
@@ -114,7 +108,7 @@ public class OfficialMapping implements Mapping {
      * Special methods like &lt;init&gt;, &lt;init&gt;, and other stuff required to have the same name by external libs
      * @return True if the method is special (its original name equals its mapped name).
      */
-    private boolean isSpecial() {
+    boolean isSpecial() {
         return original.equals(name);
     }
 
@@ -123,50 +117,26 @@ public class OfficialMapping implements Mapping {
         return getOwner(NameType.NAME);
     }
 
+    @Nullable Mapping getOwnerMapping() {
+        return owner;
+    }
+
     @Override
     public @Nullable String getOwner(NameType name) {
         return owner == null ? null : name.get(owner);
     }
 
-    private String mapType(NameType t, String type) {
-        return sigHelper.mapType(t, Type.getType(type), this, db).getDescriptor();
-    }
-
     @Override
     public String getDesc(NameType name) {
-        return mappedDesc.computeIfAbsent(name, t -> desc == null ? null : desc.contains("(") ? sigHelper.mapSignature(t, desc, this, db) : mapType(t, desc));
+        return mappedDesc.computeIfAbsent(name, t -> desc == null ? null : sigHelper.mapDescriptor(t, desc, db));
     }
 
+    /**
+     * @return The SRG name of this mapping, or an empty string if there is none. This is resolved by the database as the
+     *         mapping is added.
+     */
     @Override
     public String getIntermediate() {
-        if (intermediate == null) {
-            // Should help with random issues
-            mappedDesc.clear();
-
-            if (srgs == null) {
-                intermediate = "";
-            } else if (type == MappingType.CLASS) {
-                intermediate = Optional.ofNullable(srgs.getClassMapping(original)).map(Mapping::getIntermediate).orElse("");
-                if (intermediate != null && intermediate.startsWith("net/minecraft/src/C_")) {
-                    // SRG classnames are purely used to make exports not contain mojmaps.
-                    // Remap to mojmap classnames here.
-                    intermediate = name;
-                }
-            } else {
-                String desc = getDesc(NameType.ORIGINAL);
-                intermediate = srgs.getChildren(owner.getOriginal()).stream()
-                        .filter(m -> original.equals(m.getOriginal()))
-                        .filter(m -> Objects.equal(desc, m.getDesc(NameType.ORIGINAL)))
-                        .findFirst()
-                        .map(Mapping::getIntermediate)
-                        .orElse("");
-            }
-
-            if (srgs != null && intermediate.isEmpty() && isSpecial()) {
-                intermediate = original;
-            }
-        }
-
         return intermediate;
     }
 }
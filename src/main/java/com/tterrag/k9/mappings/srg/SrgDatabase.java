@@ -2,24 +2,47 @@ package com.tterrag.k9.mappings.srg;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 import java.util.zip.ZipFile;
 
+import com.tterrag.k9.mappings.Mapping;
+import com.tterrag.k9.mappings.MappingSnapshot;
+import com.tterrag.k9.mappings.SnapshotDatabase;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
 import com.tterrag.k9.mappings.NoSuchVersionException;
 import com.tterrag.k9.mappings.Parser;
 import com.tterrag.k9.mappings.mcp.OverrideRemovingDatabase;
-import com.tterrag.k9.util.NullHelper;
 import com.tterrag.k9.util.annotation.NonNull;
+import com.tterrag.k9.util.annotation.Nullable;
 
-public class SrgDatabase extends OverrideRemovingDatabase<SrgMapping> {
+import lombok.RequiredArgsConstructor;
+
+public class SrgDatabase extends OverrideRemovingDatabase<SrgMapping> implements SnapshotDatabase<SrgMapping> {
+    
+    private static final int FLAG_STATIC = 1;
+    
+    /**
+     * Classes by obfuscated name, and fields and methods keyed by their owner, name and descriptor, all obfuscated. See
+     * {@link #memberKey(String, String, String)}.
+     */
+    @RequiredArgsConstructor
+    private static class OriginalIndex {
+        final Map<String, SrgMapping> classes;
+        final Map<String, SrgMapping> members;
+    }
+    
+    private volatile @Nullable OriginalIndex originalIndex;
 
     public SrgDatabase(String mcver) throws NoSuchVersionException {
         super(mcver);
@@ -48,11 +71,102 @@ public class SrgDatabase extends OverrideRemovingDatabase<SrgMapping> {
         }
     }
 
+    /**
+     * @return The SRG or TSRG zip for this version, whichever exists, otherwise null.
+     */
+    public static @Nullable File getSrgZip(String mcver) {
+        File zip = getSrgFile(mcver, false);
+        if (!zip.exists()) {
+            zip = getSrgFile(mcver, true);
+        }
+        return zip.exists() ? zip : null;
+    }
+
     private static File getSrgFile(String mcver, boolean tsrg) {
         String filename = tsrg ? "mcp_config-" + mcver + ".zip" : "mcp-" + mcver + "-srg.zip";
         return SrgDownloader.INSTANCE.getDataFolder().resolve(Paths.get(mcver, "srgs", filename)).toFile();
     }
 
+    @Override
+    public List<Path> getSourceFiles() {
+        File zip = getSrgZip(getMinecraftVersion());
+        return zip == null ? Collections.emptyList() : Collections.singletonList(zip.toPath());
+    }
+
+    @Override
+    public MappingSnapshot.Entry toSnapshot(SrgMapping mapping, ToIntFunction<Mapping> indexOf) {
+        return MappingSnapshot.Entry.of(mapping.getType(), mapping.isStatic() ? FLAG_STATIC : 0,
+                mapping.getOriginal(), mapping.getIntermediate(), mapping.getOriginalDesc(), mapping.getIntermediateDesc(), mapping.getOwner());
+    }
+
+    @Override
+    public SrgMapping fromSnapshot(MappingSnapshot.Entry entry, IntFunction<SrgMapping> byIndex) {
+        SrgMapping ret = new SrgMapping(this, entry.getType(), entry.get(0), entry.get(1), entry.get(2), entry.get(3), entry.get(4));
+        ret.setStatic(entry.hasFlag(FLAG_STATIC));
+        return ret;
+    }
+
+    /**
+     * SRG mappings have no names, so there is never an override to remove and every parsed mapping is kept, the same as
+     * {@link OverrideRemovingDatabase} does for unnamed mappings. {@link #getOriginalIndex()} relies on this to index
+     * everything that was parsed.
+     */
+    @Override
+    protected boolean addMapping(SrgMapping mapping) {
+        addToAll(mapping);
+        return true;
+    }
+
+    @Override
+    protected boolean hasSuggestions() {
+        // Only ever used to build other databases
+        return false;
+    }
+
+    /**
+     * The index for {@link #getClassMapping(String)} and {@link #getMember(String, String, String)} is built on first
+     * use, as only some of the databases built from this one need it.
+     * <p>
+     * It covers every parsed mapping, see {@link #addMapping(SrgMapping)}. Mappings with the same obfuscated name are
+     * listed in the order they were parsed, so the last class and the first member win, as when the index was filled
+     * while parsing.
+     */
+    private OriginalIndex getOriginalIndex() {
+        OriginalIndex ret = originalIndex;
+        if (ret == null) {
+            synchronized (this) {
+                ret = originalIndex;
+                if (ret == null) {
+                    Map<String, SrgMapping> classes = new HashMap<>();
+                    for (SrgMapping mapping : lookup(NameType.ORIGINAL, MappingType.CLASS)) {
+                        classes.put(mapping.getOriginal(), mapping);
+                    }
+                    Map<String, SrgMapping> members = new HashMap<>();
+                    for (MappingType type : new MappingType[] { MappingType.FIELD, MappingType.METHOD }) {
+                        for (SrgMapping mapping : lookup(NameType.ORIGINAL, type)) {
+                            // Keep the first, same as a search through all members would find
+                            members.putIfAbsent(memberKey(mapping.getOwner(NameType.ORIGINAL), mapping.getOriginal(), mapping.getDesc(NameType.ORIGINAL)), mapping);
+                        }
+                    }
+                    ret = originalIndex = new OriginalIndex(classes, members);
+                }
+            }
+        }
+        return ret;
+    }
+    
+    private static String memberKey(String owner, String name, @Nullable String desc) {
+        return owner + '.' + name + (desc == null ? "" : desc);
+    }
+
+    public @Nullable SrgMapping getClassMapping(String original) {
+        return getOriginalIndex().classes.get(original);
+    }
+
+    public @Nullable SrgMapping getMember(String owner, String original, @Nullable String desc) {
+        return getOriginalIndex().members.get(memberKey(owner, original, desc));
+    }
+
     @NonNull
     @Override
     public Collection<SrgMapping> lookup(NameType by, MappingType type, String name) {
@@ -67,14 +181,19 @@ public class SrgDatabase extends OverrideRemovingDatabase<SrgMapping> {
         }
         List<SrgMapping> ret = getTable(NameType.INTERMEDIATE, type).get(name);
         if (ret.isEmpty()) {
-            Predicate<Entry<String, SrgMapping>> lookupFunc;
+            BiPredicate<String, SrgMapping> lookupFunc;
             if (type == MappingType.CLASS) {
-                lookupFunc = e -> e.getKey().substring(e.getKey().lastIndexOf('/') + 1).equals(name) || e.getValue().getOriginal().equals(name);
+                lookupFunc = (key, m) -> key.substring(key.lastIndexOf('/') + 1).equals(name) || m.getOriginal().equals(name);
             } else {
-                lookupFunc = e -> e.getValue().getIntermediate().equals(name) || e.getValue().getOriginal().equals(name);
+                lookupFunc = (key, m) -> m.getIntermediate().equals(name) || m.getOriginal().equals(name);
             }
-            List<SrgMapping> found = getTable(NameType.INTERMEDIATE, type).entries().stream().filter(lookupFunc).map(Entry::getValue).collect(Collectors.toList());
-            return NullHelper.notnullJ(found, "Stream#collect");
+            List<SrgMapping> found = new ArrayList<>();
+            getTable(NameType.INTERMEDIATE, type).forEach((key, mapping) -> {
+                if (lookupFunc.test(key, mapping)) {
+                    found.add(mapping);
+                }
+            });
+            return found;
         }
         return ret;
     }
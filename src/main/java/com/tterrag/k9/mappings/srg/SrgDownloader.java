@@ -5,16 +5,16 @@ import com.google.common.io.Files;
 import com.google.gson.GsonBuilder;
 import com.tterrag.k9.mappings.DeserializeIntArrayList;
 import com.tterrag.k9.mappings.MappingDownloader;
+import com.tterrag.k9.mappings.MappingHttp.Checksum;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
-import java.net.URL;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 @Slf4j
 public class SrgDownloader extends MappingDownloader<SrgMapping, SrgDatabase> {
@@ -23,10 +23,23 @@ public class SrgDownloader extends MappingDownloader<SrgMapping, SrgDatabase> {
     private static final String SRGS_URL = "https://maven.minecraftforge.net/de/oceanlabs/mcp/mcp/%1$s/mcp-%1$s-srg.zip";
     private static final String TSRGS_URL = "https://maven.minecraftforge.net/de/oceanlabs/mcp/mcp_config/%1$s/mcp_config-%1$s.zip";
 
+    /**
+     * Downloaders whose databases are built from SRG data, see {@link #addDependent(MappingDownloader)}.
+     */
+    private final Set<MappingDownloader<?, ?>> dependents = new CopyOnWriteArraySet<>();
+
     private SrgDownloader() {
         super("srg", SrgDatabase::new, 1);
     }
 
+    /**
+     * Register a downloader whose databases are built from SRG data. When the SRG data of a version changes, the
+     * databases of that version are removed from the dependent as well, so they are never rebuilt from the old data.
+     */
+    public void addDependent(MappingDownloader<?, ?> downloader) {
+        dependents.add(downloader);
+    }
+
     @Override
     protected Set<String> getMinecraftVersionsInternal() {
         return Collections.emptySet();
@@ -58,7 +71,7 @@ public class SrgDownloader extends MappingDownloader<SrgMapping, SrgDatabase> {
     }
 
     public Mono<Void> updateSrgs(String version) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             Path versionFolder = getDataFolder().resolve(version);
 
             String urlpattern = SRGS_URL;
@@ -66,34 +79,35 @@ public class SrgDownloader extends MappingDownloader<SrgMapping, SrgDatabase> {
                 urlpattern = TSRGS_URL;
             }
 
-            log.info("Updating SRG data for for MC {}", version);
-
             // Download new SRGs if necessary
             Path srgsFolder = versionFolder.resolve("srgs");
             String srgsUrl = String.format(urlpattern, version);
-            URL url = new URL(srgsUrl);
 
             String filename = srgsUrl.substring(srgsUrl.lastIndexOf('/') + 1);
             File md5File = srgsFolder.resolve(filename + ".md5").toFile();
             File zipFile = srgsFolder.resolve(filename).toFile();
 
-            boolean srgsUpToDate = false;
-            String md5 = IOUtils.toString(new URL(srgsUrl + ".md5").openStream(), Charsets.UTF_8);
-            if (md5File.exists() && zipFile.exists()) {
-                String localMd5 = Files.asCharSource(md5File, Charsets.UTF_8).readFirstLine();
-                if (md5.equals(localMd5)) {
-                    log.debug("MC {} SRGs up to date: {} == {}", version, md5, localMd5);
-                    srgsUpToDate = true;
-                }
-            }
-
-            if (!srgsUpToDate) {
-                log.info("Found out of date or missing SRGs for MC {}. new MD5: {}", version, md5);
-                FileUtils.copyURLToFile(url, zipFile);
-                FileUtils.write(md5File, md5, Charsets.UTF_8);
-                remove(version);
-            }
-            return null;
+            return Mono.fromRunnable(() -> log.info("Updating SRG data for for MC {}", version))
+                    .then(getHttp().getString(srgsUrl + ".md5"))
+                    .flatMap(md5 -> Mono.fromCallable(() -> {
+                        if (md5File.exists() && zipFile.exists()) {
+                            String localMd5 = Files.asCharSource(md5File, Charsets.UTF_8).readFirstLine();
+                            if (md5.equals(localMd5)) {
+                                log.debug("MC {} SRGs up to date: {} == {}", version, md5, localMd5);
+                                return Mono.<Void>empty();
+                            }
+                        }
+                        log.info("Found out of date or missing SRGs for MC {}. new MD5: {}", version, md5);
+                        return getHttp().download(srgsUrl, zipFile.toPath(), Checksum.md5(md5))
+                                .flatMap($ -> Mono.fromCallable(() -> {
+                                    FileUtils.write(md5File, md5, Charsets.UTF_8);
+                                    // Not refreshed, as the old database would be served to dependents rebuilding meanwhile
+                                    remove(version);
+                                    dependents.forEach(d -> d.remove(version));
+                                    return null;
+                                }))
+                                .then();
+                    }).flatMap(m -> m));
         });
     }
 
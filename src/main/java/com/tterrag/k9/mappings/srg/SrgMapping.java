@@ -51,7 +51,7 @@ public class SrgMapping implements IntermediateMapping {
     public @Nullable String getOwner(NameType name) {
         if (name == NameType.ORIGINAL) {
             if (originalOwner == null) {
-                originalOwner = sigHelper.mapType(NameType.ORIGINAL, getOwner(), this, db).getInternalName();
+                originalOwner = sigHelper.mapClass(NameType.ORIGINAL, getOwner(), db);
             }
             return originalOwner;
         }
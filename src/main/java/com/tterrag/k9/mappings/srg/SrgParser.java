@@ -2,20 +2,15 @@ package com.tterrag.k9.mappings.srg;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.regex.Matcher;
+import java.util.Set;
 import java.util.zip.ZipFile;
 
-import org.apache.commons.io.IOUtils;
-
-import com.google.common.base.Charsets;
+import com.tterrag.k9.mappings.LineTokenizer;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.Parser;
-import com.tterrag.k9.util.NullHelper;
-import com.tterrag.k9.util.Patterns;
-import com.tterrag.k9.util.annotation.NonNull;
+import com.tterrag.k9.util.annotation.Nullable;
 
 import lombok.RequiredArgsConstructor;
 
@@ -26,68 +21,85 @@ public class SrgParser implements Parser<ZipFile, SrgMapping> {
     
     @Override
     public List<SrgMapping> parse(ZipFile zip) throws IOException {
-        List<String> staticMethods;
-        List<String> srglines;
-        List<String> excLines;
+        List<SrgMapping> ret = new ArrayList<>();
         try {
-            staticMethods = IOUtils.readLines(zip.getInputStream(zip.getEntry("static_methods.txt")), Charsets.UTF_8);
-            srglines = IOUtils.readLines(zip.getInputStream(zip.getEntry("joined.srg")), Charsets.UTF_8);
-            excLines = IOUtils.readLines(zip.getInputStream(zip.getEntry("joined.exc")), Charsets.UTF_8);
+            Set<String> staticMethods = new HashSet<>();
+            try (LineTokenizer tokens = new LineTokenizer(zip.getInputStream(zip.getEntry("static_methods.txt")))) {
+                while (tokens.next()) {
+                    staticMethods.add(tokens.toString());
+                }
+            }
+            try (LineTokenizer tokens = new LineTokenizer(zip.getInputStream(zip.getEntry("joined.srg")))) {
+                while (tokens.next()) {
+                    MappingType type = getType(tokens);
+                    if (type != null) {
+                        ret.add(create(type, tokens, staticMethods));
+                    }
+                }
+            }
+            try (LineTokenizer tokens = new LineTokenizer(zip.getInputStream(zip.getEntry("joined.exc")))) {
+                while (tokens.next()) {
+                    parseExc(tokens, ret);
+                }
+            }
         } finally {
             zip.close();
         }
-        
-        List<SrgMapping> ret = new ArrayList<>();
-        Matcher matcher = Patterns.SRG_PATTERN.matcher("");
-
-        for (String srg : srglines) {
-            matcher.reset(srg);
-            if (matcher.matches()) {
-                MappingType type = Arrays.stream(MappingType.values()).filter(t -> Optional.ofNullable(t.getSrgKey()).orElse("").equals(matcher.group(1))).findFirst().get();
-                SrgMapping mapping = create(type, matcher.group(2), staticMethods);
-                ret.add(mapping);
-            }
+        return ret;
+    }
+    
+    private static @Nullable MappingType getType(LineTokenizer line) {
+        if (line.length() < 4 || line.charAt(2) != ':' || line.charAt(3) != ' ') {
+            return null;
         }
-        for(String exc : excLines) {
-            if(exc.contains("V=")) {
-                String line = exc.split("V=")[1].substring(1);
-                String owner = exc.split("\\(")[0].substring(exc.split("\\(")[0].lastIndexOf("/")+1);
-                if(line.split(",").length > 0) {
-                    String[] params = line.split(",");
-                    for(String param : params) {
-                        SrgMapping mapping = new SrgMapping(db, MappingType.PARAM, "", param, null, null, owner);
-                        ret.add(mapping);
-                    }
-                } else {
-                    SrgMapping mapping = new SrgMapping(db, MappingType.PARAM, "", line, null, null, owner);
-                    ret.add(mapping);
-                }
+        for (MappingType type : MappingType.values()) {
+            String key = type.getSrgKey();
+            if (key != null && line.startsWith(key)) {
+                return type;
             }
         }
+        return null;
+    }
     
-        return ret;
+    private void parseExc(LineTokenizer line, List<SrgMapping> ret) {
+        // e.g. net/minecraft/Foo.<init>(II)V=|p_i1234_1_,p_i1234_2_
+        int paramsStart = line.indexOf("V=", 0);
+        int descStart = line.indexOf('(', 0);
+        if (paramsStart < 0 || descStart < 0) {
+            return;
+        }
+        String owner = line.intern(line.lastIndexOf('/', 0, descStart) + 1, descStart);
+        int count = line.split(',', paramsStart + 3);
+        for (int i = 0; i < count; i++) {
+            if (line.start(i) < line.end(i)) {
+                ret.add(new SrgMapping(db, MappingType.PARAM, "", line.intern(i), null, null, owner));
+            }
+        }
     }
     
-    private SrgMapping create(MappingType type, String line, List<String> staticMethods) {
-        @NonNull String[] data = NullHelper.notnullJ(line.trim().split("\\s+"), "String#split");
+    private SrgMapping create(MappingType type, LineTokenizer line, Set<String> staticMethods) {
+        // Skip the "XX: " prefix
+        line.split(' ', 4);
         switch(type) {
             case CLASS:
-                return new SrgMapping(db, type, data[0], data[1], null, null, null);
+                return new SrgMapping(db, type, line.intern(0), line.intern(1), null, null, null);
             case FIELD:
-                String owner = data[1].substring(0, data[1].lastIndexOf('/'));
+                int ownerEnd = line.lastIndexOf('/', line.start(1), line.end(1));
+                String owner = line.intern(line.start(1), ownerEnd);
                 return new SrgMapping(db, type,
-                        NullHelper.notnullJ(data[0].substring(data[0].lastIndexOf('/') + 1), "String#substring"), 
-                        NullHelper.notnullJ(data[1].replace(owner + "/", ""), "String#replace"),
+                        afterSlash(line, 0),
+                        line.intern(ownerEnd + 1, line.end(1)),
                         null, null,
                         owner);
             case METHOD:
-                owner = data[2].substring(0, data[2].lastIndexOf('/'));
-                String srg = NullHelper.notnullJ(data[2].replace(owner + "/", ""), "String#replace");
+                ownerEnd = line.lastIndexOf('/', line.start(2), line.end(2));
+                owner = line.intern(line.start(2), ownerEnd);
+                String srg = line.intern(ownerEnd + 1, line.end(2));
                 SrgMapping ret = new SrgMapping(db, type,
-                        NullHelper.notnullJ(data[0].substring(data[0].lastIndexOf('/') + 1), "String#substring"), 
+                        afterSlash(line, 0),
                         srg,
-                        data[1],
-                        data[3],
+                        line.intern(1),
+                        line.intern(3),
                         owner);
                 if (staticMethods.contains(srg)) {
                     ret.setStatic(true);
@@ -97,5 +109,9 @@ public class SrgParser implements Parser<ZipFile, SrgMapping> {
                 throw new IllegalArgumentException("Invalid type");
         }
     }
-
+    
+    private static String afterSlash(LineTokenizer line, int field) {
+        int slash = line.lastIndexOf('/', line.start(field), line.end(field));
+        return line.intern(slash < 0 ? line.start(field) : slash + 1, line.end(field));
+    }
 }
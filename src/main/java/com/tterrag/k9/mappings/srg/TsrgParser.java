@@ -2,16 +2,13 @@ package com.tterrag.k9.mappings.srg;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import org.apache.commons.io.IOUtils;
-
-import com.google.common.base.Charsets;
-import com.google.common.collect.Sets;
+import com.tterrag.k9.mappings.LineTokenizer;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
 import com.tterrag.k9.mappings.Parser;
@@ -30,24 +27,31 @@ public class TsrgParser implements Parser<ZipFile, SrgMapping> {
 
     @Override
     public List<SrgMapping> parse(ZipFile zip) throws IOException {
-        Set<String> staticMethods;
-        List<String> lines;
+        List<SrgMapping> ret = new ArrayList<>();
         try {
+            Set<String> staticMethods = new HashSet<>();
             ZipEntry staticMethodsEntry = zip.getEntry("config/static_methods.txt");
             // This file no longer exists in tsrgv2 versions (starting at 1.17)
             if (staticMethodsEntry != null) {
-                staticMethods = Sets.newHashSet(IOUtils.readLines(zip.getInputStream(staticMethodsEntry), Charsets.UTF_8));
-            } else {
-                staticMethods = Collections.emptySet();
+                try (LineTokenizer tokens = new LineTokenizer(zip.getInputStream(staticMethodsEntry))) {
+                    while (tokens.next()) {
+                        staticMethods.add(tokens.toString());
+                    }
+                }
+            }
+            try (LineTokenizer tokens = new LineTokenizer(zip.getInputStream(zip.getEntry("config/joined.tsrg")))) {
+                parse(tokens, staticMethods, ret);
             }
-            lines = IOUtils.readLines(zip.getInputStream(zip.getEntry("config/joined.tsrg")), Charsets.UTF_8);
         } finally {
             zip.close();
         }
-        List<SrgMapping> ret = new ArrayList<>();
+        return ret;
+    }
+    
+    private void parse(LineTokenizer line, Set<String> staticMethods, List<SrgMapping> ret) throws IOException {
         SrgMapping currentClass = null;
         int fieldNumber = 2;
-        for (String line : lines) {
+        while (line.next()) {
             SrgMapping mapping;
             if (line.startsWith("tsrg2 ")) {
                 // TSRGv2 support, skip header line and check that this is standard name set
@@ -55,20 +59,21 @@ public class TsrgParser implements Parser<ZipFile, SrgMapping> {
                     throw new UnsupportedOperationException("Custom names in tsrgv2 is not supported yet");
                 }
                 // So we can support extra names on the end, e.g. "obf srg id" which is present in newer MCPConfig exports
-                fieldNumber = line.split(" ").length - 1;
+                fieldNumber = line.split(' ') - 1;
                 continue;
             }
             if (!line.startsWith("\t")) {
-                String[] names = line.split(" ");
-                mapping = currentClass = new SrgMapping(db, MappingType.CLASS, names[0], names[1], null, null, null);
+                line.split(' ');
+                mapping = currentClass = new SrgMapping(db, MappingType.CLASS, line.intern(0), line.intern(1), null, null, null);
             } else if (!line.startsWith("\t\t")) {
-                String[] data = line.substring(1).split(" ");
-                if (data.length == fieldNumber) {
-                    mapping = new SrgMapping(db, MappingType.FIELD, data[0], data[1], null, null, currentClass.getIntermediate());
+                int fields = line.split(' ', 1);
+                if (fields == fieldNumber) {
+                    mapping = new SrgMapping(db, MappingType.FIELD, line.intern(0), line.intern(1), null, null, currentClass.getIntermediate());
                 } else {
                     // TSRGv2 Support
-                    MappingType type = data[1].startsWith("(") ? MappingType.METHOD : MappingType.FIELD;
-                    mapping = new SrgMapping(db, type, data[0], data[2], data[1], null, currentClass.getIntermediate()) {
+                    MappingType type = line.charAt(line.start(1)) == '(' ? MappingType.METHOD : MappingType.FIELD;
+                    String srg = line.intern(2);
+                    mapping = new SrgMapping(db, type, line.intern(0), srg, line.intern(1), null, currentClass.getIntermediate()) {
     
                         private @Nullable String srgDesc;
     
@@ -80,12 +85,12 @@ public class TsrgParser implements Parser<ZipFile, SrgMapping> {
                             return srgDesc;
                         }
                     };
-                    if (staticMethods.contains(data[2])) {
+                    if (staticMethods.contains(srg)) {
                         mapping.setStatic(true);
                     }
                 }
             } else {
-                if (line.trim().equals("static")) {
+                if (line.split('\t', 2) == 1 && line.fieldEquals(0, "static")) {
                     // Mark the previous method mapping as static
                     ret.get(ret.size() - 1).setStatic(true);
                 }
@@ -94,7 +99,5 @@ public class TsrgParser implements Parser<ZipFile, SrgMapping> {
             }
             ret.add(mapping);
         }
-        return ret;
     }
-
 }
@@ -1,12 +1,10 @@
 package com.tterrag.k9.mappings.yarn;
 
-import java.util.EnumMap;
-import java.util.Map;
-
 import com.tterrag.k9.mappings.CommentedMapping;
 import com.tterrag.k9.mappings.MappingDatabase;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
+import com.tterrag.k9.mappings.NameTypeCache;
 import com.tterrag.k9.mappings.ParamMapping;
 import com.tterrag.k9.mappings.SignatureHelper;
 import com.tterrag.k9.mappings.mcp.IntermediateMapping;
@@ -96,7 +94,21 @@ public class TinyMapping implements CommentedMapping, IntermediateMapping {
     boolean isStatic;
     
     @ToString.Exclude
-    transient Map<NameType, String> mappedOwner = new EnumMap<>(NameType.class), mappedDesc = new EnumMap<>(NameType.class);
+    transient NameTypeCache mappedOwner = new NameTypeCache(), mappedDesc = new NameTypeCache();
+    
+    /**
+     * @return The owner as read from the mappings file, before any remapping.
+     */
+    @Nullable String getRawOwner() {
+        return owner;
+    }
+    
+    /**
+     * @return The descriptor as read from the mappings file, before any remapping.
+     */
+    @Nullable String getRawDesc() {
+        return desc;
+    }
     
     @Override
     public @Nullable final String getOwner() {
@@ -105,7 +117,7 @@ public class TinyMapping implements CommentedMapping, IntermediateMapping {
     
     @Override
     public @Nullable String getOwner(NameType name) {
-        return mappedOwner.computeIfAbsent(name, t -> owner == null ? null : sigHelper.mapType(t, owner, this, db).getInternalName());
+        return mappedOwner.computeIfAbsent(name, t -> owner == null ? null : sigHelper.mapClass(t, owner, db));
     }
     
     @Override
@@ -118,13 +130,9 @@ public class TinyMapping implements CommentedMapping, IntermediateMapping {
         return getType() == MappingType.FIELD ? Type.getType(getDesc(NameType.NAME)).getClassName() : CommentedMapping.super.getMemberClass();
     }
     
-    private String mapType(NameType t, String type) {
-        return sigHelper.mapType(t, Type.getType(type), this, db).getDescriptor();
-    }
-    
     @Override
     public @Nullable String getDesc(NameType name) {
-        return mappedDesc.computeIfAbsent(name, t -> desc == null ? null : desc.contains("(") ? sigHelper.mapSignature(t, desc, this, db) : mapType(t, desc));
+        return mappedDesc.computeIfAbsent(name, t -> desc == null ? null : sigHelper.mapDescriptor(t, desc, db));
     }
     
     @Override
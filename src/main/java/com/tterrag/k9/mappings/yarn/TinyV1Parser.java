@@ -3,16 +3,13 @@ package com.tterrag.k9.mappings.yarn;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.io.IOUtils;
-
-import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
+import com.tterrag.k9.mappings.LineTokenizer;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
 import com.tterrag.k9.mappings.Parser;
@@ -33,35 +30,51 @@ public class TinyV1Parser implements Parser<File, TinyMapping> {
 
     @Override
     public List<TinyMapping> parse(File input) throws IOException {
-        List<String> lines = IOUtils.readLines(new GZIPInputStream(new FileInputStream(input)), Charsets.UTF_8);
-
-        String header = lines.remove(0);
-        String[] headerinfo = header.split("\t");
-        int tinyver = Integer.parseInt(headerinfo[0].substring(1));
-        if (tinyver != 1) {
-            throw new IllegalArgumentException("Unsupported mappings version");
+        try (LineTokenizer line = new LineTokenizer(new GZIPInputStream(new FileInputStream(input)))) {
+            if (!line.next()) {
+                throw new IllegalArgumentException("Empty mappings file");
+            }
+            int headerSize = line.split('\t');
+            if (!line.fieldEquals(0, "v1")) {
+                throw new IllegalArgumentException("Unsupported mappings version");
+            }
+            
+            IntList order = new IntArrayList(headerSize - 1);
+            for (int i = 1; i < headerSize; i++) {
+                order.add(BY_NAME.get(line.field(i)).ordinal() + 1);
+            }
+            
+            List<TinyMapping> ret = new ArrayList<>();
+            while (line.next()) {
+                line.split('\t');
+                ret.add(fromLine(line, order));
+            }
+            return ret;
         }
-        
-        IntList order = new IntArrayList(Arrays.stream(headerinfo).skip(1).map(BY_NAME::get).mapToInt(t -> t.ordinal() + 1).toArray());
-        
-        return lines.stream().map(s -> fromString(s, order)).collect(Collectors.toList());
     }
 
-    private TinyMapping fromString(String line, IntList order) {
-        String[] info = line.split("\t");
-        MappingType type = MappingType.valueOf(info[0]);
-        switch(type) {
+    private TinyMapping fromLine(LineTokenizer line, IntList order) {
+        switch(getType(line)) {
             case CLASS:
-                String intermediate = info[order.getInt(1)];
-                String name = info[order.getInt(2)];
-                return new TinyMapping(db, type, null, null, info[order.getInt(0)], intermediate, intermediate.equals(name) ? null : name, null, false);
+                String intermediate = line.intern(order.getInt(1));
+                String name = line.intern(order.getInt(2));
+                return new TinyMapping(db, MappingType.CLASS, null, null, line.intern(order.getInt(0)), intermediate, intermediate.equals(name) ? null : name, null, false);
             case METHOD:
             case FIELD:
-                intermediate = info[order.getInt(1) + 2];
-                name = info[order.getInt(2) + 2];
-                return new TinyMapping(db, type, info[1], info[2], info[order.getInt(0) + 2], intermediate, intermediate.equals(name) ? null : name, null, false);
+                intermediate = line.intern(order.getInt(1) + 2);
+                name = line.intern(order.getInt(2) + 2);
+                return new TinyMapping(db, getType(line), line.intern(1), line.intern(2), line.intern(order.getInt(0) + 2), intermediate, intermediate.equals(name) ? null : name, null, false);
             default:
                 throw new IllegalArgumentException("Unknown type"); // Params NYI, doesn't exist in the spec
         }
     }
+    
+    private static MappingType getType(LineTokenizer line) {
+        for (MappingType type : MappingType.values()) {
+            if (line.fieldEquals(0, type.name())) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown type: " + line.field(0));
+    }
 }
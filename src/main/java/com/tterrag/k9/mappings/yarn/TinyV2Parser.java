@@ -2,19 +2,18 @@ package com.tterrag.k9.mappings.yarn;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URI;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
-import java.util.zip.ZipError;
+import java.util.function.IntFunction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 
+import com.tterrag.k9.mappings.LineTokenizer;
 import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NameType;
 import com.tterrag.k9.mappings.Parser;
+import com.tterrag.k9.mappings.StringPool;
 import com.tterrag.k9.util.annotation.Nullable;
 
 import it.unimi.dsi.fastutil.objects.Object2IntArrayMap;
@@ -33,14 +32,14 @@ public class TinyV2Parser implements Parser<File, TinyMapping> {
 
     @Override
     public Collection<TinyMapping> parse(File input) throws IOException {
-        URI uri = URI.create("jar:" + input.toPath().toUri());
-        try {
-            try (FileSystem fs = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
-                Path mappings = fs.getPath("mappings", "mappings.tiny");
-                return parseV2(Files.readAllLines(mappings));
+        try (ZipFile zip = new ZipFile(input)) {
+            ZipEntry mappings = zip.getEntry("mappings/mappings.tiny");
+            if (mappings == null) {
+                throw new IOException("No mappings found in " + input);
+            }
+            try (LineTokenizer line = new LineTokenizer(zip.getInputStream(mappings))) {
+                return parseV2(line);
             }
-        } catch (ZipError err) { // https://bugs.openjdk.java.net/browse/JDK-8062754
-            throw new RuntimeException(err);
         }
     }
     
@@ -83,9 +82,9 @@ public class TinyV2Parser implements Parser<File, TinyMapping> {
             }
         }
         
-        PartialMapping applyNames(String[] values, Object2IntMap<NameType> order, int start) {
+        PartialMapping applyNames(IntFunction<String> values, Object2IntMap<NameType> order, int start) {
             for (Object2IntMap.Entry<NameType> e : order.object2IntEntrySet()) {
-                name(e.getKey(), values[e.getIntValue() + start]);
+                name(e.getKey(), values.apply(e.getIntValue() + start));
             }
             return this;
         }
@@ -126,41 +125,38 @@ public class TinyV2Parser implements Parser<File, TinyMapping> {
     private final PartialMapping HEADER = new Dummy();
     private final PartialMapping UNKNOWN = new Dummy();
 
-    private Collection<TinyMapping> parseV2(List<String> lines) throws IOException {
+    private Collection<TinyMapping> parseV2(LineTokenizer line) throws IOException {
         List<TinyMapping> ret = new ArrayList<>();
         Deque<PartialMapping> sections = new LinkedList<>();
         Map<String, String> properties = new HashMap<>();
         Object2IntMap<NameType> names = new Object2IntArrayMap<>(4);
-        for (String s : lines) {
+        // Properties are only set by the header, so after that this always takes the same branch
+        IntFunction<String> values = i -> properties.containsKey("escaped-names") ? StringPool.intern(StringEscapeUtils.unescapeJava(line.field(i))) : line.intern(i);
+        while (line.next()) {
             int depth = sections.size();
-            for (int i = 0; i < depth; i++) {
-                if (s.charAt(0) == '\t') {
-                    s = s.substring(1);
-                } else {
-                    TinyMapping mapping = sections.pop().bake();
-                    if (mapping != null) {
-                        ret.add(mapping);
-                    }
-                }
+            int indent = 0;
+            while (indent < depth && indent < line.length() && line.charAt(indent) == '\t') {
+                indent++;
             }
-            depth = sections.size();
-            String[] values = s.split("\t", -1);
-            if (properties.containsKey("escaped-names")) {
-                for (int i = 0; i < values.length; i++) {
-                    values[i] = StringEscapeUtils.unescapeJava(values[i]);
+            for (int i = indent; i < depth; i++) {
+                TinyMapping mapping = sections.pop().bake();
+                if (mapping != null) {
+                    ret.add(mapping);
                 }
             }
+            depth = sections.size();
+            int count = line.split('\t', indent);
             PartialMapping context = depth == 0 ? UNKNOWN : sections.peek();
-            switch (values[0]) {
+            switch (line.intern(0)) {
                 case "tiny":
                     sections.push(HEADER);
-                    int maj = Integer.parseInt(values[1]);
-                    int min = Integer.parseInt(values[2]);
+                    int maj = line.fieldInt(1);
+                    int min = line.fieldInt(2);
                     if (maj != 2) {
                         throw new IllegalStateException("Unsupported tiny format: " + maj + "." + min);
                     }
-                    for (int i = 3; i < values.length; i++) {
-                        names.put(TinyV1Parser.BY_NAME.get(values[i]), i - 3);
+                    for (int i = 3; i < count; i++) {
+                        names.put(TinyV1Parser.BY_NAME.get(line.field(i)), i - 3);
                     }
                     break;
                 case "c":
@@ -168,25 +164,25 @@ public class TinyV2Parser implements Parser<File, TinyMapping> {
                         sections.push(new PartialMapping(MappingType.CLASS)
                                 .applyNames(values, names, 1));
                     } else {
-                        context.comment(values[1]);
+                        context.comment(values.apply(1));
                     }
                     break;
                 case "m":
                     sections.push(new PartialMapping(MappingType.METHOD)
-                            .desc(values[1])
+                            .desc(values.apply(1))
                             .owner(context.original())
                             .applyNames(values, names, 2));
                     break;
                 case "p":
                     sections.push(new PartialMapping(MappingType.PARAM)
                             .owner(context.original())
-                            .param(Integer.parseInt(values[1]))
+                            .param(line.fieldInt(1))
                             .applyNames(values, names, 2)
                             .paramOwner(context));
                     break;
                 case "f":
                     sections.push(new PartialMapping(MappingType.FIELD)
-                            .desc(values[1])
+                            .desc(values.apply(1))
                             .owner(context.original())
                             .applyNames(values, names, 2));
                     break;
@@ -194,7 +190,7 @@ public class TinyV2Parser implements Parser<File, TinyMapping> {
                     break; // No variable mappings (yet?)
                 default:
                     if (depth == 1 && context == HEADER) { // properties
-                        properties.put(values[1], values.length > 2 ? values[2] : null);
+                        properties.put(line.field(1), count > 2 ? line.field(2) : null);
                     } else {
                         sections.push(UNKNOWN);
                     }
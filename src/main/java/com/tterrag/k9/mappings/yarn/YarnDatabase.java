@@ -2,24 +2,73 @@ package com.tterrag.k9.mappings.yarn;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 import com.tterrag.k9.mappings.FastIntLookupDatabase;
+import com.tterrag.k9.mappings.Mapping;
+import com.tterrag.k9.mappings.MappingHttp;
+import com.tterrag.k9.mappings.MappingSnapshot;
+import com.tterrag.k9.mappings.SnapshotDatabase;
+import com.tterrag.k9.mappings.MappingType;
 import com.tterrag.k9.mappings.NoSuchVersionException;
+import com.tterrag.k9.util.annotation.Nullable;
 
-public class YarnDatabase extends FastIntLookupDatabase<TinyMapping> {
+public class YarnDatabase extends FastIntLookupDatabase<TinyMapping> implements SnapshotDatabase<TinyMapping> {
+    
+    private static final int FLAG_STATIC = 1;
 
     public YarnDatabase(String minecraftVersion) {
         super(minecraftVersion);
     }
+    
+    private @Nullable File getMappingsFile() {
+        File folder = YarnDownloader.INSTANCE.getDataFolder().resolve(getMinecraftVersion()).toFile();
+        File[] contents = folder.listFiles(f -> !MappingSnapshot.isSnapshot(f) && !MappingHttp.isPartial(f));
+        return contents == null || contents.length == 0 ? null : contents[0];
+    }
+    
+    @Override
+    public List<Path> getSourceFiles() {
+        File file = getMappingsFile();
+        return file == null ? Collections.emptyList() : Collections.singletonList(file.toPath());
+    }
+    
+    @Override
+    public MappingSnapshot.Entry toSnapshot(TinyMapping mapping, ToIntFunction<Mapping> indexOf) {
+        int flags = mapping.isStatic() ? FLAG_STATIC : 0;
+        if (mapping instanceof TinyMapping.Param) {
+            TinyMapping.Param param = (TinyMapping.Param) mapping;
+            int parent = param.getParent() == null ? -1 : indexOf.applyAsInt(param.getParent());
+            return MappingSnapshot.Entry.child(param.getType(), parent, flags, param.getIndex(),
+                    param.getRawOwner(), param.getRawDesc(), param.getName(), param.getComment());
+        }
+        return MappingSnapshot.Entry.of(mapping.getType(), flags,
+                mapping.getRawOwner(), mapping.getRawDesc(), mapping.getOriginal(), mapping.getIntermediate(), mapping.getName(), mapping.getComment());
+    }
+    
+    @Override
+    public TinyMapping fromSnapshot(MappingSnapshot.Entry entry, IntFunction<TinyMapping> byIndex) {
+        if (entry.getType() == MappingType.PARAM) {
+            TinyMapping.Param ret = new TinyMapping.Param(this, entry.getType(), entry.get(0), entry.get(1), entry.get(2), entry.get(3), entry.getIndex());
+            if (entry.hasParent()) {
+                ret.setParentMapping(byIndex.apply(entry.getParent()));
+            }
+            return ret;
+        }
+        return new TinyMapping(this, entry.getType(), entry.get(0), entry.get(1), entry.get(2), entry.get(3), entry.get(4), entry.get(5), entry.hasFlag(FLAG_STATIC));
+    }
 
     @Override
     protected Collection<TinyMapping> parseMappings() throws NoSuchVersionException, IOException {        
-        File folder = YarnDownloader.INSTANCE.getDataFolder().resolve(getMinecraftVersion()).toFile();
-        if (!folder.exists()) {
+        File file = getMappingsFile();
+        if (file == null) {
             throw new NoSuchVersionException("yarn", getMinecraftVersion());
         }
-        File file = folder.listFiles()[0];
         if (file.getName().endsWith("-tiny.gz")) {
             return new TinyV1Parser(this).parse(file);
         } else if (file.getName().endsWith("-mergedv2.jar")) {
@@ -1,10 +1,7 @@
 package com.tterrag.k9.mappings.yarn;
 
 import java.io.File;
-import java.io.InputStreamReader;
 import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
@@ -14,8 +11,6 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.FileUtils;
-
 import com.google.common.base.Preconditions;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializationContext;
@@ -25,6 +20,8 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import com.tterrag.k9.mappings.MappingDownloader;
+import com.tterrag.k9.mappings.MappingHttp;
+import com.tterrag.k9.mappings.MappingSnapshot;
 import com.tterrag.k9.mappings.NoSuchVersionException;
 import com.tterrag.k9.util.Patterns;
 
@@ -69,64 +66,59 @@ public class YarnDownloader extends MappingDownloader<TinyMapping, YarnDatabase>
     
     @Override
     protected Mono<Void> updateVersions() {
-        return Mono.fromCallable(() -> {
-            log.info("Running Yarn update check...");
-            
-            URL url = new URL(META_URL_BASE + ENDPOINT_GAME_VERSIONS);
-            HttpURLConnection request = (HttpURLConnection) url.openConnection();
-            request.connect();
-    
-            mcVersions = getGson().fromJson(new InputStreamReader(request.getInputStream()), new TypeToken<List<MinecraftVersion>>(){}.getType());
-            return null;
-        });
+        return Mono.fromRunnable(() -> log.info("Running Yarn update check..."))
+                .then(getHttp().getString(META_URL_BASE + ENDPOINT_GAME_VERSIONS))
+                .doOnNext(json -> mcVersions = getGson().fromJson(json, new TypeToken<List<MinecraftVersion>>(){}.getType()))
+                .then();
     }
 
     @Override
     protected Mono<Void> checkUpdates(String mcver) {
-        return updateVersions().then(Mono.fromSupplier(() -> this.mcVersions)).flatMap(mcVersions -> Mono.fromCallable(() -> {
-            MinecraftVersion mc = mcVersions.stream().filter(m -> m.getVersion().equals(mcver)).findFirst().orElseThrow(() -> new NoSuchVersionException("yarn", mcver));
-
-                URL url = new URL(META_URL_BASE + ENDPOINT_YARN_VERSIONS + mc.getVersionEncoded() + "/");
-                HttpURLConnection request = (HttpURLConnection) url.openConnection();
-                request.connect();
-                List<MappingsVersion> versions = getGson().fromJson(new InputStreamReader(request.getInputStream()), new TypeToken<List<MappingsVersion>>(){}.getType());
-                versions.sort(Comparator.comparingInt(MappingsVersion::getBuild).reversed());
-                this.versions.put(mcver, versions);
-                
-                File versionFolder = getDataFolder().resolve(mcver).toFile();
-                if (!versionFolder.exists()) {
-                    versionFolder.mkdir();
-                }
-                
-                log.info("Updating Yarn data for for MC {}", mcver);
-              
-                if (versions.isEmpty()) throw new IllegalStateException("Found no yarn versions for MC " + mcver + "!");
-                
-                MappingsVersion mappingVersion = versions.get(0);
-                String mappingsUrl = mappingVersion.getMavenUrl(MAVEN_URL_BASE, "mergedv2", "jar");
-                url = new URL(mappingsUrl);
-                if (((HttpURLConnection)url.openConnection()).getResponseCode() / 100 == 4) { // This version doesn't support v2
-                    mappingsUrl = mappingVersion.getMavenUrl(MAVEN_URL_BASE, "tiny", "gz"); 
-                    url = new URL(mappingsUrl);
-                }
-                
-                File[] folderContents = versionFolder.listFiles();
-                if (folderContents.length > 0) {
-                    int currentVersion = getCurrentVersion(folderContents[0]);
-                    if (currentVersion == mappingVersion.getBuild()) {
-                        log.debug("Yarn {} mappings up to date: {} == {}", mcver, mappingVersion, currentVersion);
-                        return null;
-                    } else {
-                        folderContents[0].delete();
-                    }
-                }
-                
-                log.info("Found out of date or missing yarn mappings for MC {}. New version: {}", mcver, mappingVersion);
-                String filename = mappingsUrl.substring(mappingsUrl.lastIndexOf('/') + 1);
-                FileUtils.copyURLToFile(url, versionFolder.toPath().resolve(filename).toFile());
-                remove(mcver);
-            return null;
-        }));
+        return updateVersions().then(Mono.fromSupplier(() -> this.mcVersions))
+                .map(mcVersions -> mcVersions.stream().filter(m -> m.getVersion().equals(mcver)).findFirst().orElseThrow(() -> new NoSuchVersionException("yarn", mcver)))
+                .flatMap(mc -> getHttp().getString(META_URL_BASE + ENDPOINT_YARN_VERSIONS + mc.getVersionEncoded() + "/"))
+                .map(json -> {
+                    List<MappingsVersion> versions = getGson().fromJson(json, new TypeToken<List<MappingsVersion>>(){}.getType());
+                    versions.sort(Comparator.comparingInt(MappingsVersion::getBuild).reversed());
+                    this.versions.put(mcver, versions);
+                    if (versions.isEmpty()) throw new IllegalStateException("Found no yarn versions for MC " + mcver + "!");
+                    return versions.get(0);
+                })
+                .flatMap(mappingVersion -> {
+                    String v2Url = mappingVersion.getMavenUrl(MAVEN_URL_BASE, "mergedv2", "jar");
+                    return getHttp().status(v2Url)
+                            .map(status -> status / 100 == 4 ? mappingVersion.getMavenUrl(MAVEN_URL_BASE, "tiny", "gz") : v2Url) // This version doesn't support v2
+                            .flatMap(mappingsUrl -> Mono.fromCallable(() -> {
+                                File versionFolder = getDataFolder().resolve(mcver).toFile();
+                                if (!versionFolder.exists()) {
+                                    versionFolder.mkdir();
+                                }
+                                
+                                log.info("Updating Yarn data for for MC {}", mcver);
+                                
+                                File[] folderContents = versionFolder.listFiles(f -> !MappingSnapshot.isSnapshot(f) && !MappingHttp.isPartial(f));
+                                File outdated = folderContents.length > 0 ? folderContents[0] : null;
+                                if (outdated != null) {
+                                    int currentVersion = getCurrentVersion(outdated);
+                                    if (currentVersion == mappingVersion.getBuild()) {
+                                        log.debug("Yarn {} mappings up to date: {} == {}", mcver, mappingVersion, currentVersion);
+                                        return Mono.<Void>empty();
+                                    }
+                                }
+                                
+                                log.info("Found out of date or missing yarn mappings for MC {}. New version: {}", mcver, mappingVersion);
+                                String filename = mappingsUrl.substring(mappingsUrl.lastIndexOf('/') + 1);
+                                // Keep the old mappings until the new ones are fully downloaded
+                                return getHttp().downloadVerified(mappingsUrl, versionFolder.toPath().resolve(filename))
+                                        .doOnNext($ -> {
+                                            if (outdated != null) {
+                                                outdated.delete();
+                                            }
+                                            refresh(mcver);
+                                        })
+                                        .then();
+                            }).flatMap(m -> m));
+                });
     }
     
     private int getCurrentVersion(File file) {
@@ -1,14 +1,19 @@
 package com.tterrag.k9.util;
 
 import java.awt.Color;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Random;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import com.tterrag.k9.util.PaginatedMessageFactory.PaginatedMessage;
+import com.tterrag.k9.util.annotation.Nullable;
 
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.channel.MessageChannel;
@@ -16,6 +21,7 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import reactor.core.publisher.Mono;
 
 @Accessors(fluent = true, chain = true)
 @Setter
@@ -37,6 +43,15 @@ public class ListMessageBuilder<T> {
     
     private int objectsPerPage = 0;
     
+    /**
+     * Fetches the objects that follow the ones added so far, each time those run out. An empty list means there
+     * are no more.
+     * <p>
+     * If set, only the first page is formatted up front, from the objects added. Each following page is formatted, and
+     * its objects fetched if needed, once it is paged to, so the message never holds more than a few pages of objects.
+     */
+    private @Nullable Supplier<Mono<List<T>>> moreObjects;
+    
     private Function<? super T, String> stringFunc = Object::toString;
     
     private BiFunction<? super T, Integer, Integer> indexFunc = (obj, i) -> (i + 1);
@@ -61,41 +76,127 @@ public class ListMessageBuilder<T> {
         return "List of " + name + " (Page " + page + "/" + max + "):";
     }
     
+    private String getTitle(int page) {
+        return "List of " + name + " (Page " + page + "):";
+    }
+    
+    /**
+     * Splits the objects into pages, formatting each object only when the page containing it is requested.
+     */
+    private class Pages {
+        
+        private final Deque<T> pending = new ArrayDeque<>(objects);
+        private final int maxLength;
+        private @Nullable Supplier<Mono<List<T>>> more = moreObjects;
+        
+        private StringBuilder content = new StringBuilder();
+        private int i;
+        
+        Pages(int maxLength) {
+            this.maxLength = maxLength;
+        }
+        
+        /**
+         * @return The next full page, or null if the pending objects run out before one is full.
+         */
+        private @Nullable String fill() {
+            while (!pending.isEmpty()) {
+                T object = pending.poll();
+                StringBuilder newContent = new StringBuilder();
+                if (showIndex) {
+                    newContent.append(indexFunc.apply(object, i)).append(") ");
+                }
+                newContent.append(stringFunc.apply(object)).append("\n");
+                if ((objectsPerPage > 0 && i == objectsPerPage) || content.length() + newContent.length() > maxLength) {
+                    String ret = content.toString();
+                    content = newContent;
+                    i = 1;
+                    return ret;
+                }
+                content.append(newContent);
+                i++;
+            }
+            return null;
+        }
+        
+        /**
+         * @return What is left of the current page, or null if it is empty.
+         */
+        private @Nullable String flush() {
+            if (content.length() == 0) {
+                return null;
+            }
+            String ret = content.toString();
+            content = new StringBuilder();
+            return ret;
+        }
+        
+        /**
+         * @return The next page from the objects already at hand, or null if there is none.
+         */
+        @Nullable String nextLocal() {
+            String ret = fill();
+            return ret == null ? flush() : ret;
+        }
+        
+        /**
+         * @return The next page, fetching more objects if needed, or empty if there is none.
+         */
+        Mono<String> next() {
+            return Mono.defer(() -> {
+                String ret = fill();
+                Supplier<Mono<List<T>>> more = this.more;
+                if (ret != null || more == null) {
+                    return Mono.justOrEmpty(ret == null ? flush() : ret);
+                }
+                return more.get()
+                        .defaultIfEmpty(Collections.emptyList())
+                        .flatMap(objs -> {
+                            if (objs.isEmpty()) {
+                                this.more = null;
+                            }
+                            pending.addAll(objs);
+                            return next();
+                        });
+            });
+        }
+        
+        boolean isDone() {
+            return pending.isEmpty() && content.length() == 0 && more == null;
+        }
+    }
+    
     public PaginatedMessage build(MessageChannel channel, Message parent) {
         PaginatedMessageFactory.Builder builder = PaginatedMessageFactory.INSTANCE.builder(channel);
-        List<String> contentPerPage = new ArrayList<>();
-        StringBuilder content = new StringBuilder();
         // If this is not going to be an embed, the title must be included in the max size check
         // Since the title length varies, we use the most pessimistic case, and add a buffer for newline characters
-        int maxLength = embed ? 2000 : 2000 - getTitle(objects.size(), objects.size()).length() - 2;
-        int i = 0;
-        for (T object : this.objects) {
-            StringBuilder newContent = new StringBuilder();
-            if (showIndex) {
-                newContent.append(indexFunc.apply(object, i)).append(") ");
+        // If more objects may be fetched, the number of pages is not known, so assume the largest
+        int maxPages = moreObjects == null ? objects.size() : Integer.MAX_VALUE;
+        int maxLength = embed ? 2000 : 2000 - getTitle(maxPages, maxPages).length() - 2;
+        Pages pages = new Pages(maxLength);
+        if (moreObjects != null) {
+            String first = pages.nextLocal();
+            if (first != null) {
+                builder.addPage(bake(pages.isDone() ? getTitle(1, 1) : getTitle(1), first));
             }
-            newContent.append(stringFunc.apply(object)).append("\n");
-            if ((objectsPerPage > 0 && i == objectsPerPage) || content.length() + newContent.length() > maxLength) {
-                contentPerPage.add(content.toString());
-                content = newContent;
-                i = 0;
-            } else {
-                content.append(newContent);
+            // The total is only known once the last page is reached
+            builder.setMorePages(page -> pages.next().map(content -> bake(pages.isDone() ? getTitle(page + 1, page + 1) : getTitle(page + 1), content)));
+        } else {
+            List<String> contentPerPage = new ArrayList<>();
+            String content;
+            while ((content = pages.nextLocal()) != null) {
+                contentPerPage.add(content);
+            }
+            for (int i = 0; i < contentPerPage.size(); i++) {
+                String title = getTitle(i + 1, contentPerPage.size());
+                builder.addPage(bake(title, contentPerPage.get(i)));
             }
-            i++;
-        }
-        if (content.length() > 0) {
-            contentPerPage.add(content.toString());
-        }
-        for (i = 0; i < contentPerPage.size(); i++) {
-            String title = getTitle(i + 1, contentPerPage.size());
-            addPage(builder, title, contentPerPage.get(i), embed);
         }
 
         return builder.setParent(parent).setProtected(protect).build();
     }
     
-    private void addPage(PaginatedMessageFactory.Builder builder, String title, String content, boolean embed) {
+    private BakedMessage bake(String title, String content) {
         if (embed) {
             if (hasColor) {
                 rand.setSeed(content.hashCode());
@@ -106,9 +207,9 @@ public class ListMessageBuilder<T> {
                 .description(content)
                 .color(hasColor ? color : Color.HSBtoRGB(rand.nextFloat(), 1, 1));
         
-            builder.addPage(new BakedMessage().withEmbed(embedBuilder));
+            return new BakedMessage().withEmbed(embedBuilder);
         } else {
-            builder.addPage(new BakedMessage().withContent(title + "\n" + content));
+            return new BakedMessage().withContent(title + "\n" + content);
         }
     }
 }
@@ -0,0 +1,90 @@
+package com.tterrag.k9.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.tterrag.k9.util.annotation.Nullable;
+
+/**
+ * An immutable trie of names, which finds the value for a name that is part of a larger string, such as a message,
+ * without cutting the name out of it first.
+ * <p>
+ * The children of each node are kept as a sorted array of characters, so every step is a binary search over at most a
+ * few entries.
+ */
+public final class NameTrie<T> {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node<?>[] NO_CHILDREN = new Node<?>[0];
+
+    private static final class Node<T> {
+        char[] keys = NO_KEYS;
+        Node<?>[] children = NO_CHILDREN;
+        @Nullable T value;
+    }
+
+    private final Node<T> root;
+    private final int size;
+
+    private NameTrie(Map<String, ? extends T> values) {
+        TreeMap<String, T> sorted = new TreeMap<>(values);
+        this.root = build(sorted, 0);
+        this.size = sorted.size();
+    }
+
+    public static <T> NameTrie<T> of(Map<String, ? extends T> values) {
+        return new NameTrie<>(values);
+    }
+
+    /**
+     * @param names
+     *            The names below this node, sorted, all of which share their first {@code depth} characters.
+     */
+    private static <T> Node<T> build(TreeMap<String, T> names, int depth) {
+        Node<T> node = new Node<>();
+        TreeMap<Character, TreeMap<String, T>> groups = new TreeMap<>();
+        names.forEach((name, value) -> {
+            if (name.length() == depth) {
+                node.value = value;
+            } else {
+                groups.computeIfAbsent(name.charAt(depth), c -> new TreeMap<>()).put(name, value);
+            }
+        });
+        if (!groups.isEmpty()) {
+            node.keys = new char[groups.size()];
+            node.children = new Node<?>[groups.size()];
+            int i = 0;
+            for (Map.Entry<Character, TreeMap<String, T>> e : groups.entrySet()) {
+                node.keys[i] = e.getKey();
+                node.children[i++] = build(e.getValue(), depth + 1);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return The value for the name from {@code start} (inclusive) to {@code end} (exclusive) of the given string, or
+     *         null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable T get(CharSequence s, int start, int end) {
+        Node<T> node = root;
+        for (int i = start; i < end; i++) {
+            int idx = Arrays.binarySearch(node.keys, s.charAt(i));
+            if (idx < 0) {
+                return null;
+            }
+            node = (Node<T>) node.children[idx];
+        }
+        return node.value;
+    }
+
+    public @Nullable T get(String name) {
+        return get(name, 0, name.length());
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -1,9 +1,13 @@
 package com.tterrag.k9.util;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.IntFunction;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.tterrag.k9.util.annotation.NonNull;
@@ -18,8 +22,6 @@ import discord4j.core.object.entity.channel.GuildChannel;
 import discord4j.core.object.entity.channel.MessageChannel;
 import discord4j.core.object.reaction.ReactionEmoji;
 import discord4j.common.util.Snowflake;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
@@ -30,7 +32,15 @@ public enum PaginatedMessageFactory {
 
 	INSTANCE;
 	
-	private final Long2ObjectMap<PaginatedMessage> byMessageId = new Long2ObjectOpenHashMap<>();
+	/**
+	 * Messages stop reacting to page changes once they have not been used for this long, so that their pages, and
+	 * whatever those pages are built from, can be collected.
+	 */
+	private static final Duration EXPIRY = Duration.ofMinutes(30);
+	
+	private final Cache<Long, PaginatedMessage> byMessageId = Caffeine.newBuilder()
+	        .expireAfterAccess(EXPIRY)
+	        .build();
 
 	@RequiredArgsConstructor
 	@NonNullFields
@@ -43,11 +53,23 @@ public enum PaginatedMessageFactory {
 		@Nullable
 		private final Message parent;
 		private final boolean isProtected;
+		/**
+		 * Builds the pages after {@link #messages}, given the index of the page, or completes empty if there are no
+		 * more. Each is built the first time it is paged to, and then added to {@link #messages}.
+		 */
+		@Nullable
+		private final IntFunction<Mono<BakedMessage>> morePages;
 
 		@Getter
 		private int page;
 		@Nullable
 		private Mono<Message> sentMessage;
+		/**
+		 * The page being built, if any, shared by every page change that waits for it.
+		 */
+		@Nullable
+		private Mono<Boolean> loading;
+		private boolean exhausted;
 		
         public Mono<Message> send() {
             Preconditions.checkArgument(sentMessage == null, "Paginated message has already been sent!");
@@ -60,11 +82,11 @@ public enum PaginatedMessageFactory {
 			        .cache();
         }
         
-        public int size() {
+        public synchronized int size() {
             return messages.size();
         }
         
-        public void setPageNumber(int page) {
+        public synchronized void setPageNumber(int page) {
             Preconditions.checkPositionIndex(page, messages.size());
             this.page = page;
         }
@@ -72,16 +94,46 @@ public enum PaginatedMessageFactory {
         public Mono<Message> setPage(int page) {
             setPageNumber(page);
 			if (sentMessage != null) {
-		         return sentMessage.flatMap(messages.get(page)::update);
+		         return sentMessage.flatMap(getMessage(page)::update);
 			}
 			return Mono.empty();
 		}
 		
+		private synchronized Mono<Boolean> hasPage(int page) {
+		    if (page < messages.size()) {
+		        return Mono.just(true);
+		    }
+		    if (morePages == null || exhausted) {
+		        return Mono.just(false);
+		    }
+		    Mono<Boolean> ret = loading;
+		    if (ret == null) {
+		        ret = loading = morePages.apply(messages.size())
+		                .doOnNext(this::addPage)
+		                .hasElement()
+		                .doOnNext(this::loaded)
+		                .doOnError(t -> loaded(true))
+		                .cache();
+		    }
+		    return ret.map($ -> page < size());
+		}
+		
+		private synchronized void addPage(BakedMessage message) {
+		    messages.add(message);
+		}
+		
+		private synchronized void loaded(boolean found) {
+		    loading = null;
+		    exhausted = !found;
+		}
+		
+		private Mono<Message> current() {
+		    return sentMessage == null ? Mono.empty() : sentMessage;
+		}
+		
 		public Mono<Message> pageUp() {
-			if (page < messages.size() - 1) {
-				return setPage(page + 1);
-			}
-			return sentMessage;
+		    int next = page + 1;
+		    return hasPage(next).flatMap(found -> found ? setPage(next) : current());
 		}
 		
 		public Mono<Message> pageDn() {
@@ -103,7 +155,7 @@ public enum PaginatedMessageFactory {
             return ret;
         }
         
-        public BakedMessage getMessage(int page) {
+        public synchronized BakedMessage getMessage(int page) {
             if (page >= 0 && page < messages.size()) {
                 return messages.get(page);
             }
@@ -125,9 +177,10 @@ public enum PaginatedMessageFactory {
 		private Message parent;
 		private boolean isProtected = true;
 		private int page;
+		private IntFunction<Mono<BakedMessage>> morePages;
 		
         public PaginatedMessage build() {
-			PaginatedMessage ret = new PaginatedMessage(NullHelper.notnullL(Lists.newArrayList(messages), "Lists#newArrayList"), channel, parent, isProtected);
+			PaginatedMessage ret = new PaginatedMessage(NullHelper.notnullL(Lists.newArrayList(messages), "Lists#newArrayList"), channel, parent, isProtected, morePages);
 			ret.setPageNumber(page);
 			return ret;
 		}
@@ -158,7 +211,7 @@ public enum PaginatedMessageFactory {
 		ReactionEmoji reaction = event.getEmoji();
 		if (!event.getClient().getSelfId().equals(event.getUserId())) {
 			String unicode = reaction.asUnicodeEmoji().isPresent() ? reaction.asUnicodeEmoji().get().getRaw() : null;
-			PaginatedMessage message = byMessageId.get(msgId.asLong());
+			PaginatedMessage message = byMessageId.getIfPresent(msgId.asLong());
             if (message != null) {
                 if (unicode == null) {
                     return event.getMessage().flatMap(msg -> msg.removeReaction(reaction, event.getUserId()));
@@ -175,7 +228,7 @@ public enum PaginatedMessageFactory {
                         case X:
                             if (message.getParent().getAuthor().filter(u -> u.getId().equals(event.getUserId())).isPresent()) {
                                 pageChange = message.delete();
-                                byMessageId.remove(msgId.asLong());
+                                byMessageId.invalidate(msgId.asLong());
                             }
                             break;
                     }
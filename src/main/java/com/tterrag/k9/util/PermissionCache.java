@@ -0,0 +1,219 @@
+package com.tterrag.k9.util;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tterrag.k9.util.annotation.Nullable;
+
+import discord4j.common.util.Snowflake;
+import discord4j.core.event.domain.Event;
+import discord4j.core.event.domain.channel.CategoryCreateEvent;
+import discord4j.core.event.domain.channel.CategoryDeleteEvent;
+import discord4j.core.event.domain.channel.CategoryUpdateEvent;
+import discord4j.core.event.domain.channel.NewsChannelDeleteEvent;
+import discord4j.core.event.domain.channel.NewsChannelUpdateEvent;
+import discord4j.core.event.domain.channel.TextChannelDeleteEvent;
+import discord4j.core.event.domain.channel.TextChannelUpdateEvent;
+import discord4j.core.event.domain.guild.GuildCreateEvent;
+import discord4j.core.event.domain.guild.GuildDeleteEvent;
+import discord4j.core.event.domain.guild.GuildUpdateEvent;
+import discord4j.core.event.domain.guild.MemberLeaveEvent;
+import discord4j.core.event.domain.guild.MemberUpdateEvent;
+import discord4j.core.event.domain.role.RoleDeleteEvent;
+import discord4j.core.event.domain.role.RoleUpdateEvent;
+import discord4j.core.object.entity.Member;
+import discord4j.core.object.entity.channel.GuildChannel;
+import discord4j.rest.util.Permission;
+import discord4j.rest.util.PermissionSet;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches the effective permissions of members, as raw {@link PermissionSet} masks, per guild, member and channel.
+ * <p>
+ * Permissions are computed the first time a member is checked in a channel, and kept until a gateway event that could
+ * change them. A guild create (including the resync after a reconnect), guild update, role update or any category
+ * change drops the whole guild, a member update or leave drops the member, and a channel update or delete drops that
+ * channel for every member. Until then a check is a few hash lookups and a mask test, with no REST call. In case an
+ * event is missed, every mask also expires a fixed time after it was computed.
+ * <p>
+ * Every invalidation also bumps a per-guild generation, and permissions fetched while the generation changed are not
+ * cached, so an event arriving during the REST call can't be overwritten by the stale result.
+ */
+public enum PermissionCache {
+
+    INSTANCE;
+
+    /**
+     * Returned by {@link #getCached(Snowflake, Snowflake, Snowflake)} when the permissions are not known.
+     */
+    public static final long MISSING = -1;
+
+    /**
+     * The channel key for a member's base permissions, which apply outside of any channel.
+     */
+    private static final long BASE = 0;
+
+    private static final int MEMBERS_PER_GUILD = 10_000;
+    private static final Duration MEMBER_EXPIRY = Duration.ofMinutes(15);
+
+    private final Map<Long, Cache<Long, Long2LongMap>> guilds = new ConcurrentHashMap<>();
+    // Never removed, a fresh counter could repeat a generation recorded before the guild was dropped
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public static boolean has(long perms, Permission permission) {
+        return (perms & permission.getValue()) != 0;
+    }
+
+    /**
+     * @param channel
+     *            The channel, or null for the base permissions of the member.
+     * @return The cached permissions, or {@link #MISSING} if they are not cached.
+     */
+    public long getCached(Snowflake guild, Snowflake member, @Nullable Snowflake channel) {
+        Cache<Long, Long2LongMap> members = guilds.get(guild.asLong());
+        Long2LongMap channels = members == null ? null : members.getIfPresent(member.asLong());
+        return channels == null ? MISSING : channels.get(channel == null ? BASE : channel.asLong());
+    }
+
+    private AtomicLong generation(Snowflake guild) {
+        return generations.computeIfAbsent(guild.asLong(), id -> new AtomicLong());
+    }
+
+    /**
+     * @param generation
+     *            The generation of the guild when the permissions were requested. If it changed since, they are dropped.
+     */
+    private void put(Snowflake guild, Snowflake member, @Nullable Snowflake channel, long perms, long generation) {
+        AtomicLong current = generation(guild);
+        // Held by invalidations too, so one can't slip in between the check and the write
+        synchronized (current) {
+            if (current.get() != generation) {
+                return;
+            }
+            put(guild, member, channel, perms);
+        }
+    }
+
+    private void put(Snowflake guild, Snowflake member, @Nullable Snowflake channel, long perms) {
+        guilds.computeIfAbsent(guild.asLong(), id -> Caffeine.newBuilder()
+                        .maximumSize(MEMBERS_PER_GUILD)
+                        .expireAfterWrite(MEMBER_EXPIRY)
+                        .<Long, Long2LongMap>build())
+                .get(member.asLong(), id -> {
+                    Long2LongOpenHashMap ret = new Long2LongOpenHashMap(4);
+                    ret.defaultReturnValue(MISSING);
+                    return Long2LongMaps.synchronize(ret);
+                })
+                .put(channel == null ? BASE : channel.asLong(), perms);
+    }
+
+    /**
+     * @return The effective permissions of the member in the channel.
+     */
+    public Mono<Long> get(Snowflake member, GuildChannel channel) {
+        long cached = getCached(channel.getGuildId(), member, channel.getId());
+        if (cached != MISSING) {
+            return Mono.just(cached);
+        }
+        long generation = generation(channel.getGuildId()).get();
+        return channel.getEffectivePermissions(member)
+                .map(PermissionSet::getRawValue)
+                .doOnNext(perms -> put(channel.getGuildId(), member, channel.getId(), perms, generation));
+    }
+
+    /**
+     * @return The base permissions of the member.
+     */
+    public Mono<Long> get(Member member) {
+        long cached = getCached(member.getGuildId(), member.getId(), null);
+        if (cached != MISSING) {
+            return Mono.just(cached);
+        }
+        long generation = generation(member.getGuildId()).get();
+        return member.getBasePermissions()
+                .map(PermissionSet::getRawValue)
+                .doOnNext(perms -> put(member.getGuildId(), member.getId(), null, perms, generation));
+    }
+
+    public Mono<Boolean> has(Snowflake member, GuildChannel channel, Permission permission) {
+        return get(member, channel).map(perms -> has(perms, permission));
+    }
+
+    public Mono<Void> track(Flux<Event> events) {
+        return events.doOnNext(this::onEvent).then();
+    }
+
+    private void onEvent(Event event) {
+        if (event instanceof RoleUpdateEvent) {
+            invalidateGuild(((RoleUpdateEvent) event).getCurrent().getGuildId());
+        } else if (event instanceof RoleDeleteEvent) {
+            invalidateGuild(((RoleDeleteEvent) event).getGuildId());
+        } else if (event instanceof GuildCreateEvent) {
+            // Sent again when the gateway resyncs, anything may have changed while disconnected
+            invalidateGuild(((GuildCreateEvent) event).getGuild().getId());
+        } else if (event instanceof GuildUpdateEvent) {
+            // The owner may have changed
+            invalidateGuild(((GuildUpdateEvent) event).getCurrent().getId());
+        } else if (event instanceof GuildDeleteEvent) {
+            invalidateGuild(((GuildDeleteEvent) event).getGuildId());
+        } else if (event instanceof CategoryCreateEvent) {
+            // Channels synced to a category inherit its overwrites
+            invalidateGuild(((CategoryCreateEvent) event).getCategory().getGuildId());
+        } else if (event instanceof CategoryUpdateEvent) {
+            invalidateGuild(((CategoryUpdateEvent) event).getCurrent().getGuildId());
+        } else if (event instanceof CategoryDeleteEvent) {
+            invalidateGuild(((CategoryDeleteEvent) event).getCategory().getGuildId());
+        } else if (event instanceof MemberUpdateEvent) {
+            invalidateMember(((MemberUpdateEvent) event).getGuildId(), ((MemberUpdateEvent) event).getMemberId());
+        } else if (event instanceof MemberLeaveEvent) {
+            invalidateMember(((MemberLeaveEvent) event).getGuildId(), ((MemberLeaveEvent) event).getUser().getId());
+        } else if (event instanceof TextChannelUpdateEvent) {
+            invalidateChannel(((TextChannelUpdateEvent) event).getCurrent());
+        } else if (event instanceof TextChannelDeleteEvent) {
+            invalidateChannel(((TextChannelDeleteEvent) event).getChannel());
+        } else if (event instanceof NewsChannelUpdateEvent) {
+            invalidateChannel(((NewsChannelUpdateEvent) event).getCurrent());
+        } else if (event instanceof NewsChannelDeleteEvent) {
+            invalidateChannel(((NewsChannelDeleteEvent) event).getChannel());
+        }
+    }
+
+    private void invalidateGuild(Snowflake guild) {
+        AtomicLong generation = generation(guild);
+        synchronized (generation) {
+            generation.incrementAndGet();
+            guilds.remove(guild.asLong());
+        }
+    }
+
+    private void invalidateMember(Snowflake guild, Snowflake member) {
+        AtomicLong generation = generation(guild);
+        synchronized (generation) {
+            generation.incrementAndGet();
+            Cache<Long, Long2LongMap> members = guilds.get(guild.asLong());
+            if (members != null) {
+                members.invalidate(member.asLong());
+            }
+        }
+    }
+
+    private void invalidateChannel(GuildChannel channel) {
+        AtomicLong generation = generation(channel.getGuildId());
+        synchronized (generation) {
+            generation.incrementAndGet();
+            Cache<Long, Long2LongMap> members = guilds.get(channel.getGuildId().asLong());
+            if (members != null) {
+                long id = channel.getId().asLong();
+                members.asMap().values().forEach(channels -> channels.remove(id));
+            }
+        }
+    }
+}
@@ -54,6 +54,11 @@ public class Requirements {
     
     private final Multimap<RequiredType, Permission> requirements = MultimapBuilder.enumKeys(RequiredType.class).enumSetValues(Permission.class).build();
     
+    /**
+     * The permissions of each {@link RequiredType}, as raw masks.
+     */
+    private long allOf, oneOf, noneOf;
+    
     public static Requirements none() { return NONE; }
     
     public static Builder builder() {
@@ -65,34 +70,59 @@ public class Requirements {
         
         public Builder with(Permission perm, RequiredType type) {
             Requirements.this.requirements.put(type, perm);
+            switch (type) {
+                case ALL_OF:
+                    allOf |= perm.getValue();
+                    break;
+                case ONE_OF:
+                    oneOf |= perm.getValue();
+                    break;
+                case NONE_OF:
+                    noneOf |= perm.getValue();
+                    break;
+            }
             return this;
         }
         
         public Requirements build() { return Requirements.this; }
     }
     
+    private boolean isEmpty() {
+        return this == NONE || this.requirements.isEmpty();
+    }
+    
     public Mono<Boolean> matches(CommandContext ctx) {
+        if (isEmpty()) return Mono.just(true);
         return ctx.getMember().transform(Monos.flatZipWith(ctx.getChannel().ofType(GuildChannel.class), this::matches))
                 .switchIfEmpty(Mono.just(true));
     }
     
     public Mono<Boolean> matches(Member member, GuildChannel channel) {
-    	return channel.getEffectivePermissions(member.getId()).map(this::matches);
+        if (isEmpty()) return Mono.just(true);
+    	return PermissionCache.INSTANCE.get(member.getId(), channel).map(this::matches);
     }
     
     public Mono<Boolean> matches(Member member) {
-    	return member.getBasePermissions().map(this::matches);
+        if (isEmpty()) return Mono.just(true);
+    	return PermissionCache.INSTANCE.get(member).map(this::matches);
     }
     
     public boolean matches(Set<Permission> perms) {
-        if (this == NONE) return true;
-        if (this.requirements.isEmpty()) return true;
+        if (isEmpty()) return true;
         boolean hasAll = perms.containsAll(requirements.get(RequiredType.ALL_OF));
         boolean hasOne = !requirements.containsKey(RequiredType.ONE_OF) || !Collections.disjoint(requirements.get(RequiredType.ONE_OF), perms);
         boolean hasNone = !requirements.containsKey(RequiredType.NONE_OF) || Collections.disjoint(requirements.get(RequiredType.NONE_OF), perms);
         return hasAll && hasOne && hasNone;
     }
     
+    /**
+     * @param perms
+     *            A raw {@link discord4j.rest.util.PermissionSet PermissionSet} mask.
+     */
+    public boolean matches(long perms) {
+        return (perms & allOf) == allOf && (oneOf == 0 || (perms & oneOf) != 0) && (perms & noneOf) == 0;
+    }
+    
     @Override
     public String toString() {
         if (this != NONE) {